@@ -21,6 +21,7 @@ if [ -d $1 ]; then
     find . -name "slots\.smt" | xargs rm -f
     find . -name "constraints\.smt" | xargs rm -f
     find . -name "z3Constraints\.smt" | xargs rm -f
+    find . -name "z3Constraints-*\.smt" | xargs rm -f
     find . -name "z3ConstraintsUnsatCore\.smt" | xargs rm -f
     find . -name "z3ConstraintsGlob\.smt" | xargs rm -f
     find . -name "gjeConstraints*\.gje" | xargs rm -f
@@ -0,0 +1,63 @@
+#!/bin/bash
+
+if ! [ -n "$1" ]; then
+    echo "This script compares the integer and bit-vector encodings of unit exponents, by running"
+    echo "units in infer mode on all of the projects from a corpus once with each encoding"
+    echo "Give the yml file name by itself without the file extension"
+    echo "By default this runs in non-optimizing mode with 8 bit exponents"
+    echo "usage: $0 [optimizing-mode] <some-corpus> [bit-vector-width]"
+    echo "eg: $0 projects"
+    echo "eg: $0 true projects 6"
+    exit 1
+fi
+
+WORKING_DIR=$(cd $(dirname "$0") && pwd)
+
+OPTIMIZING_MODE="false"
+if [ -n "$1" ] && [ $1 = "true" ]; then
+    OPTIMIZING_MODE="true"
+    shift
+elif [ -n "$1" ] && [ $1 = "false" ]; then
+    shift
+fi
+
+PROJECTNAME=$1
+WIDTH=${2:-8}
+RESULTS_DIR=$WORKING_DIR/bitvector-results-$PROJECTNAME
+mkdir -p "$RESULTS_DIR"
+
+# sums the given statistics key over the inference log of each project in the corpus
+collect_stats() {
+    key=$1
+    for project in $(cd "$WORKING_DIR/$PROJECTNAME" && ls -d */ | sort); do
+        project=${project%/}
+        InferenceLogFile=$WORKING_DIR/$PROJECTNAME/$project/logs/infer.log
+        if [ -f "$InferenceLogFile" ]; then
+            grep "$key" "$InferenceLogFile" | cut -d ':' -f 2 | \
+                awk -v p="$project" '{sum += $1} END {print p "\t" sum+0}'
+        else
+            echo -e "$project\tn/a"
+        fi
+    done
+}
+
+# projects are run one at a time so the solving times do not interfere
+for encoding in int bv; do
+    if [ $encoding = "bv" ]; then
+        export EXTRA_SOLVERARGS=",z3BitVectorWidth=$WIDTH"
+    else
+        export EXTRA_SOLVERARGS=""
+    fi
+    echo "----- Running $PROJECTNAME with $encoding exponents ($EXTRA_SOLVERARGS) -----"
+    (cd "$WORKING_DIR" && ./run-benchmark-infer.sh $OPTIMIZING_MODE false $PROJECTNAME)
+    collect_stats "smt_solving_time" > "$RESULTS_DIR/$encoding-solving.txt"
+    collect_stats "smt_serialization_time" > "$RESULTS_DIR/$encoding-serialization.txt"
+done
+unset EXTRA_SOLVERARGS
+
+echo "----- z3 solving time (millisec): project, int, bit-vector -----"
+join -t $'\t' "$RESULTS_DIR/int-solving.txt" "$RESULTS_DIR/bv-solving.txt" | \
+    tee "$RESULTS_DIR/solving-comparison.txt"
+echo "----- serialization time (millisec): project, int, bit-vector -----"
+join -t $'\t' "$RESULTS_DIR/int-serialization.txt" "$RESULTS_DIR/bv-serialization.txt" | \
+    tee "$RESULTS_DIR/serialization-comparison.txt"
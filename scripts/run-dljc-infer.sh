@@ -25,6 +25,8 @@ SOLVER=units.solvers.backend.UnitsSolverEngine
 OPTIMIZINGMODE=$1
 shift
 SOLVERARGS="solver=Z3smt,optimizingMode=$OPTIMIZINGMODE,collectStatistics=true,writeSolutions=true,noAppend=false"
+# extra solver arguments can be given through the environment, eg EXTRA_SOLVERARGS=",z3Timeout=60"
+SOLVERARGS="$SOLVERARGS$EXTRA_SOLVERARGS"
 
 DLJC=$JSR308/do-like-javac
 
@@ -15,7 +15,7 @@ CHECKER=units.UnitsChecker
 
 SOLVER=units.solvers.backend.UnitsSolverEngine
 if [ -n "$1" ] && [ $1 = "GJE" ]; then
-    SOLVERARGS=solver=GJE,collectStatistics=true,writeSolutions=true,noAppend=true
+    SOLVERARGS=solver=GJE,collectStatistics=true,writeSolutions=true,noAppend=true,gjeExportFiles=true
 elif [ -n "$1" ] && [ $1 = "true" ]; then
     SOLVERARGS=solver=Z3smt,optimizingMode=true,collectStatistics=true,writeSolutions=true,noAppend=true
 else
@@ -0,0 +1,260 @@
+package backend.hybrid;
+
+import backend.hybrid.SkeletonEncoder.UnsupportedTermException;
+import backend.hybrid.SkeletonSolver.UndecidedException;
+import backend.util.SlotElimination;
+import backend.util.SlotEqualityClasses;
+import backend.util.SlotIndex;
+import backend.z3smt.SmtText;
+import backend.z3smt.SmtTextFormatTranslator;
+import backend.z3smt.Z3ModelValues;
+import backend.z3smt.Z3SmtFormatTranslator;
+import backend.z3smt.Z3SmtSolver;
+import backend.z3smt.Z3SmtSolver.Z3SolverEngineArg;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.Solver;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.SolverArg;
+import checkers.inference.solver.util.SolverEnvironment;
+import checkers.inference.solver.util.Statistics;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+/**
+ * Solver which splits the constraints into their boolean skeleton and linear integer equations.
+ * The skeleton is solved by sat4j, then the equations required by the SAT model are solved
+ * dimension by dimension with exact Gauss-Jordan elimination, see {@link SkeletonSolver}. An
+ * inconsistent set of equations is learned as a clause excluding it, and the skeleton is solved
+ * again.
+ *
+ * <p>The constraints are encoded with the text encoder of the format translator, see {@link
+ * Z3SmtFormatTranslator#createTextFormatTranslator()}. When a constraint is outside of the
+ * supported fragment, or the loop does not converge, the constraints are solved by a {@link
+ * Z3SmtSolver} instead. The soft preferences of the optimizing mode are not encoded, so the
+ * optimizing mode is always solved by z3. Variables which are not determined by the equations are
+ * set to 0.
+ */
+public class HybridSolver<SlotEncodingT, SlotSolutionT>
+        extends Solver<Z3SmtFormatTranslator<SlotEncodingT, SlotSolutionT>> {
+
+    public enum HybridSolverArg implements SolverArg {
+        /** option to bound the number of SAT solves before falling back to z3; defaults to 1000 */
+        hybridMaxIterations
+    }
+
+    protected static final int defaultMaxIterations = 1000;
+
+    protected final Z3SmtSolver<SlotEncodingT, SlotSolutionT> fallbackSolver;
+    // whether the last solve was done by the fallback solver
+    protected boolean fellBack;
+
+    protected SlotEqualityClasses slotEqualityClasses;
+    protected SlotElimination slotElimination;
+    protected List<String> modelComponents;
+
+    public HybridSolver(
+            SolverEnvironment solverEnvironment,
+            Collection<Slot> slots,
+            Collection<Constraint> constraints,
+            Z3SmtFormatTranslator<SlotEncodingT, SlotSolutionT> formatTranslator,
+            Lattice lattice) {
+        super(solverEnvironment, slots, constraints, formatTranslator, lattice);
+        // also owns the z3 contexts of the format translator, which decodes the solutions
+        fallbackSolver =
+                new Z3SmtSolver<>(solverEnvironment, slots, constraints, formatTranslator, lattice);
+    }
+
+    @Override
+    public Map<Integer, AnnotationMirror> solve() {
+        fellBack = false;
+        if (solverEnvironment.getBoolArg(Z3SolverEngineArg.optimizingMode)) {
+            return fallBack("the hybrid solver does not optimize");
+        }
+        int maxIterations =
+                parseMaxIterations(solverEnvironment.getArg(HybridSolverArg.hybridMaxIterations));
+
+        SmtTextFormatTranslator<?, SlotSolutionT> textFormatTranslator =
+                formatTranslator.createTextFormatTranslator();
+        if (textFormatTranslator == null) {
+            return fallBack("no text encoder is available for " + formatTranslator);
+        }
+
+        SlotIndex slotIndex = SlotIndex.build(slots, constraints);
+        formatTranslator.setSlotIndex(slotIndex);
+        textFormatTranslator.setSlotIndex(slotIndex);
+        slotEqualityClasses =
+                SlotEqualityClasses.compute(
+                        slotIndex, constraints, formatTranslator.createEqualityExtractor());
+        formatTranslator.setSlotEqualityClasses(slotEqualityClasses);
+        textFormatTranslator.setSlotEqualityClasses(slotEqualityClasses);
+        // only satisfiability matters, so the slots in one subtype constraint are eliminated too
+        slotElimination =
+                SlotElimination.compute(slotIndex, slots, constraints, slotEqualityClasses, true);
+        Statistics.addOrIncrementEntry(
+                "hybrid_eliminated_slots", slotElimination.getNumberOfEliminatedSlots());
+        formatTranslator.preAnalyzeSlots(slots);
+        formatTranslator.preAnalyzeConstraints(slots, constraints);
+        modelComponents = formatTranslator.getModelComponents();
+
+        long serializationStart = System.currentTimeMillis();
+        SkeletonEncoder encoder = new SkeletonEncoder(formatTranslator::isBooleanModelComponent);
+        List<SmtText> terms = new ArrayList<>();
+        try {
+            for (Slot slot : slots) {
+                // merged slots are encoded through their representative
+                if (slot.isVariable()
+                        && slotEqualityClasses.isRepresentative(slot)
+                        && !slotElimination.isEliminated(slot)) {
+                    SmtText wfConstraint =
+                            textFormatTranslator.encodeSlotWellformnessConstraint(
+                                    (VariableSlot) slot);
+                    encoder.assertTerm(wfConstraint);
+                    terms.add(wfConstraint);
+                }
+            }
+            for (Constraint constraint : constraints) {
+                if (slotEqualityClasses.isEliminated(constraint)
+                        || slotElimination.isEliminated(constraint)) {
+                    continue;
+                }
+                SmtText serializedConstraint = constraint.serialize(textFormatTranslator);
+                if (serializedConstraint == null) {
+                    return fallBack(
+                            "unsupported constraint " + constraint.getClass().getSimpleName());
+                }
+                encoder.assertTerm(serializedConstraint);
+                terms.add(serializedConstraint);
+            }
+        } catch (UnsupportedTermException e) {
+            return fallBack(e.getMessage());
+        }
+        Statistics.addOrIncrementEntry(
+                "hybrid_serialization_time(millisec)",
+                System.currentTimeMillis() - serializationStart);
+        Statistics.addOrIncrementEntry("hybrid_theory_atoms", encoder.getAtoms().size());
+
+        SkeletonSolver skeletonSolver = new SkeletonSolver(encoder, maxIterations);
+        boolean satisfiable;
+        try {
+            satisfiable = skeletonSolver.solve();
+        } catch (UndecidedException e) {
+            return fallBack(e.getMessage());
+        } finally {
+            Statistics.addOrIncrementEntry("hybrid_iterations", skeletonSolver.iterations);
+            Statistics.addOrIncrementEntry(
+                    "hybrid_learned_clauses", skeletonSolver.learnedClauses);
+            Statistics.addOrIncrementEntry(
+                    "hybrid_sat_time(millisec)", skeletonSolver.satSolvingTime);
+            Statistics.addOrIncrementEntry(
+                    "hybrid_linear_time(millisec)", skeletonSolver.linearSolvingTime);
+        }
+        if (!satisfiable) {
+            System.err.println("\n\n!!! The set of constraints is unsatisfiable! !!!");
+            return null;
+        }
+        return decodeModel(
+                encoder,
+                terms,
+                skeletonSolver.getSatValues(),
+                skeletonSolver.getIntegerValues());
+    }
+
+    // Decodes the values of the z3 variables, after checking them against the encoded terms
+    private Map<Integer, AnnotationMirror> decodeModel(
+            SkeletonEncoder encoder,
+            List<SmtText> terms,
+            boolean[] satValues,
+            long[] integerValues) {
+        for (SmtText term : terms) {
+            if (!encoder.evaluate(term, satValues, integerValues)) {
+                return fallBack("the model does not satisfy " + term);
+            }
+        }
+
+        Z3ModelValues model = new Z3ModelValues(modelComponents);
+        for (Map.Entry<String, Integer> entry : encoder.getBooleanVariables().entrySet()) {
+            String name = entry.getKey();
+            model.set(
+                    SkeletonEncoder.slotID(name),
+                    modelComponents.indexOf(SkeletonEncoder.component(name)),
+                    satValues[entry.getValue()] ? 1 : 0);
+        }
+        List<String> integerNames = encoder.getIntegerNames();
+        for (int i = 0; i < integerNames.size(); i++) {
+            String name = integerNames.get(i);
+            // the solutions of the elimination fit in an int
+            model.set(
+                    SkeletonEncoder.slotID(name),
+                    modelComponents.indexOf(SkeletonEncoder.component(name)),
+                    (int) integerValues[i]);
+        }
+
+        // the constants are decoded through their z3 encodings
+        fallbackSolver.openContext();
+        try {
+            Map<Integer, AnnotationMirror> result =
+                    formatTranslator.decodeSolution(
+                            model, solverEnvironment.processingEnvironment);
+            slotElimination.addSolution(
+                    result,
+                    value ->
+                            formatTranslator.decodeEliminatedSlot(
+                                    value, solverEnvironment.processingEnvironment));
+            slotEqualityClasses.expandSolution(
+                    result,
+                    constant ->
+                            formatTranslator.decodeConstantSlot(
+                                    constant, solverEnvironment.processingEnvironment));
+            return result;
+        } finally {
+            fallbackSolver.closeContext();
+        }
+    }
+
+    private Map<Integer, AnnotationMirror> fallBack(String reason) {
+        System.err.println("Hybrid solver falls back to z3: " + reason);
+        Statistics.addOrIncrementEntry("hybrid_fallbacks", 1);
+        fellBack = true;
+        return fallbackSolver.solve();
+    }
+
+    private static int parseMaxIterations(String maxIterationsArg) {
+        if (maxIterationsArg == null) {
+            return defaultMaxIterations;
+        }
+        try {
+            return Integer.parseInt(maxIterationsArg);
+        } catch (NumberFormatException e) {
+            throw new BugInCF(
+                    "Unsupported value for solver argument "
+                            + HybridSolverArg.hybridMaxIterations
+                            + ": "
+                            + maxIterationsArg
+                            + ". Expected a number of iterations");
+        }
+    }
+
+    @Override
+    public Collection<Constraint> explainUnsatisfiable() {
+        // the learned clauses do not track the constraints, the explanation comes from z3
+        if (!fellBack) {
+            fallbackSolver.solve();
+        }
+        return fallbackSolver.explainUnsatisfiable();
+    }
+
+    @Override
+    protected void encodeAllConstraints() {
+        // the constraints are encoded in solve()
+    }
+}
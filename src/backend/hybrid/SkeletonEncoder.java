@@ -0,0 +1,342 @@
+package backend.hybrid;
+
+import backend.z3smt.SmtText;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Encodes SMT-LIB text terms into the clauses of a boolean skeleton, by the Tseitin encoding of
+ * their boolean structure. Each integer equation becomes a theory atom: a SAT variable which, when
+ * true, requires the linear equation to hold. Theory atoms may only occur positively, so a model of
+ * the skeleton whose true atoms have a common integer solution is a model of the terms.
+ *
+ * <p>The z3 variables are named "slotID-component", and whether a component is a boolean or an
+ * integer is given by a predicate. The integer variables of each component form a dimension of
+ * their own, an equation over several dimensions is not supported.
+ */
+class SkeletonEncoder {
+
+    /** Thrown for terms outside of the fragment handled by the hybrid solver. */
+    static class UnsupportedTermException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedTermException(String message) {
+            super(message);
+        }
+    }
+
+    /** A linear equation sum(coefficients[v] * v) = constant over one dimension. */
+    static class TheoryAtom {
+        final int variable;
+        final String dimension;
+        final Map<Integer, Long> coefficients;
+        final long constant;
+
+        TheoryAtom(int variable, String dimension, Map<Integer, Long> coefficients, long constant) {
+            this.variable = variable;
+            this.dimension = dimension;
+            this.coefficients = coefficients;
+            this.constant = constant;
+        }
+    }
+
+    private final Predicate<String> isBooleanComponent;
+
+    private final List<int[]> clauses = new ArrayList<>();
+    // SAT variables are numbered from 1, the first one is constant true
+    private int variableCount = 1;
+    private final int trueVariable = 1;
+
+    private final Map<String, Integer> booleanVariables = new HashMap<>();
+    // integer variables are numbered from 0
+    private final Map<String, Integer> integerVariables = new HashMap<>();
+    private final List<String> integerNames = new ArrayList<>();
+
+    private final List<TheoryAtom> atoms = new ArrayList<>();
+    // atoms by a canonical form of their equation, so that equal equations share one atom
+    private final Map<String, TheoryAtom> atomsByEquation = new HashMap<>();
+
+    // literals of the encoded subterms, for the terms encoded where atoms may or may not occur
+    private final Map<SmtText, Integer> positiveLiterals = new IdentityHashMap<>();
+    private final Map<SmtText, Integer> literals = new IdentityHashMap<>();
+
+    SkeletonEncoder(Predicate<String> isBooleanComponent) {
+        this.isBooleanComponent = isBooleanComponent;
+        clauses.add(new int[] {trueVariable});
+    }
+
+    /** Adds the clauses requiring the term to hold. */
+    public void assertTerm(SmtText term) throws UnsupportedTermException {
+        if (term.isTrue()) {
+            return;
+        }
+        if ("and".equals(term.getOperator())) {
+            for (int i = 0; i < term.getOperandCount(); i++) {
+                assertTerm(term.getOperand(i));
+            }
+            return;
+        }
+        clauses.add(new int[] {encode(term, true)});
+    }
+
+    // Returns the literal of the boolean term, atoms may only occur in positive terms
+    private int encode(SmtText term, boolean positive) throws UnsupportedTermException {
+        Map<SmtText, Integer> cache = positive ? positiveLiterals : literals;
+        Integer literal = cache.get(term);
+        if (literal == null) {
+            literal = encodeUncached(term, positive);
+            cache.put(term, literal);
+        }
+        return literal;
+    }
+
+    private int encodeUncached(SmtText term, boolean positive) throws UnsupportedTermException {
+        if (term.isTrue()) {
+            return trueVariable;
+        }
+        if (term.isFalse()) {
+            return -trueVariable;
+        }
+        if (term.isConst()) {
+            return booleanVariable(term);
+        }
+
+        String operator = term.getOperator();
+        if (operator == null) {
+            throw new UnsupportedTermException("Expected a boolean term, but got " + term);
+        }
+        int operandCount = term.getOperandCount();
+        switch (operator) {
+            case "not":
+                return -encode(term.getOperand(0), false);
+            case "and":
+            case "or":
+                {
+                    // and: v <=> (l1 & ... & ln), or is encoded as -v <=> (-l1 & ... & -ln)
+                    int sign = operator.equals("and") ? 1 : -1;
+                    int variable = ++variableCount;
+                    int[] longClause = new int[operandCount + 1];
+                    longClause[0] = sign * variable;
+                    for (int i = 0; i < operandCount; i++) {
+                        int operand = sign * encode(term.getOperand(i), positive);
+                        clauses.add(new int[] {-sign * variable, operand});
+                        longClause[i + 1] = -operand;
+                    }
+                    clauses.add(longClause);
+                    return variable;
+                }
+            case "=":
+                if (operandCount == 2 && isBooleanTerm(term.getOperand(0))) {
+                    // v <=> (l1 <=> l2), the operands occur both positively and negatively
+                    int lhs = encode(term.getOperand(0), false);
+                    int rhs = encode(term.getOperand(1), false);
+                    int variable = ++variableCount;
+                    clauses.add(new int[] {-variable, -lhs, rhs});
+                    clauses.add(new int[] {-variable, lhs, -rhs});
+                    clauses.add(new int[] {variable, lhs, rhs});
+                    clauses.add(new int[] {variable, -lhs, -rhs});
+                    return variable;
+                }
+                if (!positive) {
+                    throw new UnsupportedTermException(
+                            "Integer equations may only occur positively, but got " + term);
+                }
+                return theoryAtom(term);
+            default:
+                throw new UnsupportedTermException("Unsupported operator in " + term);
+        }
+    }
+
+    private boolean isBooleanTerm(SmtText term) {
+        if (term.isTrue() || term.isFalse()) {
+            return true;
+        }
+        if (term.isConst()) {
+            return isBooleanComponent.test(component(term.getName()));
+        }
+        String operator = term.getOperator();
+        return operator != null
+                && (operator.equals("and")
+                        || operator.equals("or")
+                        || operator.equals("not")
+                        || operator.equals("="));
+    }
+
+    private int booleanVariable(SmtText term) throws UnsupportedTermException {
+        String name = term.getName();
+        if (!isBooleanComponent.test(component(name))) {
+            throw new UnsupportedTermException("Expected a boolean variable, but got " + term);
+        }
+        return booleanVariables.computeIfAbsent(name, n -> ++variableCount);
+    }
+
+    // Returns the literal of the integer equation, the atom implies the equation
+    private int theoryAtom(SmtText equation) throws UnsupportedTermException {
+        Map<Integer, Long> coefficients = new TreeMap<>();
+        // lhs - rhs = 0, with the constant terms moved to the right
+        long constant =
+                -linearize(equation.getOperand(0), 1, coefficients)
+                        - linearize(equation.getOperand(1), -1, coefficients);
+        coefficients.values().removeIf(coefficient -> coefficient == 0);
+        if (coefficients.isEmpty()) {
+            return constant == 0 ? trueVariable : -trueVariable;
+        }
+
+        String dimension = null;
+        for (Integer variable : coefficients.keySet()) {
+            String variableDimension = component(integerNames.get(variable));
+            if (dimension == null) {
+                dimension = variableDimension;
+            } else if (!dimension.equals(variableDimension)) {
+                throw new UnsupportedTermException(
+                        "Equation over several dimensions: " + equation);
+            }
+        }
+
+        // canonical form, with the first coefficient positive
+        long sign = coefficients.values().iterator().next() > 0 ? 1 : -1;
+        StringBuilder key = new StringBuilder();
+        for (Map.Entry<Integer, Long> entry : coefficients.entrySet()) {
+            key.append(entry.getKey()).append('*').append(sign * entry.getValue()).append('+');
+        }
+        key.append('=').append(sign * constant);
+
+        TheoryAtom atom = atomsByEquation.get(key.toString());
+        if (atom == null) {
+            atom = new TheoryAtom(++variableCount, dimension, coefficients, constant);
+            atoms.add(atom);
+            atomsByEquation.put(key.toString(), atom);
+        }
+        return atom.variable;
+    }
+
+    // Adds sign * term to the coefficients, and returns sign times its constant part
+    private long linearize(SmtText term, long sign, Map<Integer, Long> coefficients)
+            throws UnsupportedTermException {
+        if (term.isInt()) {
+            return sign * term.getIntValue();
+        }
+        if (term.isConst()) {
+            coefficients.merge(integerVariable(term), sign, Long::sum);
+            return 0;
+        }
+        String operator = term.getOperator();
+        if ("+".equals(operator) || "-".equals(operator)) {
+            long constant = linearize(term.getOperand(0), sign, coefficients);
+            long operandSign = operator.equals("+") ? sign : -sign;
+            for (int i = 1; i < term.getOperandCount(); i++) {
+                constant += linearize(term.getOperand(i), operandSign, coefficients);
+            }
+            return constant;
+        }
+        throw new UnsupportedTermException("Expected a linear integer term, but got " + term);
+    }
+
+    private int integerVariable(SmtText term) throws UnsupportedTermException {
+        String name = term.getName();
+        if (isBooleanComponent.test(component(name))) {
+            throw new UnsupportedTermException("Expected an integer variable, but got " + term);
+        }
+        Integer variable = integerVariables.get(name);
+        if (variable == null) {
+            variable = integerNames.size();
+            integerVariables.put(name, variable);
+            integerNames.add(name);
+        }
+        return variable;
+    }
+
+    /** Returns the component of a z3 variable "slotID-component". */
+    static String component(String name) {
+        return name.substring(name.indexOf('-') + 1);
+    }
+
+    /** Returns the slot ID of a z3 variable "slotID-component". */
+    static int slotID(String name) {
+        return Integer.parseInt(name.substring(0, name.indexOf('-')));
+    }
+
+    /**
+     * Evaluates the term, given the values of the SAT variables indexed by variable and the values
+     * of the integer variables. Used to check the models of the hybrid solver against the terms.
+     */
+    public boolean evaluate(SmtText term, boolean[] satValues, long[] integerValues) {
+        if (term.isTrue() || term.isFalse()) {
+            return term.isTrue();
+        }
+        if (term.isConst()) {
+            Integer variable = booleanVariables.get(term.getName());
+            return variable != null && satValues[variable];
+        }
+        int operandCount = term.getOperandCount();
+        switch (term.getOperator()) {
+            case "not":
+                return !evaluate(term.getOperand(0), satValues, integerValues);
+            case "and":
+                for (int i = 0; i < operandCount; i++) {
+                    if (!evaluate(term.getOperand(i), satValues, integerValues)) {
+                        return false;
+                    }
+                }
+                return true;
+            case "or":
+                for (int i = 0; i < operandCount; i++) {
+                    if (evaluate(term.getOperand(i), satValues, integerValues)) {
+                        return true;
+                    }
+                }
+                return false;
+            case "=":
+                if (isBooleanTerm(term.getOperand(0))) {
+                    return evaluate(term.getOperand(0), satValues, integerValues)
+                            == evaluate(term.getOperand(1), satValues, integerValues);
+                }
+                return evaluateInteger(term.getOperand(0), integerValues)
+                        == evaluateInteger(term.getOperand(1), integerValues);
+            default:
+                return false;
+        }
+    }
+
+    private long evaluateInteger(SmtText term, long[] integerValues) {
+        if (term.isInt()) {
+            return term.getIntValue();
+        }
+        if (term.isConst()) {
+            Integer variable = integerVariables.get(term.getName());
+            return variable != null ? integerValues[variable] : 0;
+        }
+        long value = evaluateInteger(term.getOperand(0), integerValues);
+        for (int i = 1; i < term.getOperandCount(); i++) {
+            long operand = evaluateInteger(term.getOperand(i), integerValues);
+            value = term.getOperator().equals("+") ? value + operand : value - operand;
+        }
+        return value;
+    }
+
+    public List<int[]> getClauses() {
+        return clauses;
+    }
+
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    public List<TheoryAtom> getAtoms() {
+        return atoms;
+    }
+
+    public Map<String, Integer> getBooleanVariables() {
+        return booleanVariables;
+    }
+
+    public List<String> getIntegerNames() {
+        return integerNames;
+    }
+}
@@ -0,0 +1,207 @@
+package backend.hybrid;
+
+import backend.hybrid.SkeletonEncoder.TheoryAtom;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import units.solvers.backend.gje.GaussJordanElimination;
+import units.solvers.backend.gje.representation.GJEEquation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Solves the clauses of a {@link SkeletonEncoder} with sat4j, then the equations of the true theory
+ * atoms of the SAT model dimension by dimension, see {@link GaussJordanElimination}. An
+ * inconsistent set of equations is learned as a clause excluding it, and the skeleton is solved
+ * again.
+ */
+class SkeletonSolver {
+
+    /** Thrown when the skeleton is neither solved nor refuted, see {@link HybridSolver}. */
+    static class UndecidedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UndecidedException(String message) {
+            super(message);
+        }
+    }
+
+    private final SkeletonEncoder encoder;
+    private final int maxIterations;
+
+    private boolean[] satValues;
+    private long[] integerValues;
+
+    // statistics of the last solve
+    long satSolvingTime;
+    long linearSolvingTime;
+    int iterations;
+    int learnedClauses;
+
+    SkeletonSolver(SkeletonEncoder encoder, int maxIterations) {
+        this.encoder = encoder;
+        this.maxIterations = maxIterations;
+    }
+
+    /** The equations of the true atoms of one dimension, and the atom of each equation. */
+    private static class DimensionSystem {
+        final GaussJordanElimination elimination;
+        final List<Integer> atomOfEquation = new ArrayList<>();
+
+        DimensionSystem(int numOfVariables) {
+            elimination = new GaussJordanElimination(numOfVariables);
+        }
+    }
+
+    /**
+     * Returns whether the skeleton has a model whose true atoms hold, in which case the values of
+     * the model are given by {@link #getSatValues()} and {@link #getIntegerValues()}. Variables
+     * which are not determined by the equations are set to 0 unless another integral value is
+     * needed, see {@link GaussJordanElimination#getSolution()}.
+     */
+    public boolean solve() throws UndecidedException {
+        satSolvingTime = 0;
+        linearSolvingTime = 0;
+        iterations = 0;
+        learnedClauses = 0;
+
+        ISolver satSolver = SolverFactory.newDefault();
+        satSolver.newVar(encoder.getVariableCount());
+        try {
+            for (int[] clause : encoder.getClauses()) {
+                satSolver.addClause(new VecInt(clause));
+            }
+
+            List<TheoryAtom> atoms = encoder.getAtoms();
+            // the integer variables of each dimension are numbered densely for the elimination
+            int[] localVariable = new int[encoder.getIntegerNames().size()];
+            Arrays.fill(localVariable, -1);
+            Map<String, List<Integer>> dimensionVariables = new HashMap<>();
+            for (TheoryAtom atom : atoms) {
+                List<Integer> variables =
+                        dimensionVariables.computeIfAbsent(atom.dimension, d -> new ArrayList<>());
+                for (int variable : atom.coefficients.keySet()) {
+                    if (localVariable[variable] < 0) {
+                        localVariable[variable] = variables.size();
+                        variables.add(variable);
+                    }
+                }
+            }
+
+            while (iterations < maxIterations) {
+                iterations++;
+
+                long satStart = System.currentTimeMillis();
+                boolean satisfiable = satSolver.isSatisfiable();
+                satSolvingTime += System.currentTimeMillis() - satStart;
+                if (!satisfiable) {
+                    return false;
+                }
+                satValues = new boolean[encoder.getVariableCount() + 1];
+                for (int literal : satSolver.model()) {
+                    satValues[Math.abs(literal)] = literal > 0;
+                }
+
+                long linearStart = System.currentTimeMillis();
+                try {
+                    // the equations of the true atoms, one system per dimension
+                    Map<String, DimensionSystem> systems = new HashMap<>();
+                    List<int[]> conflictClauses = new ArrayList<>();
+                    for (int i = 0; i < atoms.size(); i++) {
+                        TheoryAtom atom = atoms.get(i);
+                        if (!satValues[atom.variable]) {
+                            continue;
+                        }
+                        DimensionSystem system =
+                                systems.computeIfAbsent(
+                                        atom.dimension,
+                                        d -> new DimensionSystem(dimensionVariables.get(d).size()));
+                        if (!system.elimination.isConsistent()) {
+                            continue;
+                        }
+                        system.atomOfEquation.add(i);
+                        if (!system.elimination.addEquation(equation(atom, localVariable))) {
+                            conflictClauses.add(conflictClause(system, atoms));
+                        }
+                    }
+
+                    if (conflictClauses.isEmpty()) {
+                        integerValues = new long[encoder.getIntegerNames().size()];
+                        for (Map.Entry<String, DimensionSystem> entry : systems.entrySet()) {
+                            int[] solution = entry.getValue().elimination.getSolution();
+                            if (solution == null) {
+                                throw new UndecidedException(
+                                        "the equations of "
+                                                + entry.getKey()
+                                                + " have no integral solution");
+                            }
+                            List<Integer> variables = dimensionVariables.get(entry.getKey());
+                            for (int local = 0; local < solution.length; local++) {
+                                integerValues[variables.get(local)] = solution[local];
+                            }
+                        }
+                        return true;
+                    }
+
+                    // exclude the inconsistent equations from the next SAT models
+                    for (int[] clause : conflictClauses) {
+                        satSolver.addClause(new VecInt(clause));
+                        learnedClauses++;
+                    }
+                } finally {
+                    linearSolvingTime += System.currentTimeMillis() - linearStart;
+                }
+            }
+        } catch (ContradictionException e) {
+            // the skeleton, or a learned clause, is contradictory
+            return false;
+        } catch (TimeoutException e) {
+            throw new UndecidedException("the SAT solver timed out");
+        } finally {
+            satSolver.reset();
+        }
+        throw new UndecidedException("no solution after " + maxIterations + " iterations");
+    }
+
+    // The equation of the atom over the dense variables of its dimension
+    private static GJEEquation equation(TheoryAtom atom, int[] localVariable) {
+        int[] variables = new int[atom.coefficients.size()];
+        long[] coefficients = new long[atom.coefficients.size()];
+        int term = 0;
+        for (Map.Entry<Integer, Long> entry : atom.coefficients.entrySet()) {
+            variables[term] = localVariable[entry.getKey()];
+            coefficients[term++] = entry.getValue();
+        }
+        return GJEEquation.of(variables, coefficients, atom.constant);
+    }
+
+    // The clause excluding the atoms of the equations the inconsistent system was derived from
+    private static int[] conflictClause(DimensionSystem system, List<TheoryAtom> atoms) {
+        BitSet equations = system.elimination.getInconsistentEquations(0);
+        int[] clause = new int[equations.cardinality()];
+        int literal = 0;
+        for (int i = equations.nextSetBit(0); i >= 0; i = equations.nextSetBit(i + 1)) {
+            clause[literal++] = -atoms.get(system.atomOfEquation.get(i)).variable;
+        }
+        return clause;
+    }
+
+    /** Returns the values of the SAT variables of the model, indexed by variable. */
+    public boolean[] getSatValues() {
+        return satValues;
+    }
+
+    /** Returns the values of the integer variables of the model. */
+    public long[] getIntegerValues() {
+        return integerValues;
+    }
+}
@@ -0,0 +1,107 @@
+package backend.util;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Splits a constraint system into independent components, where two variable slots are in the same
+ * component if they are connected through the constraints. Constant slots do not connect
+ * constraints as their values are fixed. Each component can be solved on its own, and the solutions
+ * of all components together form the solution of the whole system.
+ */
+public class ConstraintPartitioner {
+
+    /** A set of slots and the constraints over them, independent of all other components. */
+    public static class Component {
+        public final List<Slot> slots = new ArrayList<>();
+        public final List<Constraint> constraints = new ArrayList<>();
+
+        public int size() {
+            return slots.size() + constraints.size();
+        }
+    }
+
+    private ConstraintPartitioner() {}
+
+    /**
+     * Partitions the slots of the given index and the given constraints into independent
+     * components. Components smaller than batchSize (counting both slots and constraints) are
+     * batched together until the batch reaches batchSize, so that tiny components do not each
+     * become a separate problem.
+     */
+    public static List<Component> partition(
+            SlotIndex slotIndex, Collection<Constraint> constraints, int batchSize) {
+        UnionFind unionFind = new UnionFind(slotIndex.size());
+        for (Constraint constraint : constraints) {
+            int first = -1;
+            for (Slot slot : constraint.getSlots()) {
+                if (slot.isConstant()) {
+                    continue;
+                }
+                int index = slotIndex.indexOf(slot);
+                if (first == -1) {
+                    first = index;
+                } else {
+                    unionFind.union(first, index);
+                }
+            }
+        }
+
+        // component of each representative slot index, and the components in order of creation
+        Component[] componentOfRoot = new Component[slotIndex.size()];
+        List<Component> components = new ArrayList<>();
+        for (int i = 0; i < slotIndex.size(); i++) {
+            Slot slot = slotIndex.getSlot(i);
+            if (slot.isConstant()) {
+                continue;
+            }
+            int root = unionFind.find(i);
+            if (componentOfRoot[root] == null) {
+                componentOfRoot[root] = new Component();
+                components.add(componentOfRoot[root]);
+            }
+            componentOfRoot[root].slots.add(slot);
+        }
+
+        // constraints over only constant slots still need to be encoded in some component
+        Component constantConstraints = new Component();
+        for (Constraint constraint : constraints) {
+            int root = -1;
+            for (Slot slot : constraint.getSlots()) {
+                if (!slot.isConstant()) {
+                    root = unionFind.find(slotIndex.indexOf(slot));
+                    break;
+                }
+            }
+            if (root == -1) {
+                constantConstraints.constraints.add(constraint);
+            } else {
+                componentOfRoot[root].constraints.add(constraint);
+            }
+        }
+
+        List<Component> result = new ArrayList<>();
+        Component batch = constantConstraints;
+        for (Component component : components) {
+            if (component.size() >= batchSize) {
+                result.add(component);
+                continue;
+            }
+            batch.slots.addAll(component.slots);
+            batch.constraints.addAll(component.constraints);
+            if (batch.size() >= batchSize) {
+                result.add(batch);
+                batch = new Component();
+            }
+        }
+        if (batch.size() > 0) {
+            result.add(batch);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,202 @@
+package backend.util;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Presolve which removes the slots whose value can be given directly, so that backends do not
+ * encode them. A slot in no constraint is given the preferred value of the backend. When {@code
+ * eliminateSingleUse} is set, a slot in exactly one subtype constraint is given bottom if it is the
+ * subtype, or top if it is the supertype, which satisfies the constraint whatever the other slot
+ * is; the constraint is removed, which may in turn leave the other slot eliminable.
+ *
+ * <p>Giving top or bottom does not preserve the optimum of the slot preferences, so single use
+ * elimination is only sound to use when not optimizing. Slots are counted through their
+ * representatives in the given {@link SlotEqualityClasses}, and the constraints it eliminates are
+ * not counted.
+ */
+public class SlotElimination {
+
+    /** The value given to an eliminated slot. */
+    public enum Value {
+        PREFERRED,
+        TOP,
+        BOTTOM
+    }
+
+    private final SlotIndex slotIndex;
+    // value of each eliminated slot, indexed by slot index, null for the other slots
+    private final Value[] eliminatedSlots;
+    private int eliminatedSlotCount;
+    private final Set<Constraint> eliminatedConstraints = new HashSet<>();
+
+    /** An instance which eliminates no slots. */
+    public static final SlotElimination NONE = new SlotElimination(SlotIndex.EMPTY);
+
+    private SlotElimination(SlotIndex slotIndex) {
+        this.slotIndex = slotIndex;
+        eliminatedSlots = new Value[slotIndex.size()];
+    }
+
+    /** Eliminates slots of the given slots, which are indexed by the given slot index. */
+    public static SlotElimination compute(
+            SlotIndex slotIndex,
+            Collection<Slot> slots,
+            Collection<Constraint> constraints,
+            SlotEqualityClasses slotEqualityClasses,
+            boolean eliminateSingleUse) {
+        SlotElimination elimination = new SlotElimination(slotIndex);
+
+        // the constraints each representative variable slot occurs in, once per occurrence,
+        // indexed by slot index, null for the slots which are not candidates
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<Constraint>[] occurrences = new List[slotIndex.size()];
+        for (Slot slot : slots) {
+            if (slot.isVariable() && slotEqualityClasses.isRepresentative(slot)) {
+                occurrences[slotIndex.indexOf(slot)] = new ArrayList<>();
+            }
+        }
+        for (Constraint constraint : constraints) {
+            if (slotEqualityClasses.isEliminated(constraint)) {
+                continue;
+            }
+            for (Slot slot : constraint.getSlots()) {
+                int index = slotIndex.indexOf(slotEqualityClasses.getRepresentative(slot));
+                if (occurrences[index] != null) {
+                    occurrences[index].add(constraint);
+                }
+            }
+        }
+
+        // number of occurrences of each slot in constraints not yet eliminated
+        int[] uses = new int[slotIndex.size()];
+        IntQueue worklist = new IntQueue();
+        for (int i = 0; i < occurrences.length; i++) {
+            if (occurrences[i] == null) {
+                continue;
+            }
+            uses[i] = occurrences[i].size();
+            if (uses[i] <= 1) {
+                worklist.add(i);
+            }
+        }
+
+        Value[] values = elimination.eliminatedSlots;
+        while (!worklist.isEmpty()) {
+            int index = worklist.remove();
+            if (values[index] != null) {
+                continue;
+            }
+            if (uses[index] == 0) {
+                elimination.eliminate(index, Value.PREFERRED);
+                continue;
+            }
+            if (uses[index] > 1 || !eliminateSingleUse) {
+                continue;
+            }
+
+            Constraint constraint = null;
+            for (Constraint occurrence : occurrences[index]) {
+                if (!elimination.eliminatedConstraints.contains(occurrence)) {
+                    constraint = occurrence;
+                    break;
+                }
+            }
+            if (!(constraint instanceof SubtypeConstraint)) {
+                continue;
+            }
+            SubtypeConstraint subtypeConstraint = (SubtypeConstraint) constraint;
+            int subtype =
+                    slotIndex.indexOf(
+                            slotEqualityClasses.getRepresentative(subtypeConstraint.getSubtype()));
+            elimination.eliminate(index, subtype == index ? Value.BOTTOM : Value.TOP);
+            elimination.eliminatedConstraints.add(constraint);
+
+            // the other slot of the constraint has one use less
+            for (Slot slot : constraint.getSlots()) {
+                int other = slotIndex.indexOf(slotEqualityClasses.getRepresentative(slot));
+                if (other == index || occurrences[other] == null) {
+                    continue;
+                }
+                uses[other]--;
+                if (uses[other] <= 1) {
+                    worklist.add(other);
+                }
+            }
+        }
+
+        return elimination;
+    }
+
+    private void eliminate(int index, Value value) {
+        eliminatedSlots[index] = value;
+        eliminatedSlotCount++;
+    }
+
+    // a growable queue of slot indices
+    private static class IntQueue {
+        private int[] elements = new int[16];
+        private int head;
+        private int tail;
+
+        void add(int element) {
+            if (tail == elements.length) {
+                elements = Arrays.copyOf(elements, elements.length * 2);
+            }
+            elements[tail++] = element;
+        }
+
+        int remove() {
+            return elements[head++];
+        }
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+    }
+
+    /** Returns whether the given slot is given its value by the elimination. */
+    public boolean isEliminated(Slot slot) {
+        int index = slotIndex.indexOf(slot);
+        return index >= 0 && eliminatedSlots[index] != null;
+    }
+
+    /** Returns whether the constraint is satisfied by the eliminated slots, and is not encoded. */
+    public boolean isEliminated(Constraint constraint) {
+        return eliminatedConstraints.contains(constraint);
+    }
+
+    public int getNumberOfEliminatedSlots() {
+        return eliminatedSlotCount;
+    }
+
+    public int getNumberOfEliminatedConstraints() {
+        return eliminatedConstraints.size();
+    }
+
+    /**
+     * Adds the values of the eliminated slots to the given solution, before it is expanded to the
+     * merged slots by {@link SlotEqualityClasses#expandSolution}.
+     */
+    public <T> void addSolution(Map<Integer, T> solution, Function<Value, T> valueDecoder) {
+        Map<Value, T> decodedValues = new EnumMap<>(Value.class);
+        for (int i = 0; i < eliminatedSlots.length; i++) {
+            if (eliminatedSlots[i] != null) {
+                solution.put(
+                        slotIndex.getSlot(i).getId(),
+                        decodedValues.computeIfAbsent(eliminatedSlots[i], valueDecoder));
+            }
+        }
+    }
+}
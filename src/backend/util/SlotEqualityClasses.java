@@ -0,0 +1,279 @@
+package backend.util;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Presolve which merges slots that the constraints force to be equal into equivalence classes, so
+ * that backends only encode one representative slot per class. A class containing a constant slot
+ * is represented by that constant, so the constant is substituted into every constraint over the
+ * class. Classes which would merge two different constants are left unmerged, so that the conflict
+ * remains visible to the solver as ordinary constraints.
+ *
+ * <p>Backends serialize every slot as its representative, skip the constraints which have been
+ * fully captured by the merging, and expand the solution back to all slots with {@link
+ * #expandSolution}.
+ */
+public class SlotEqualityClasses {
+
+    /** Identifies constraints which only force a group of slots to be equal. */
+    public interface EqualityExtractor {
+        /**
+         * Returns the slots which the constraint forces to be equal, or null if the constraint has
+         * any effect other than these equalities.
+         */
+        List<Slot> getForcedEqualSlots(Constraint constraint);
+    }
+
+    private final SlotIndex slotIndex;
+    // representative of each merged slot, indexed by slot index, null for unmerged slots
+    private final Slot[] representatives;
+    // number of non-constant slots in each class, indexed by the representative's slot index
+    private final int[] classSizes;
+    private final Set<Constraint> eliminatedConstraints = new HashSet<>();
+    // the equalities used in merging each slot, for explaining unsat results
+    private final Map<Integer, List<Edge>> edges = new HashMap<>();
+
+    private static class Edge {
+        final Slot other;
+        final Constraint constraint;
+
+        Edge(Slot other, Constraint constraint) {
+            this.other = other;
+            this.constraint = constraint;
+        }
+    }
+
+    /** An instance which merges no slots. */
+    public static final SlotEqualityClasses NONE = new SlotEqualityClasses(SlotIndex.EMPTY);
+
+    private SlotEqualityClasses(SlotIndex slotIndex) {
+        this.slotIndex = slotIndex;
+        representatives = new Slot[slotIndex.size()];
+        classSizes = new int[slotIndex.size()];
+    }
+
+    /** Merges the slots of the given index which the constraints force to be equal. */
+    public static SlotEqualityClasses compute(
+            SlotIndex slotIndex, Collection<Constraint> constraints, EqualityExtractor extractor) {
+        SlotEqualityClasses classes = new SlotEqualityClasses(slotIndex);
+
+        Map<Constraint, List<Slot>> equalities = new LinkedHashMap<>();
+        // whether each slot appears in an equality
+        boolean[] inEquality = new boolean[slotIndex.size()];
+        UnionFind unionFind = new UnionFind(slotIndex.size());
+        for (Constraint constraint : constraints) {
+            List<Slot> equalSlots = extractor.getForcedEqualSlots(constraint);
+            if (equalSlots == null) {
+                continue;
+            }
+            equalities.put(constraint, equalSlots);
+            int first = slotIndex.indexOf(equalSlots.get(0));
+            for (Slot slot : equalSlots) {
+                int index = slotIndex.indexOf(slot);
+                inEquality[index] = true;
+                unionFind.union(first, index);
+            }
+        }
+
+        // pick a constant as the representative of each class, and find the classes which
+        // contain two different constants
+        ConstantSlot[] classConstants = new ConstantSlot[slotIndex.size()];
+        boolean[] conflictingClasses = new boolean[slotIndex.size()];
+        for (int i = 0; i < slotIndex.size(); i++) {
+            Slot slot = slotIndex.getSlot(i);
+            if (!inEquality[i] || !(slot instanceof ConstantSlot)) {
+                continue;
+            }
+            ConstantSlot constant = (ConstantSlot) slot;
+            int root = unionFind.find(i);
+            ConstantSlot classConstant = classConstants[root];
+            if (classConstant == null) {
+                classConstants[root] = constant;
+            } else if (!AnnotationUtils.areSame(classConstant.getValue(), constant.getValue())) {
+                conflictingClasses[root] = true;
+            }
+        }
+
+        for (int i = 0; i < slotIndex.size(); i++) {
+            Slot slot = slotIndex.getSlot(i);
+            int root = unionFind.find(i);
+            if (!inEquality[i] || conflictingClasses[root] || slot instanceof ConstantSlot) {
+                continue;
+            }
+            Slot representative = classConstants[root];
+            if (representative == null) {
+                representative = slotIndex.getSlot(root);
+            }
+            classes.representatives[i] = representative;
+            classes.classSizes[slotIndex.indexOf(representative)]++;
+        }
+
+        for (Map.Entry<Constraint, List<Slot>> equality : equalities.entrySet()) {
+            Constraint constraint = equality.getKey();
+            List<Slot> equalSlots = equality.getValue();
+            int root = unionFind.find(slotIndex.indexOf(equalSlots.get(0)));
+            if (conflictingClasses[root]) {
+                continue;
+            }
+            classes.eliminatedConstraints.add(constraint);
+            Slot first = equalSlots.get(0);
+            for (Slot slot : equalSlots) {
+                classes.addEdge(first, slot, constraint);
+                classes.addEdge(slot, first, constraint);
+            }
+        }
+
+        return classes;
+    }
+
+    private void addEdge(Slot from, Slot to, Constraint constraint) {
+        List<Edge> slotEdges = edges.get(from.getId());
+        if (slotEdges == null) {
+            slotEdges = new ArrayList<>();
+            edges.put(from.getId(), slotEdges);
+        }
+        slotEdges.add(new Edge(to, constraint));
+    }
+
+    /** Returns the slot which the given slot is encoded as. */
+    public Slot getRepresentative(Slot slot) {
+        int index = slotIndex.indexOf(slot);
+        Slot representative = index >= 0 ? representatives[index] : null;
+        return representative == null ? slot : representative;
+    }
+
+    /** Returns whether the given slot is encoded as itself. */
+    public boolean isRepresentative(Slot slot) {
+        return getRepresentative(slot).getId() == slot.getId();
+    }
+
+    /** Returns the number of non-constant slots represented by the given representative. */
+    public int getClassSize(Slot representative) {
+        int index = slotIndex.indexOf(representative);
+        return index >= 0 && classSizes[index] > 0 ? classSizes[index] : 1;
+    }
+
+    /** Returns whether the constraint is fully captured by the merging and need not be encoded. */
+    public boolean isEliminated(Constraint constraint) {
+        return eliminatedConstraints.contains(constraint);
+    }
+
+    public int getNumberOfEliminatedConstraints() {
+        return eliminatedConstraints.size();
+    }
+
+    /** Returns the number of slots encoded as a different slot. */
+    public int getNumberOfMergedSlots() {
+        int merged = 0;
+        for (int i = 0; i < representatives.length; i++) {
+            if (representatives[i] != null
+                    && representatives[i].getId() != slotIndex.getSlot(i).getId()) {
+                merged++;
+            }
+        }
+        return merged;
+    }
+
+    /** Returns whether the constraint is over any slot which is encoded as a different slot. */
+    public boolean involvesMergedSlots(Constraint constraint) {
+        for (Slot slot : constraint.getSlots()) {
+            if (!isRepresentative(slot)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the eliminated equality constraints connecting the slots of the given constraint to
+     * their representatives. Together with the given constraint, they account for its encoding.
+     */
+    public Collection<Constraint> explain(Constraint constraint) {
+        Set<Constraint> explanation = new HashSet<>();
+        for (Slot slot : constraint.getSlots()) {
+            if (!isRepresentative(slot)) {
+                explanation.addAll(pathToRepresentative(slot));
+            }
+        }
+        return explanation;
+    }
+
+    // breadth first search over the equalities from the slot to its representative
+    private List<Constraint> pathToRepresentative(Slot slot) {
+        Slot representative = getRepresentative(slot);
+        Map<Integer, Edge> reachedBy = new HashMap<>();
+        Queue<Slot> worklist = new ArrayDeque<>();
+        reachedBy.put(slot.getId(), null);
+        worklist.add(slot);
+        while (!worklist.isEmpty()) {
+            Slot current = worklist.remove();
+            if (current.getId() == representative.getId()) {
+                List<Constraint> path = new ArrayList<>();
+                Edge edge = reachedBy.get(current.getId());
+                while (edge != null) {
+                    path.add(edge.constraint);
+                    edge = reachedBy.get(edge.other.getId());
+                }
+                return path;
+            }
+            List<Edge> slotEdges = edges.get(current.getId());
+            if (slotEdges == null) {
+                continue;
+            }
+            for (Edge edge : slotEdges) {
+                if (!reachedBy.containsKey(edge.other.getId())) {
+                    // record the edge backwards, pointing at the slot it was reached from
+                    reachedBy.put(edge.other.getId(), new Edge(current, edge.constraint));
+                    worklist.add(edge.other);
+                }
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Adds the solutions of all merged slots to the given solution of the representatives. Slots
+     * represented by a constant are given the decoded value of the constant.
+     */
+    public <T> void expandSolution(
+            Map<Integer, T> solution, Function<ConstantSlot, T> constantDecoder) {
+        Map<Integer, T> constantSolutions = new HashMap<>();
+        for (int i = 0; i < representatives.length; i++) {
+            Slot representative = representatives[i];
+            int slotID = slotIndex.getSlot(i).getId();
+            if (representative == null || slotID == representative.getId()) {
+                continue;
+            }
+            T value;
+            if (representative instanceof ConstantSlot) {
+                value = constantSolutions.get(representative.getId());
+                if (value == null) {
+                    value = constantDecoder.apply((ConstantSlot) representative);
+                    constantSolutions.put(representative.getId(), value);
+                }
+            } else {
+                value = solution.get(representative.getId());
+            }
+            if (value != null) {
+                solution.put(slotID, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package backend.util;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dense index of the slots of a problem: the slots given to a solver and the slots of its
+ * constraints are numbered 0 to size - 1 once, in order of first appearance, so that encoders,
+ * decoders and presolve passes can keep per-slot data in arrays rather than in maps keyed on boxed
+ * slot IDs. Looking up the index of a slot is an array access on its slot ID.
+ */
+public class SlotIndex {
+
+    /** An index of no slots. */
+    public static final SlotIndex EMPTY = new SlotIndex();
+
+    // index of each slot, indexed by slot ID, -1 for slots not in the index
+    private int[] indexOfSlotID = new int[0];
+    private Slot[] slots = new Slot[0];
+    private int size;
+
+    private SlotIndex() {}
+
+    public static SlotIndex build(Collection<Slot> slots, Collection<Constraint> constraints) {
+        SlotIndex slotIndex = new SlotIndex();
+        slotIndex.slots = new Slot[Math.max(16, slots.size())];
+        for (Slot slot : slots) {
+            slotIndex.add(slot);
+        }
+        for (Constraint constraint : constraints) {
+            for (Slot slot : constraint.getSlots()) {
+                slotIndex.add(slot);
+            }
+        }
+        return slotIndex;
+    }
+
+    private void add(Slot slot) {
+        int slotID = slot.getId();
+        if (slotID >= indexOfSlotID.length) {
+            int oldLength = indexOfSlotID.length;
+            indexOfSlotID = Arrays.copyOf(indexOfSlotID, Math.max(slotID + 1, oldLength * 2));
+            Arrays.fill(indexOfSlotID, oldLength, indexOfSlotID.length, -1);
+        } else if (indexOfSlotID[slotID] >= 0) {
+            return;
+        }
+        if (size == slots.length) {
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        indexOfSlotID[slotID] = size;
+        slots[size++] = slot;
+    }
+
+    /** Returns the number of indexed slots. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the index of the slot with the given ID, or -1 if it is not indexed. */
+    public int indexOf(int slotID) {
+        return slotID >= 0 && slotID < indexOfSlotID.length ? indexOfSlotID[slotID] : -1;
+    }
+
+    /** Returns the index of the slot, or -1 if it is not indexed. */
+    public int indexOf(Slot slot) {
+        return indexOf(slot.getId());
+    }
+
+    public Slot getSlot(int index) {
+        return slots[index];
+    }
+
+    /**
+     * A map from slot IDs to values, stored in an array over a slot index. The values of slots
+     * outside of the index, such as those of slots serialized before the index is set, are kept in
+     * a hash map.
+     */
+    public static final class SlotMap<T> {
+        private SlotIndex slotIndex = EMPTY;
+        private Object[] values = new Object[0];
+        private final Map<Integer, T> unindexedValues = new HashMap<>();
+
+        /** Clears the map, and stores the values of the slots of the given index in an array. */
+        public void setIndex(SlotIndex slotIndex) {
+            this.slotIndex = slotIndex;
+            values = new Object[slotIndex.size()];
+            unindexedValues.clear();
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(int slotID) {
+            int index = slotIndex.indexOf(slotID);
+            return index >= 0 ? (T) values[index] : unindexedValues.get(slotID);
+        }
+
+        public boolean containsKey(int slotID) {
+            return get(slotID) != null;
+        }
+
+        public void put(int slotID, T value) {
+            int index = slotIndex.indexOf(slotID);
+            if (index >= 0) {
+                values[index] = value;
+            } else {
+                unindexedValues.put(slotID, value);
+            }
+        }
+
+        public void clear() {
+            Arrays.fill(values, null);
+            unindexedValues.clear();
+        }
+    }
+}
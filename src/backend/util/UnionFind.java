@@ -0,0 +1,52 @@
+package backend.util;
+
+/** A union-find (disjoint set) structure over the integers 0 to size - 1. */
+public class UnionFind {
+    private final int[] parent;
+    private final int[] rank;
+
+    public UnionFind(int size) {
+        parent = new int[size];
+        rank = new int[size];
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+        }
+    }
+
+    public int size() {
+        return parent.length;
+    }
+
+    /** Returns the representative of the set containing the given element. */
+    public int find(int element) {
+        int root = element;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        // path compression
+        while (parent[element] != root) {
+            int next = parent[element];
+            parent[element] = root;
+            element = next;
+        }
+        return root;
+    }
+
+    /** Merges the sets containing the two elements and returns the new representative. */
+    public int union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return rootA;
+        }
+        if (rank[rootA] < rank[rootB]) {
+            parent[rootA] = rootB;
+            return rootB;
+        }
+        if (rank[rootA] == rank[rootB]) {
+            rank[rootA]++;
+        }
+        parent[rootB] = rootA;
+        return rootA;
+    }
+}
@@ -0,0 +1,120 @@
+package backend.z3smt;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams SMT-LIB text into one or more files through a fixed size buffer, so that the memory used
+ * while serializing stays bounded regardless of the number of constraints. Every byte written is
+ * copied to all of the target files. A target can also be any channel, such as the standard input
+ * of z3, see {@link Z3Pipe}.
+ */
+public class SmtFileWriter implements Closeable {
+
+    private static final int bufferSize = 64 * 1024;
+
+    private final List<WritableByteChannel> channels = new ArrayList<>();
+    // the names of the targets, for error messages
+    private final List<String> names = new ArrayList<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+    /** Adds a target file which is truncated before writing. */
+    public SmtFileWriter overwrite(String file) {
+        return open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /** Adds a target file which is written to in append mode. */
+    public SmtFileWriter append(String file) {
+        return open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private SmtFileWriter open(String file, StandardOpenOption... options) {
+        try {
+            channels.add(FileChannel.open(Paths.get(file), options));
+        } catch (IOException e) {
+            throw new BugInCF("Could not open SMT file " + file, e);
+        }
+        names.add("SMT file " + file);
+        return this;
+    }
+
+    /** Adds a target channel, which is closed with this writer. */
+    public SmtFileWriter to(WritableByteChannel channel, String name) {
+        channels.add(channel);
+        names.add(name);
+        return this;
+    }
+
+    public SmtFileWriter write(CharSequence text) {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                flush();
+            } else if (result.isUnderflow()) {
+                break;
+            } else {
+                throw new BugInCF("Could not encode SMT text: " + result);
+            }
+        }
+        return this;
+    }
+
+    public SmtFileWriter writeLine(CharSequence text) {
+        return write(text).write("\n");
+    }
+
+    /** Writes out the buffered bytes to all target files. */
+    public void flush() {
+        buffer.flip();
+        for (int i = 0; i < channels.size(); i++) {
+            // each channel consumes its own view of the same bytes
+            ByteBuffer view = buffer.duplicate();
+            try {
+                while (view.hasRemaining()) {
+                    channels.get(i).write(view);
+                }
+            } catch (IOException e) {
+                throw new BugInCF("Could not write " + names.get(i), e);
+            }
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() {
+        flush();
+        for (int i = 0; i < channels.size(); i++) {
+            try {
+                channels.get(i).close();
+            } catch (IOException e) {
+                throw new BugInCF("Could not close " + names.get(i), e);
+            }
+        }
+        channels.clear();
+        names.clear();
+    }
+}
@@ -0,0 +1,226 @@
+package backend.z3smt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An SMT-LIB term built directly as text, as a lightweight alternative to z3 Java API expressions
+ * for constraints which are only written out to an SMT file. Terms are folded as they are built:
+ * literals are evaluated, and conjunctions and disjunctions drop neutral operands and collapse on
+ * absorbing ones, so tautologies and contradictions are found without running z3's simplifier.
+ *
+ * <p>The factory methods are named after their {@link com.microsoft.z3.Context} counterparts.
+ */
+public final class SmtText {
+
+    private enum Kind {
+        TRUE,
+        FALSE,
+        INT,
+        // a variable name
+        ATOM,
+        // an application of an operator to operands
+        APP
+    }
+
+    private static final String AND = "and";
+    private static final String OR = "or";
+    private static final String NOT = "not";
+
+    public static final SmtText TRUE = new SmtText(Kind.TRUE, "true", 0, null);
+    public static final SmtText FALSE = new SmtText(Kind.FALSE, "false", 0, null);
+
+    private final Kind kind;
+    // the text of literals and atoms, or the operator of applications
+    private final String text;
+    private final int intValue;
+    private final SmtText[] operands;
+
+    private SmtText(Kind kind, String text, int intValue, SmtText[] operands) {
+        this.kind = kind;
+        this.text = text;
+        this.intValue = intValue;
+        this.operands = operands;
+    }
+
+    private static SmtText app(String operator, SmtText... operands) {
+        return new SmtText(Kind.APP, operator, 0, operands);
+    }
+
+    public static SmtText mkBool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    public static SmtText mkInt(int value) {
+        // SMT-LIB has no negative literals
+        String text = value < 0 ? "(- " + -(long) value + ")" : Integer.toString(value);
+        return new SmtText(Kind.INT, text, value, null);
+    }
+
+    /** Returns the z3 constant of the given name, quoted as z3 prints it. */
+    public static SmtText mkConst(String name) {
+        return new SmtText(Kind.ATOM, "|" + name + "|", 0, null);
+    }
+
+    public static SmtText mkNot(SmtText arg) {
+        if (arg.kind == Kind.TRUE) {
+            return FALSE;
+        }
+        if (arg.kind == Kind.FALSE) {
+            return TRUE;
+        }
+        if (arg.isApp(NOT)) {
+            return arg.operands[0];
+        }
+        return app(NOT, arg);
+    }
+
+    public static SmtText mkAnd(SmtText... args) {
+        return mkJunction(AND, TRUE, FALSE, args);
+    }
+
+    public static SmtText mkOr(SmtText... args) {
+        return mkJunction(OR, FALSE, TRUE, args);
+    }
+
+    // Builds a conjunction or disjunction, flattening nested applications of the same operator
+    private static SmtText mkJunction(
+            String operator, SmtText neutral, SmtText absorbing, SmtText... args) {
+        List<SmtText> flattened = new ArrayList<>(args.length);
+        for (SmtText arg : args) {
+            if (arg == absorbing) {
+                return absorbing;
+            }
+            if (arg == neutral) {
+                continue;
+            }
+            if (arg.isApp(operator)) {
+                for (SmtText operand : arg.operands) {
+                    flattened.add(operand);
+                }
+            } else {
+                flattened.add(arg);
+            }
+        }
+        if (flattened.isEmpty()) {
+            return neutral;
+        }
+        if (flattened.size() == 1) {
+            return flattened.get(0);
+        }
+        return app(operator, flattened.toArray(new SmtText[0]));
+    }
+
+    public static SmtText mkEq(SmtText lhs, SmtText rhs) {
+        if (lhs.isLiteral() && rhs.isLiteral()) {
+            return mkBool(lhs.kind == rhs.kind && lhs.intValue == rhs.intValue);
+        }
+        // comparing a boolean against a literal is the boolean itself or its negation
+        if (lhs.isBoolLiteral()) {
+            return lhs == TRUE ? rhs : mkNot(rhs);
+        }
+        if (rhs.isBoolLiteral()) {
+            return rhs == TRUE ? lhs : mkNot(lhs);
+        }
+        if (lhs.kind == Kind.ATOM && rhs.kind == Kind.ATOM && lhs.text.equals(rhs.text)) {
+            return TRUE;
+        }
+        return app("=", lhs, rhs);
+    }
+
+    public static SmtText mkAdd(SmtText lhs, SmtText rhs) {
+        if (lhs.kind == Kind.INT && rhs.kind == Kind.INT) {
+            return mkInt(lhs.intValue + rhs.intValue);
+        }
+        if (lhs.isZero()) {
+            return rhs;
+        }
+        if (rhs.isZero()) {
+            return lhs;
+        }
+        return app("+", lhs, rhs);
+    }
+
+    public static SmtText mkSub(SmtText lhs, SmtText rhs) {
+        if (lhs.kind == Kind.INT && rhs.kind == Kind.INT) {
+            return mkInt(lhs.intValue - rhs.intValue);
+        }
+        if (rhs.isZero()) {
+            return lhs;
+        }
+        return app("-", lhs, rhs);
+    }
+
+    public boolean isTrue() {
+        return kind == Kind.TRUE;
+    }
+
+    public boolean isFalse() {
+        return kind == Kind.FALSE;
+    }
+
+    /** Returns whether this term is an integer literal. */
+    public boolean isInt() {
+        return kind == Kind.INT;
+    }
+
+    public int getIntValue() {
+        return intValue;
+    }
+
+    /** Returns whether this term is a z3 constant, see {@link #mkConst(String)}. */
+    public boolean isConst() {
+        return kind == Kind.ATOM;
+    }
+
+    /** Returns the name of a z3 constant, without the surrounding |'s. */
+    public String getName() {
+        return text.substring(1, text.length() - 1);
+    }
+
+    /** Returns the operator of an application, or null if this term is not an application. */
+    public String getOperator() {
+        return kind == Kind.APP ? text : null;
+    }
+
+    public int getOperandCount() {
+        return kind == Kind.APP ? operands.length : 0;
+    }
+
+    public SmtText getOperand(int index) {
+        return operands[index];
+    }
+
+    private boolean isBoolLiteral() {
+        return kind == Kind.TRUE || kind == Kind.FALSE;
+    }
+
+    private boolean isLiteral() {
+        return isBoolLiteral() || kind == Kind.INT;
+    }
+
+    private boolean isZero() {
+        return kind == Kind.INT && intValue == 0;
+    }
+
+    private boolean isApp(String operator) {
+        return kind == Kind.APP && text.equals(operator);
+    }
+
+    /** Appends the SMT-LIB text of this term to the given builder. */
+    public StringBuilder appendTo(StringBuilder sb) {
+        if (kind != Kind.APP) {
+            return sb.append(text);
+        }
+        sb.append('(').append(text);
+        for (SmtText operand : operands) {
+            operand.appendTo(sb.append(' '));
+        }
+        return sb.append(')');
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+}
@@ -0,0 +1,94 @@
+package backend.z3smt;
+
+import backend.util.SlotEqualityClasses;
+import backend.util.SlotIndex;
+
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.LubVariableSlot;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.AbstractFormatTranslator;
+import checkers.inference.solver.frontend.Lattice;
+
+/**
+ * Format translator which encodes slots and constraints directly as SMT-LIB text, without going
+ * through the z3 Java API. It is used in place of a {@link Z3SmtFormatTranslator} when writing the
+ * SMT file, see {@link Z3SmtFormatTranslator#createTextFormatTranslator()}. The encodings must use
+ * the same z3 variable names as the corresponding {@link Z3SmtFormatTranslator}, which decodes the
+ * solutions.
+ */
+// AbstractFormatTranslator<SlotEncodingT, ConstraintEncodingT, SlotSolutionT>
+public abstract class SmtTextFormatTranslator<SlotEncodingT, SlotSolutionT>
+        extends AbstractFormatTranslator<SlotEncodingT, SmtText, SlotSolutionT> {
+
+    /** Cache of all serialized slots, keyed on slot ID and stored densely over the slot index. */
+    protected final SlotIndex.SlotMap<SlotEncodingT> serializedSlots = new SlotIndex.SlotMap<>();
+
+    /** Slots forced to be equal by the constraints are serialized as their representative. */
+    protected SlotEqualityClasses slotEqualityClasses = SlotEqualityClasses.NONE;
+
+    public SmtTextFormatTranslator(Lattice lattice) {
+        super(lattice);
+    }
+
+    protected abstract SlotEncodingT serializeVarSlot(VariableSlot slot);
+
+    protected abstract SlotEncodingT serializeConstantSlot(ConstantSlot slot);
+
+    /** Sets the index of the slots of the problem, and clears the serialized slots. */
+    public void setSlotIndex(SlotIndex slotIndex) {
+        serializedSlots.setIndex(slotIndex);
+    }
+
+    public void setSlotEqualityClasses(SlotEqualityClasses slotEqualityClasses) {
+        this.slotEqualityClasses = slotEqualityClasses;
+    }
+
+    // Serializes the slot as the representative of its equality class
+    private SlotEncodingT serializeRepresentative(VariableSlot slot) {
+        Slot representative = slotEqualityClasses.getRepresentative(slot);
+        if (representative instanceof ConstantSlot) {
+            return serializeConstantSlot((ConstantSlot) representative);
+        }
+        return serializeVarSlot((VariableSlot) representative);
+    }
+
+    @Override
+    public SlotEncodingT serialize(VariableSlot slot) {
+        return serializeRepresentative(slot);
+    }
+
+    @Override
+    public SlotEncodingT serialize(ConstantSlot slot) {
+        return serializeConstantSlot(slot);
+    }
+
+    @Override
+    public SlotEncodingT serialize(ExistentialVariableSlot slot) {
+        return serializeRepresentative(slot);
+    }
+
+    @Override
+    public SlotEncodingT serialize(RefinementVariableSlot slot) {
+        return serializeRepresentative(slot);
+    }
+
+    @Override
+    public SlotEncodingT serialize(CombVariableSlot slot) {
+        return serializeRepresentative(slot);
+    }
+
+    @Override
+    public SlotEncodingT serialize(LubVariableSlot slot) {
+        return serializeRepresentative(slot);
+    }
+
+    public abstract String generateZ3SlotDeclaration(VariableSlot slot);
+
+    public abstract SmtText encodeSlotWellformnessConstraint(VariableSlot slot);
+
+    public abstract SmtText encodeSlotPreferenceConstraint(VariableSlot slot);
+}
@@ -0,0 +1,60 @@
+package backend.z3smt;
+
+import com.microsoft.z3.Context;
+import com.microsoft.z3.Native;
+
+import java.util.Map;
+
+/**
+ * Owns a z3 context for the duration of a solve. Opening the scope creates the context and
+ * initializes the format translator on it; closing the scope makes the translator drop every
+ * expression it built and closes the context, so that the native memory of z3 is released instead
+ * of growing with each solve in a long running JVM.
+ */
+public class Z3ContextScope implements AutoCloseable {
+
+    private final Context ctx;
+    private final Z3SmtFormatTranslator<?, ?> formatTranslator;
+    private boolean closed;
+
+    /**
+     * Creates a context with the given z3 settings, and initializes the format translator on it.
+     */
+    public Z3ContextScope(
+            Map<String, String> z3Settings,
+            Z3SmtFormatTranslator<?, ?> formatTranslator,
+            int bitVectorWidth) {
+        ctx = z3Settings.isEmpty() ? new Context() : new Context(z3Settings);
+        this.formatTranslator = formatTranslator;
+        formatTranslator.init(ctx, bitVectorWidth);
+    }
+
+    public Context getContext() {
+        return ctx;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        formatTranslator.releaseContext();
+        ctx.close();
+    }
+
+    /** Returns the bytes of the java heap in use. */
+    public static long heapUsedBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** Returns the bytes of native memory z3 estimates it has allocated, over all contexts. */
+    public static long nativeUsedBytes() {
+        return Native.getEstimatedAllocSize();
+    }
+}
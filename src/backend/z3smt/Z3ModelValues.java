@@ -0,0 +1,83 @@
+package backend.z3smt;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The values of a z3 model, stored densely with one row per slot and one column per component of
+ * the slot's encoding. Boolean values are stored as 1 for true and 0 for false. The components are
+ * given by {@link Z3SmtFormatTranslator#getModelComponents()}.
+ */
+public class Z3ModelValues {
+
+    private final List<String> components;
+    private final int componentCount;
+
+    // row of each slot, indexed by slot ID, -1 for slots without values
+    private int[] rowOfSlot = new int[0];
+    private int[] slotOfRow = new int[16];
+    private int[] values;
+    private boolean[] assigned;
+    private int rows;
+
+    public Z3ModelValues(List<String> components) {
+        this.components = components;
+        this.componentCount = components.size();
+        values = new int[slotOfRow.length * componentCount];
+        assigned = new boolean[slotOfRow.length * componentCount];
+    }
+
+    public List<String> getComponents() {
+        return components;
+    }
+
+    /** Sets the value of the given component of the slot, adding a row for the slot if needed. */
+    public void set(int slotID, int component, int value) {
+        int index = row(slotID) * componentCount + component;
+        values[index] = value;
+        assigned[index] = true;
+    }
+
+    private int row(int slotID) {
+        if (slotID >= rowOfSlot.length) {
+            int oldLength = rowOfSlot.length;
+            rowOfSlot = Arrays.copyOf(rowOfSlot, Math.max(slotID + 1, oldLength * 2));
+            Arrays.fill(rowOfSlot, oldLength, rowOfSlot.length, -1);
+        }
+        int row = rowOfSlot[slotID];
+        if (row >= 0) {
+            return row;
+        }
+
+        if (rows == slotOfRow.length) {
+            slotOfRow = Arrays.copyOf(slotOfRow, rows * 2);
+            values = Arrays.copyOf(values, slotOfRow.length * componentCount);
+            assigned = Arrays.copyOf(assigned, slotOfRow.length * componentCount);
+        }
+        rowOfSlot[slotID] = rows;
+        slotOfRow[rows] = slotID;
+        return rows++;
+    }
+
+    /** Returns the number of slots with values. */
+    public int getSlotCount() {
+        return rows;
+    }
+
+    public int getSlotID(int row) {
+        return slotOfRow[row];
+    }
+
+    /** Returns whether the model gives a value to the component of the slot in the given row. */
+    public boolean isAssigned(int row, int component) {
+        return assigned[row * componentCount + component];
+    }
+
+    public int getInt(int row, int component) {
+        return values[row * componentCount + component];
+    }
+
+    public boolean getBool(int row, int component) {
+        return values[row * componentCount + component] != 0;
+    }
+}
@@ -0,0 +1,566 @@
+package backend.z3smt;
+
+import com.microsoft.z3.Status;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming parser for the output of the z3 binary. The output is tokenized in place from a fixed
+ * size buffer, and the model values are written straight into a {@link Z3ModelValues}, without
+ * building a string per variable.
+ *
+ * <p>The z3 variables of the model must be named "slotID-component", with components from the
+ * list given to the parser. Constraint indicator literals, named with the given prefix followed
+ * by the constraint index, are collected from the unsat core and skipped in the model. The
+ * statistics printed by z3 when run with -st are collected by name, and the bounds on the
+ * objectives printed by get-objectives are summed.
+ *
+ * <p>The output may hold the results of several check-sat commands, each possibly followed by a
+ * model. The status is that of the last check, and the values of a model override those of the
+ * models before it.
+ */
+public class Z3OutputParser {
+
+    private static final int bufferSize = 8 * 1024;
+
+    private static final int EOF = -1;
+    private static final int LPAREN = 0;
+    private static final int RPAREN = 1;
+    private static final int SYMBOL = 2;
+    private static final int STRING = 3;
+
+    private final Reader reader;
+    private final char[] buffer = new char[bufferSize];
+    private int position;
+    private int limit;
+
+    // text of the last symbol token, without surrounding |'s
+    private char[] token = new char[64];
+    private int tokenLength;
+
+    private final char[][] components;
+    private final String indicatorPrefix;
+
+    private Status status;
+    private Status firstStatus;
+    // the number of check-sat results, and the one the last model followed, 0 if none
+    private int checks;
+    private int modelCheck;
+    private boolean timedOut;
+    private final Z3ModelValues model;
+    private final List<Integer> unsatCoreIndices = new ArrayList<>();
+    private final Map<String, Double> statistics = new LinkedHashMap<>();
+    // sums of the bounds on the objectives, null if not printed or not numbers
+    private Double objectiveLower;
+    private Double objectiveUpper;
+    // the last number printed by eval, null if none
+    private Double evaluatedValue;
+
+    public Z3OutputParser(Reader reader, List<String> components, String indicatorPrefix) {
+        this.reader = reader;
+        this.components = new char[components.size()][];
+        for (int i = 0; i < components.size(); i++) {
+            this.components[i] = components.get(i).toCharArray();
+        }
+        this.indicatorPrefix = indicatorPrefix;
+        model = new Z3ModelValues(components);
+    }
+
+    /** Returns the sat status, or null if z3 did not give one. */
+    public Status getStatus() {
+        return status;
+    }
+
+    /** Returns the sat status of the first check-sat, or null if z3 did not give one. */
+    public Status getFirstStatus() {
+        return firstStatus;
+    }
+
+    /** Returns the number of check-sat results printed by z3. */
+    public int getCheckCount() {
+        return checks;
+    }
+
+    /**
+     * Returns the number, counting from 1, of the check-sat result followed by the last model, or
+     * 0 if no model was printed.
+     */
+    public int getModelCheck() {
+        return modelCheck;
+    }
+
+    /** Returns the last number printed by eval, or null if none was printed. */
+    public Double getEvaluatedValue() {
+        return evaluatedValue;
+    }
+
+    /** Returns whether z3 gave up because of its -T timeout. */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public Z3ModelValues getModel() {
+        return model;
+    }
+
+    /** Returns the indices of the constraint indicators in the unsat core. */
+    public List<Integer> getUnsatCoreIndices() {
+        return unsatCoreIndices;
+    }
+
+    /** Returns the statistics printed by z3, keyed on their names without the leading colon. */
+    public Map<String, Double> getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns the sum of the lower bounds on the objectives printed by get-objectives, or null if
+     * they were not printed.
+     */
+    public Double getObjectiveLower() {
+        return objectiveLower;
+    }
+
+    /** Returns the sum of the costs of the objectives in the model, see getObjectiveLower(). */
+    public Double getObjectiveUpper() {
+        return objectiveUpper;
+    }
+
+    // Sample satisfying output format, older versions of z3 begin the model with "(model":
+    /* @formatter:off // this is for eclipse formatter */
+    /*
+    sat
+    (
+      (define-fun |338-BOT| () Bool
+        false)
+      (define-fun |750-m| () Int
+        (- 9))
+      (define-fun c!12 () Bool
+        true)
+      (define-fun |750-s| () (_ BitVec 8)
+        #xfe)
+    )
+    */
+    /* @formatter:on // this is for eclipse formatter */
+    // Sample unsat output format, the model is not available after an unsat result:
+    /* @formatter:off // this is for eclipse formatter */
+    /*
+    unsat
+    (error "line 1057 column 10: model is not available")
+    (c!58 c!73 c!188 c!553)
+    */
+    /* @formatter:on // this is for eclipse formatter */
+    // Sample statistics format, printed after the other output when z3 is run with -st:
+    /* @formatter:off // this is for eclipse formatter */
+    /*
+    (:conflicts         12
+     :decisions         340
+     :max-memory        19.45
+     :time              0.03)
+    */
+    /* @formatter:on // this is for eclipse formatter */
+    // Sample objectives format, an objective not proven optimal is given as an interval:
+    /* @formatter:off // this is for eclipse formatter */
+    /*
+    (objectives
+     (12)
+     (prefs (interval 3 7))
+    )
+    */
+    /* @formatter:on // this is for eclipse formatter */
+    public void parse() throws IOException {
+        int tokenType;
+        while ((tokenType = nextToken()) != EOF) {
+            if (tokenType == LPAREN) {
+                parseList();
+            } else if (tokenType == SYMBOL) {
+                parseStatusOrValue();
+            }
+        }
+    }
+
+    // Parses a check-sat result, or a number printed by eval
+    private void parseStatusOrValue() {
+        if (tokenEquals("sat")) {
+            setStatus(Status.SATISFIABLE);
+        } else if (tokenEquals("unsat")) {
+            setStatus(Status.UNSATISFIABLE);
+        } else if (tokenEquals("unknown")) {
+            setStatus(Status.UNKNOWN);
+        } else if (tokenEquals("timeout")) {
+            // printed when z3 is killed by its -T timeout
+            setStatus(Status.UNKNOWN);
+            timedOut = true;
+        } else {
+            Double value = tokenNumber();
+            if (value != null) {
+                evaluatedValue = value;
+            }
+        }
+    }
+
+    private void setStatus(Status checkStatus) {
+        status = checkStatus;
+        if (checks == 0) {
+            firstStatus = checkStatus;
+        }
+        checks++;
+    }
+
+    // Parses a list whose opening parenthesis has been consumed: a model, a definition within a
+    // model, an unsat core, or an error
+    private void parseList() throws IOException {
+        int tokenType = nextToken();
+        if (tokenType == SYMBOL && tokenEquals("error")) {
+            // reported for the one of get-model and get-unsat-core which is not available
+            skipList();
+            return;
+        }
+        if (tokenType == SYMBOL && tokenEquals("define-fun")) {
+            parseDefineFun();
+            return;
+        }
+        if (tokenType == SYMBOL && tokenLength > 1 && token[0] == ':') {
+            parseStatistics();
+            return;
+        }
+        if (tokenType == SYMBOL && tokenEquals("objectives")) {
+            parseObjectives();
+            return;
+        }
+        while (tokenType != RPAREN && tokenType != EOF) {
+            if (tokenType == LPAREN) {
+                parseList();
+            } else if (tokenType == SYMBOL && isIndicator()) {
+                unsatCoreIndices.add(parseTokenInt(indicatorPrefix.length()));
+            }
+            tokenType = nextToken();
+        }
+    }
+
+    // Parses "name () Sort value)" following a define-fun
+    private void parseDefineFun() throws IOException {
+        expect(SYMBOL);
+        if (isIndicator()) {
+            // constraint indicator literals are not slot components
+            skipList();
+            return;
+        }
+
+        int separator = 0;
+        while (separator < tokenLength && token[separator] != '-') {
+            separator++;
+        }
+        if (separator == 0 || separator == tokenLength) {
+            throw new BugInCF("Unexpected z3 variable " + new String(token, 0, tokenLength));
+        }
+        int slotID = parseTokenInt(0, separator);
+        int component = findComponent(separator + 1);
+
+        expect(LPAREN);
+        expect(RPAREN);
+        // the sort, bit-vector sorts are written as (_ BitVec width)
+        int bitVectorWidth = 0;
+        if (nextToken() == LPAREN) {
+            expect(SYMBOL);
+            expect(SYMBOL);
+            expect(SYMBOL);
+            bitVectorWidth = parseTokenInt(0);
+            expect(RPAREN);
+        }
+
+        int value;
+        if (nextToken() == LPAREN) {
+            // negative numbers are written as (- n)
+            expect(SYMBOL);
+            expect(SYMBOL);
+            value = -parseTokenInt(0);
+            expect(RPAREN);
+        } else if (tokenEquals("true")) {
+            value = 1;
+        } else if (tokenEquals("false")) {
+            value = 0;
+        } else if (tokenLength > 2 && token[0] == '#') {
+            // bit-vectors are written as #x or #b literals, read as two's complement
+            value = parseBitVector(bitVectorWidth);
+        } else {
+            value = parseTokenInt(0);
+        }
+        expect(RPAREN);
+
+        model.set(slotID, component, value);
+        modelCheck = checks;
+    }
+
+    // Parses the ":name value" pairs of a statistics list, starting from the first name
+    private void parseStatistics() throws IOException {
+        int tokenType = SYMBOL;
+        while (tokenType == SYMBOL && tokenLength > 1 && token[0] == ':') {
+            String name = new String(token, 1, tokenLength - 1);
+            tokenType = nextToken();
+            if (tokenType != SYMBOL) {
+                break;
+            }
+            try {
+                statistics.put(name, Double.parseDouble(new String(token, 0, tokenLength)));
+            } catch (NumberFormatException e) {
+                // not a numeric statistic
+            }
+            tokenType = nextToken();
+        }
+        if (tokenType == LPAREN) {
+            skipList();
+            skipList();
+        } else if (tokenType != RPAREN) {
+            skipList();
+        }
+    }
+
+    // Parses the objectives following "objectives", each an optional name followed by a value or
+    // an interval of values
+    private void parseObjectives() throws IOException {
+        double lower = 0;
+        double upper = 0;
+        boolean numeric = true;
+        int tokenType;
+        while ((tokenType = nextToken()) == LPAREN) {
+            Double objectiveLower = null;
+            Double objectiveUpper = null;
+            while ((tokenType = nextToken()) != RPAREN && tokenType != EOF) {
+                if (tokenType == LPAREN) {
+                    // (interval lower upper), bounds other than numbers are skipped
+                    tokenType = nextToken();
+                    if (tokenType == SYMBOL && tokenEquals("interval")) {
+                        objectiveLower = nextNumber();
+                        objectiveUpper = nextNumber();
+                        skipList();
+                    } else if (tokenType == LPAREN) {
+                        skipList();
+                        skipList();
+                    } else if (tokenType != RPAREN) {
+                        skipList();
+                    }
+                } else if (tokenType == SYMBOL) {
+                    Double value = tokenNumber();
+                    if (value != null) {
+                        objectiveLower = value;
+                        objectiveUpper = value;
+                    }
+                }
+            }
+            if (objectiveLower == null || objectiveUpper == null) {
+                numeric = false;
+            } else {
+                lower += objectiveLower;
+                upper += objectiveUpper;
+            }
+        }
+        if (numeric) {
+            objectiveLower = lower;
+            objectiveUpper = upper;
+        }
+    }
+
+    // Returns the next token as a number, or null if it is not one, skipping it if it is a list
+    private Double nextNumber() throws IOException {
+        int tokenType = nextToken();
+        if (tokenType == LPAREN) {
+            skipList();
+        }
+        return tokenType == SYMBOL ? tokenNumber() : null;
+    }
+
+    private Double tokenNumber() {
+        try {
+            return Double.parseDouble(new String(token, 0, tokenLength));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private int parseBitVector(int width) {
+        int radix;
+        if (token[1] == 'x') {
+            radix = 16;
+        } else if (token[1] == 'b') {
+            radix = 2;
+        } else {
+            throw new BugInCF("Unexpected z3 bit-vector " + new String(token, 0, tokenLength));
+        }
+        if (width <= 0 || width > 32) {
+            throw new BugInCF("Unexpected z3 bit-vector width " + width);
+        }
+        long value = 0;
+        for (int i = 2; i < tokenLength; i++) {
+            int digit = Character.digit(token[i], radix);
+            if (digit < 0) {
+                throw new BugInCF("Unexpected z3 bit-vector " + new String(token, 0, tokenLength));
+            }
+            value = value * radix + digit;
+        }
+        if (value >= 1L << (width - 1)) {
+            value -= 1L << width;
+        }
+        return (int) value;
+    }
+
+    private int findComponent(int start) {
+        int length = tokenLength - start;
+        for (int i = 0; i < components.length; i++) {
+            char[] component = components[i];
+            if (component.length != length) {
+                continue;
+            }
+            int j = 0;
+            while (j < length && component[j] == token[start + j]) {
+                j++;
+            }
+            if (j == length) {
+                return i;
+            }
+        }
+        throw new BugInCF(
+                "Unexpected component in z3 variable " + new String(token, 0, tokenLength));
+    }
+
+    // Skips the rest of a list whose opening parenthesis has been consumed
+    private void skipList() throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            int tokenType = nextToken();
+            if (tokenType == LPAREN) {
+                depth++;
+            } else if (tokenType == RPAREN) {
+                depth--;
+            } else if (tokenType == EOF) {
+                return;
+            }
+        }
+    }
+
+    private void expect(int expectedType) throws IOException {
+        if (nextToken() != expectedType) {
+            throw new BugInCF("Unexpected z3 output near " + new String(token, 0, tokenLength));
+        }
+    }
+
+    private boolean tokenEquals(String text) {
+        if (tokenLength != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (token[i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isIndicator() {
+        if (tokenLength <= indicatorPrefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < indicatorPrefix.length(); i++) {
+            if (token[i] != indicatorPrefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int parseTokenInt(int start) {
+        return parseTokenInt(start, tokenLength);
+    }
+
+    private int parseTokenInt(int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = token[i];
+            if (c < '0' || c > '9') {
+                throw new BugInCF("Unexpected z3 number " + new String(token, 0, tokenLength));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Tokenizer ===================================================================================
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, bufferSize);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void appendToToken(int c) {
+        if (tokenLength == token.length) {
+            char[] longerToken = new char[token.length * 2];
+            System.arraycopy(token, 0, longerToken, 0, tokenLength);
+            token = longerToken;
+        }
+        token[tokenLength++] = (char) c;
+    }
+
+    private int nextToken() throws IOException {
+        int c = read();
+        while (c != EOF && Character.isWhitespace(c)) {
+            c = read();
+        }
+        tokenLength = 0;
+        switch (c) {
+            case EOF:
+                return EOF;
+            case '(':
+                return LPAREN;
+            case ')':
+                return RPAREN;
+            case '"':
+                // a doubled quote within a string is an escaped quote
+                while (true) {
+                    c = read();
+                    if (c == EOF) {
+                        return STRING;
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            unread(c);
+                            return STRING;
+                        }
+                    }
+                }
+            case '|':
+                for (c = read(); c != '|' && c != EOF; c = read()) {
+                    appendToToken(c);
+                }
+                return SYMBOL;
+            default:
+                while (c != EOF && !Character.isWhitespace(c) && c != '(' && c != ')') {
+                    appendToToken(c);
+                    c = read();
+                }
+                unread(c);
+                return SYMBOL;
+        }
+    }
+
+    // Pushes back a character just read, only parentheses need to be seen again
+    private void unread(int c) {
+        if (c == '(' || c == ')') {
+            position--;
+        }
+    }
+}
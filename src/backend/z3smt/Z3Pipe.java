@@ -0,0 +1,159 @@
+package backend.z3smt;
+
+import checkers.inference.solver.util.ExternalSolverUtils;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs the z3 binary on SMT-LIB text which is streamed into its standard input while the text is
+ * still being encoded, so that the encoding overlaps with the parsing and internalization in z3 and
+ * no SMT file is written.
+ *
+ * <p>The encoder writes through the channel given by {@link #getInput()}, typically as a target of
+ * an {@link SmtFileWriter}, whose buffers are put into a bounded queue. A writer thread feeds the
+ * queued buffers to z3, and a reader thread parses the standard output of z3 concurrently. The
+ * encoder only waits when the queue is full.
+ */
+public class Z3Pipe<T> {
+
+    // number of buffers queued for z3 before the encoder waits
+    private static final int queueCapacity = 16;
+    // marks the end of the input in the queue
+    private static final byte[] endOfInput = new byte[0];
+
+    private final Process process;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(queueCapacity);
+    private final ExecutorService threads = Executors.newFixedThreadPool(3);
+    private final Future<?> writer;
+    private final Future<T> reader;
+    private final QueueChannel input = new QueueChannel();
+
+    /** Starts z3 with the given command, which must read its standard input. */
+    public Z3Pipe(List<String> command, Function<BufferedReader, T> outputParser) {
+        try {
+            process = new ProcessBuilder(command).start();
+        } catch (IOException e) {
+            throw new BugInCF("Could not start " + String.join(" ", command), e);
+        }
+        writer = threads.submit(this::feedInput);
+        reader =
+                threads.submit(
+                        () ->
+                                outputParser.apply(
+                                        new BufferedReader(
+                                                new InputStreamReader(
+                                                        process.getInputStream(),
+                                                        StandardCharsets.UTF_8))));
+        threads.submit(
+                () ->
+                        ExternalSolverUtils.printStdStream(
+                                System.err,
+                                new BufferedReader(
+                                        new InputStreamReader(
+                                                process.getErrorStream(),
+                                                StandardCharsets.UTF_8))));
+    }
+
+    // Writes the queued buffers to the standard input of z3 until the end of the input
+    private Void feedInput() throws IOException, InterruptedException {
+        try (OutputStream stdIn = process.getOutputStream()) {
+            while (true) {
+                byte[] bytes = queue.take();
+                if (bytes == endOfInput) {
+                    return null;
+                }
+                stdIn.write(bytes);
+            }
+        }
+    }
+
+    /** Returns the channel to the standard input of z3, closing it ends the input. */
+    public WritableByteChannel getInput() {
+        return input;
+    }
+
+    // Queues the bytes for the writer thread, or drops them if z3 no longer reads its input
+    private void enqueue(byte[] bytes) {
+        try {
+            while (!queue.offer(bytes, 100, TimeUnit.MILLISECONDS)) {
+                if (writer.isDone()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BugInCF("Interrupted while streaming the constraints to z3", e);
+        }
+    }
+
+    private class QueueChannel implements WritableByteChannel {
+        private boolean open = true;
+
+        @Override
+        public int write(ByteBuffer src) {
+            byte[] bytes = new byte[src.remaining()];
+            src.get(bytes);
+            enqueue(bytes);
+            return bytes.length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            if (open) {
+                open = false;
+                enqueue(endOfInput);
+            }
+        }
+    }
+
+    /**
+     * Waits for z3 to exit after the end of its input, and returns its parsed output. Input which
+     * has not been ended yet is ended first.
+     */
+    public T finish() {
+        input.close();
+        try {
+            try {
+                writer.get();
+            } catch (ExecutionException e) {
+                // z3 exited before reading all of its input, its output tells why
+                System.err.println("z3 stopped reading its input: " + e.getCause());
+            }
+            T result = reader.get();
+            process.waitFor();
+            return result;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new BugInCF("Failed to run z3 on its standard input", e);
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    /** Kills z3 and stops the threads of the pipe, whose result is no longer needed. */
+    public void destroy() {
+        process.destroyForcibly();
+        threads.shutdownNow();
+    }
+}
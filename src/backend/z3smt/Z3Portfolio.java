@@ -0,0 +1,263 @@
+package backend.z3smt;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Races several z3 configurations on the same SMT file and keeps the first conclusive answer. The
+ * other z3 processes are killed as soon as one strategy answers, and every strategy is given the
+ * same time budget, after which it counts as timed out.
+ */
+public class Z3Portfolio {
+
+    /** The z3 configurations which can be raced, as z3 command line parameters. */
+    public enum Strategy {
+        /** z3 with its default configuration */
+        standard(),
+        /** z3 with different random seeds, which changes the search order */
+        seed1("smt.random_seed=1", "sat.random_seed=1"),
+        seed2("smt.random_seed=2", "sat.random_seed=2"),
+        /** set up the SMT solver for quantifier free linear integer arithmetic */
+        qflia("smt.logic=QF_LIA"),
+        /** use the simplex based arithmetic solver */
+        simplex("smt.arith.solver=2");
+
+        private final String[] params;
+
+        Strategy(String... params) {
+            this.params = params;
+        }
+    }
+
+    // extra time given to a z3 process to exit on its own after its time budget
+    private static final long timeoutGraceMillis = 5000;
+
+    private final String z3Program;
+    private final List<Strategy> strategies;
+    // time budget of each strategy, 0 for none
+    private final int timeoutSeconds;
+
+    // statistics, updated concurrently by the components being solved
+    private final Map<Strategy, Integer> wins = new EnumMap<>(Strategy.class);
+    private final Map<Strategy, Integer> timeouts = new EnumMap<>(Strategy.class);
+
+    public Z3Portfolio(String z3Program, List<Strategy> strategies, int timeoutSeconds) {
+        if (strategies.isEmpty()) {
+            throw new BugInCF("A z3 portfolio needs at least one strategy");
+        }
+        this.z3Program = z3Program;
+        this.strategies = strategies;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * Parses a list of strategy names separated by '+', or "true" for all strategies. Returns an
+     * empty list if the argument is null or "false".
+     */
+    public static List<Strategy> parseStrategies(String strategiesArg) {
+        if (strategiesArg == null || strategiesArg.equals("false")) {
+            return Collections.emptyList();
+        }
+        if (strategiesArg.equals("true")) {
+            return Arrays.asList(Strategy.values());
+        }
+        List<Strategy> strategies = new ArrayList<>();
+        for (String name : strategiesArg.split("\\+")) {
+            try {
+                strategies.add(Strategy.valueOf(name));
+            } catch (IllegalArgumentException e) {
+                throw new BugInCF(
+                        "Unsupported z3 portfolio strategy: "
+                                + name
+                                + ". Supported strategies are: "
+                                + Arrays.toString(Strategy.values()));
+            }
+        }
+        return strategies;
+    }
+
+    /** Returns the number of z3 processes run by {@link #run} at once. */
+    public int getNumberOfStrategies() {
+        return strategies.size();
+    }
+
+    /** Returns the z3 command for running the given strategy on the SMT file. */
+    public String[] command(Strategy strategy, String smtFile) {
+        List<String> command = new ArrayList<>();
+        command.add(z3Program);
+        if (timeoutSeconds > 0) {
+            command.add("-T:" + timeoutSeconds);
+        }
+        // print the z3 statistics after the result
+        command.add("-st");
+        command.addAll(Arrays.asList(strategy.params));
+        command.add(smtFile);
+        return command.toArray(new String[0]);
+    }
+
+    // the outcome of running one strategy
+    private static class Outcome<R> {
+        final Strategy strategy;
+        final R result;
+        final long time;
+
+        Outcome(Strategy strategy, R result, long time) {
+            this.strategy = strategy;
+            this.result = result;
+            this.time = time;
+        }
+    }
+
+    // the z3 processes of one run, which are all killed once the run is over, including the ones
+    // started after that
+    private static class Processes {
+        private final List<Process> processes = new ArrayList<>();
+        private boolean cancelled;
+
+        // Adds a started process, or kills it if the run is already over
+        synchronized void add(Process process) {
+            if (cancelled) {
+                process.destroyForcibly();
+            } else {
+                processes.add(process);
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            for (Process process : processes) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * Runs every strategy on the SMT file concurrently. Returns the result of the first strategy
+     * whose result is conclusive, the result of the last strategy if none are, or the timed out
+     * result if the strategies overrun their time budget.
+     *
+     * @param parser parses the standard output of z3 into a result
+     * @param isConclusive whether a result answers the query, so the other strategies can stop
+     * @param timedOut makes the result of a run whose strategies overrun their time budget
+     */
+    public <R> R run(
+            String smtFile,
+            Function<BufferedReader, R> parser,
+            Predicate<R> isConclusive,
+            Supplier<R> timedOut) {
+        Processes processes = new Processes();
+        ExecutorService executor = Executors.newFixedThreadPool(strategies.size());
+        CompletionService<Outcome<R>> completionService =
+                new ExecutorCompletionService<>(executor);
+        List<Future<Outcome<R>>> futures = new ArrayList<>();
+        for (Strategy strategy : strategies) {
+            futures.add(
+                    completionService.submit(
+                            () -> runStrategy(strategy, smtFile, parser, processes)));
+        }
+
+        long deadline =
+                timeoutSeconds > 0
+                        ? System.currentTimeMillis()
+                                + TimeUnit.SECONDS.toMillis(timeoutSeconds)
+                                + timeoutGraceMillis
+                        : Long.MAX_VALUE;
+        R lastResult = null;
+        try {
+            for (int remaining = strategies.size(); remaining > 0; remaining--) {
+                Future<Outcome<R>> done =
+                        completionService.poll(
+                                deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    // the strategies still running have overrun their budget
+                    for (int i = 0; i < strategies.size(); i++) {
+                        if (!futures.get(i).isDone()) {
+                            recordTimeout(strategies.get(i));
+                        }
+                    }
+                    return timedOut.get();
+                }
+                Outcome<R> outcome = done.get();
+                lastResult = outcome.result;
+                if (isConclusive.test(outcome.result)) {
+                    increment(wins, outcome.strategy);
+                    return outcome.result;
+                }
+                if (timeoutSeconds > 0
+                        && outcome.time >= TimeUnit.SECONDS.toMillis(timeoutSeconds)) {
+                    recordTimeout(outcome.strategy);
+                }
+            }
+            return lastResult;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new BugInCF("Failed to run the z3 portfolio on " + smtFile, e);
+        } finally {
+            // kill the losing strategies, which also ends the threads reading their output. The
+            // threads do not react to interrupts while starting or reading from z3, so the
+            // processes they start from now on are killed as they are added.
+            processes.cancel();
+            executor.shutdownNow();
+        }
+    }
+
+    private <R> Outcome<R> runStrategy(
+            Strategy strategy,
+            String smtFile,
+            Function<BufferedReader, R> parser,
+            Processes processes)
+            throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        ProcessBuilder processBuilder = new ProcessBuilder(command(strategy, smtFile));
+        processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = processBuilder.start();
+        processes.add(process);
+
+        R result;
+        try (BufferedReader stdOut =
+                new BufferedReader(
+                        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            result = parser.apply(stdOut);
+        }
+        process.waitFor();
+        return new Outcome<>(strategy, result, System.currentTimeMillis() - start);
+    }
+
+    private void recordTimeout(Strategy strategy) {
+        System.err.println("z3 strategy " + strategy + " timed out");
+        increment(timeouts, strategy);
+    }
+
+    private synchronized void increment(Map<Strategy, Integer> counts, Strategy strategy) {
+        counts.merge(strategy, 1, Integer::sum);
+    }
+
+    /** Returns the number of components solved first by each strategy. */
+    public synchronized Map<Strategy, Integer> getWins() {
+        return new EnumMap<>(wins);
+    }
+
+    /** Returns the number of components on which each strategy ran out of time. */
+    public synchronized Map<Strategy, Integer> getTimeouts() {
+        return new EnumMap<>(timeouts);
+    }
+}
@@ -1,7 +1,13 @@
 package backend.z3smt;
 
+import backend.util.SlotElimination;
+import backend.util.SlotEqualityClasses;
+import backend.util.SlotIndex;
+import backend.util.SlotEqualityClasses.EqualityExtractor;
+
 import checkers.inference.model.CombVariableSlot;
 import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
 import checkers.inference.model.ExistentialVariableSlot;
 import checkers.inference.model.LubVariableSlot;
 import checkers.inference.model.RefinementVariableSlot;
@@ -12,9 +18,9 @@ import checkers.inference.solver.frontend.Lattice;
 
 import com.microsoft.z3.BoolExpr;
 import com.microsoft.z3.Context;
+import com.microsoft.z3.Model;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -27,26 +33,78 @@ public abstract class Z3SmtFormatTranslator<SlotEncodingT, SlotSolutionT>
 
     protected Context ctx;
 
-    /** Cache of all serialized slots, keyed on slot ID. */
-    protected final Map<Integer, SlotEncodingT> serializedSlots;
+    /** Width of the bit-vectors encoding the numeric components of slots, 0 for integers. */
+    protected int bitVectorWidth;
+
+    /** Dense index of the slots of the problem being encoded. */
+    protected SlotIndex slotIndex = SlotIndex.EMPTY;
+
+    /** Cache of all serialized slots, keyed on slot ID and stored densely over the slot index. */
+    protected final SlotIndex.SlotMap<SlotEncodingT> serializedSlots = new SlotIndex.SlotMap<>();
+
+    /** Slots forced to be equal by the constraints are serialized as their representative. */
+    protected SlotEqualityClasses slotEqualityClasses = SlotEqualityClasses.NONE;
 
     public Z3SmtFormatTranslator(Lattice lattice) {
         super(lattice);
-        serializedSlots = new HashMap<>();
     }
 
-    public final void init(Context ctx) {
+    public final void init(Context ctx, int bitVectorWidth) {
         this.ctx = ctx;
+        this.bitVectorWidth = bitVectorWidth;
+        serializedSlots.clear();
         finishInitializingEncoders();
     }
 
+    /**
+     * Drops every expression built in the current context, which is about to be closed. The
+     * translator must be initialized again before it is used, see {@link Z3ContextScope}.
+     * Subclasses which keep expressions of their own must override this method to drop them.
+     */
+    public void releaseContext() {
+        serializedSlots.clear();
+        ctx = null;
+    }
+
     protected abstract SlotEncodingT serializeVarSlot(VariableSlot slot);
 
     protected abstract SlotEncodingT serializeConstantSlot(ConstantSlot slot);
 
+    /** Sets the index of the slots of the problem, and clears the serialized slots. */
+    public void setSlotIndex(SlotIndex slotIndex) {
+        this.slotIndex = slotIndex;
+        serializedSlots.setIndex(slotIndex);
+    }
+
+    public void setSlotEqualityClasses(SlotEqualityClasses slotEqualityClasses) {
+        this.slotEqualityClasses = slotEqualityClasses;
+    }
+
+    /** Returns the constraints which only force slots to be equal, for the equality presolve. */
+    public EqualityExtractor createEqualityExtractor() {
+        return constraint -> null;
+    }
+
+    /**
+     * Returns a translator which writes the same encodings directly as SMT-LIB text, or null if
+     * there is none. Solutions of the text encodings are decoded by this translator.
+     */
+    public SmtTextFormatTranslator<?, SlotSolutionT> createTextFormatTranslator() {
+        return null;
+    }
+
+    // Serializes the slot as the representative of its equality class
+    private SlotEncodingT serializeRepresentative(VariableSlot slot) {
+        Slot representative = slotEqualityClasses.getRepresentative(slot);
+        if (representative instanceof ConstantSlot) {
+            return serializeConstantSlot((ConstantSlot) representative);
+        }
+        return serializeVarSlot((VariableSlot) representative);
+    }
+
     @Override
     public SlotEncodingT serialize(VariableSlot slot) {
-        return serializeVarSlot(slot);
+        return serializeRepresentative(slot);
     }
 
     @Override
@@ -56,22 +114,22 @@ public abstract class Z3SmtFormatTranslator<SlotEncodingT, SlotSolutionT>
 
     @Override
     public SlotEncodingT serialize(ExistentialVariableSlot slot) {
-        return serializeVarSlot(slot);
+        return serializeRepresentative(slot);
     }
 
     @Override
     public SlotEncodingT serialize(RefinementVariableSlot slot) {
-        return serializeVarSlot(slot);
+        return serializeRepresentative(slot);
     }
 
     @Override
     public SlotEncodingT serialize(CombVariableSlot slot) {
-        return serializeVarSlot(slot);
+        return serializeRepresentative(slot);
     }
 
     @Override
     public SlotEncodingT serialize(LubVariableSlot slot) {
-        return serializeVarSlot(slot);
+        return serializeRepresentative(slot);
     }
 
     /**
@@ -80,12 +138,40 @@ public abstract class Z3SmtFormatTranslator<SlotEncodingT, SlotSolutionT>
      */
     public void preAnalyzeSlots(Collection<Slot> slots) {}
 
+    /**
+     * Subclasses can override this method to perform pre-analysis of the constraints for encoding
+     * optimization, it is called after {@link #preAnalyzeSlots(Collection)}
+     */
+    public void preAnalyzeConstraints(Collection<Slot> slots, Collection<Constraint> constraints) {}
+
     public abstract String generateZ3SlotDeclaration(VariableSlot slot);
 
     public abstract BoolExpr encodeSlotWellformnessConstraint(VariableSlot slot);
 
     public abstract BoolExpr encodeSlotPreferenceConstraint(VariableSlot slot);
 
+    /**
+     * Returns the components of the encoding of a slot, each of which is a z3 variable named
+     * "slotID-component". The order gives the columns of a {@link Z3ModelValues}.
+     */
+    public abstract List<String> getModelComponents();
+
+    /** Returns whether the given component of the slot encodings is a boolean, or an integer. */
+    public abstract boolean isBooleanModelComponent(String component);
+
+    /** Decodes a model parsed from the output of the z3 binary. */
+    public abstract Map<Integer, AnnotationMirror> decodeSolution(
+            Z3ModelValues model, ProcessingEnvironment processingEnv);
+
+    /** Decodes the value of a constant slot, given to the slots merged into the constant. */
+    public abstract AnnotationMirror decodeConstantSlot(
+            ConstantSlot slot, ProcessingEnvironment processingEnv);
+
+    /** Decodes the value given to the slots removed by the {@link SlotElimination} presolve. */
+    public abstract AnnotationMirror decodeEliminatedSlot(
+            SlotElimination.Value value, ProcessingEnvironment processingEnv);
+
+    /** Decodes a model obtained from running z3 in-process through the Java API. */
     public abstract Map<Integer, AnnotationMirror> decodeSolution(
-            List<String> model, ProcessingEnvironment processingEnv);
+            Model model, ProcessingEnvironment processingEnv);
 }
@@ -1,9 +1,16 @@
 package backend.z3smt;
 
+import backend.util.ConstraintPartitioner;
+import backend.util.ConstraintPartitioner.Component;
+import backend.util.SlotElimination;
+import backend.util.SlotEqualityClasses;
+import backend.util.SlotIndex;
+
 import checkers.inference.InferenceMain;
 import checkers.inference.model.ArithmeticConstraint;
 import checkers.inference.model.ArithmeticConstraint.ArithmeticOperationKind;
 import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
 import checkers.inference.model.SubtypeConstraint;
@@ -12,7 +19,6 @@ import checkers.inference.model.serialization.ToStringSerializer;
 import checkers.inference.solver.backend.Solver;
 import checkers.inference.solver.frontend.Lattice;
 import checkers.inference.solver.util.ExternalSolverUtils;
-import checkers.inference.solver.util.FileUtils;
 import checkers.inference.solver.util.SolverArg;
 import checkers.inference.solver.util.SolverEnvironment;
 import checkers.inference.solver.util.Statistics;
@@ -20,17 +26,31 @@ import checkers.inference.solver.util.Statistics;
 import com.microsoft.z3.BoolExpr;
 import com.microsoft.z3.Context;
 import com.microsoft.z3.Expr;
+import com.microsoft.z3.Model;
+import com.microsoft.z3.Status;
 
 import org.checkerframework.javacutil.BugInCF;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import javax.lang.model.element.AnnotationMirror;
 
@@ -40,34 +60,205 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
 
     public enum Z3SolverEngineArg implements SolverArg {
         /** option to use optimizing mode or not */
-        optimizingMode
+        optimizingMode,
+        /** option to select how z3 is run, see {@link Z3Mode}; defaults to external */
+        z3Mode,
+        /** option to select how the SMT file is encoded, see {@link SmtEncoder} */
+        smtEncoder,
+        /**
+         * option to race z3 strategies on each component in external mode: "true" for all
+         * strategies, or strategy names separated by '+', see {@link Z3Portfolio.Strategy}
+         */
+        z3Portfolio,
+        /** option to give up on a component (or a portfolio strategy) after this many seconds */
+        z3Timeout,
+        /**
+         * option to reuse the z3 outputs of unchanged components from earlier runs, stored in this
+         * directory, in external mode, see {@link Z3SolutionCache}
+         */
+        z3CacheDir,
+        /** option to bound the size of the z3 solution cache in megabytes; defaults to 256 */
+        z3CacheSize,
+        /**
+         * option to encode numeric slot components as signed bit-vectors of this width instead of
+         * integers, with the z3api encoder
+         */
+        z3BitVectorWidth,
+        /**
+         * option to bound the optimization of each component in optimizing mode to this many
+         * seconds, after which the best model found so far is used. The hard constraints are
+         * checked first, without the soft constraints, and their model is used when the
+         * optimization finds none within the budget. In inprocess mode the check counts against
+         * the budget, otherwise the optimization is given the whole budget.
+         */
+        z3OptimizeBudget
+    }
+
+    /** The ways of running z3 on the encoded constraints. */
+    public enum Z3Mode {
+        /** write the constraints to an SMT file and run the z3 binary on it, for debugging */
+        external,
+        /** assert the constraints directly through the z3 Java API and read back the model */
+        inprocess,
+        /**
+         * run the z3 binary on its standard input, streaming the constraints into it as they are
+         * encoded, without an SMT file, see {@link Z3Pipe}
+         */
+        pipelined
+    }
+
+    /** The ways of encoding the SMT file in external mode. */
+    public enum SmtEncoder {
+        /** build z3 Java API expressions, simplify them with z3 and print them */
+        z3api,
+        /** write SMT-LIB text directly, see {@link SmtTextFormatTranslator} */
+        text
     }
 
-    protected final Context ctx;
+    // the settings of the z3 contexts, each solve opens a context scope which owns the context
+    protected final Map<String, String> z3Settings = new HashMap<>();
+    protected Z3ContextScope contextScope;
+    protected Context ctx;
     protected com.microsoft.z3.Optimize solver;
-    protected StringBuffer smtFileContents;
+
+    // in external mode, the smt file is streamed out through these writers as it is encoded
+    protected SmtFileWriter smtFileWriter;
+    protected SmtFileWriter slotsDebugWriter;
+    protected SmtFileWriter constraintsDebugWriter;
 
     protected static final String z3Program = "z3";
+    protected Z3Mode z3Mode;
     protected boolean optimizingMode;
-    protected boolean getUnsatCore;
 
-    // used in non-optimizing mode to find unsat constraints
-    protected final Map<String, Constraint> serializedConstraints = new HashMap<>();
-    protected final List<String> unsatConstraintIDs = new ArrayList<>();
+    // time budget for solving each component in seconds, 0 for none
+    protected final int timeoutSeconds;
+
+    // width of the bit-vectors encoding numeric slot components, 0 for integers
+    protected final int bitVectorWidth;
+
+    // In optimizing mode with a budget, z3 first finds a model of the hard constraints, then
+    // improves its cost with core-guided MaxSMT until the budget in seconds runs out, 0 for none
+    protected final int optimizeBudgetSeconds;
+    // the soft constraints asserted into the solver in inprocess mode, as one objective
+    protected com.microsoft.z3.Optimize.Handle softObjective;
+    // in anytime optimizing mode, the hard constraints are first checked without the soft
+    // constraints: inprocess they are also asserted into this plain solver, and the soft
+    // constraints are kept to cost its model
+    protected com.microsoft.z3.Solver hardSolver;
+    private final List<SoftConstraint<BoolExpr>> softConstraints = new ArrayList<>();
+    // in external and pipelined modes, the soft constraints are written after the check of the
+    // hard constraints
+    private final List<SoftConstraint<String>> deferredSoftConstraints = new ArrayList<>();
+    // races several z3 strategies on each component when enabled, otherwise null
+    protected Z3Portfolio portfolio;
+
+    // reuses the z3 outputs of unchanged components when enabled, otherwise null
+    protected Z3SolutionCache solutionCache;
+
+    // default bound on the size of the solution cache in megabytes
+    protected static final long defaultCacheSizeMB = 256;
+
+    // encodes the SMT file when the text encoder is selected, otherwise null
+    protected SmtTextFormatTranslator<?, SlotSolutionT> textFormatTranslator;
+
+    // In non-optimizing mode every encoded constraint is guarded by an indicator literal c!i and
+    // z3 is asked to check satisfiability assuming all indicators, so that an unsat core is
+    // available from the same run. The constraint guarded by c!i is stored at index i.
+    public static final String constraintIndicatorPrefix = "c!";
+    protected final List<Constraint> indicatedConstraints = new ArrayList<>();
+    // indicator literals used in inprocess mode
+    protected final List<BoolExpr> constraintIndicators = new ArrayList<>();
+    protected final List<Integer> unsatConstraintIndices = new ArrayList<>();
+
+    // The constraints are split into independent components which are encoded and solved
+    // separately. In external mode up to one z3 process per core is run concurrently.
+    protected static final int parallelism = Runtime.getRuntime().availableProcessors();
+    // components smaller than this are batched together, see ConstraintPartitioner
+    protected static final int minComponentBatchSize = 500;
+    protected final List<Component> unsatComponents = new ArrayList<>();
+    // components z3 gave no answer for, because it timed out or failed, which are not unsat
+    protected final List<Component> undecidedComponents = new ArrayList<>();
+
+    // In optimizing mode, the preference that the two sides of a subtype or comparable constraint
+    // are equal is encoded once per pair of slots, keyed on the unordered pair of representative
+    // slot IDs, with a weight counting the constraints preferring it
+    private final Map<Long, SoftEquality> softEqualities = new LinkedHashMap<>();
+
+    private static class SoftEquality {
+        final Slot first;
+        final Slot second;
+        int weight = 1;
+
+        SoftEquality(Slot first, Slot second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    private static class SoftConstraint<T> {
+        final T preference;
+        final int weight;
+
+        SoftConstraint(T preference, int weight) {
+            this.preference = preference;
+            this.weight = weight;
+        }
+    }
+
+    // columns of the models parsed from the output of z3, see Z3ModelValues
+    protected List<String> modelComponents;
+
+    // slots forced to be equal are merged before encoding, see SlotEqualityClasses
+    protected SlotEqualityClasses slotEqualityClasses;
+    // slots given their values by the presolve, without being encoded
+    protected SlotElimination slotElimination;
+    // dense index of the slots, shared by the presolve passes and the translators
+    protected SlotIndex slotIndex;
+
+    /** The outcome of running z3 on one component. */
+    protected static class ComponentResult {
+        protected Status status;
+        // model of the component parsed from the output of z3, in external mode
+        protected Z3ModelValues modelValues;
+        // model of the component, in inprocess mode
+        protected Model model;
+        protected final List<Integer> unsatConstraintIndices = new ArrayList<>();
+        // whether z3 gave up on the component because it ran out of time
+        protected boolean timedOut;
+        // the statistics reported by z3 for the component, keyed on their names
+        protected final Map<String, Double> z3Statistics = new HashMap<>();
+        // the output of z3, only kept when it is to be stored in the solution cache
+        protected String output;
+        // in optimizing mode with a budget, the cost of the model and the lower bound on the
+        // optimal cost reported by z3, null if not reported
+        protected Double cost;
+        protected Double lowerBound;
+        // whether the budget ran out before the model was proven optimal, in which case the model
+        // may be that of the hard constraints
+        protected boolean budgetExhausted;
+
+        // whether the result answers the query, rather than z3 giving up or failing
+        protected boolean isConclusive() {
+            return status == Status.SATISFIABLE || status == Status.UNSATISFIABLE;
+        }
+    }
 
     // file is written at projectRootFolder/constraints.smt
     protected static final String pathToProject =
             new File(new File("").getAbsolutePath()).toString();
     protected static final String constraintsFile = pathToProject + "/z3Constraints.smt";
-    protected static final String constraintsUnsatCoreFile =
-            pathToProject + "/z3ConstraintsUnsatCore.smt";
     protected static final String constraintsStatsFile = pathToProject + "/z3ConstraintsGlob.smt";
 
-    // timing statistics variables
-    protected long serializationStart;
-    protected long serializationEnd;
-    protected long solvingStart;
-    protected long solvingEnd;
+    // timing statistics variables, accumulated over all components
+    protected long serializationTime;
+    protected long solvingTime;
+
+    // finer timings of the serialization phases in nanoseconds, the file writes are excluded from
+    // the encoding phases and counted on their own
+    protected long slotEncodingNanos;
+    protected long hardConstraintNanos;
+    protected long softConstraintNanos;
+    protected long fileWriteNanos;
 
     public Z3SmtSolver(
             SolverEnvironment solverEnvironment,
@@ -77,26 +268,124 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
             Lattice lattice) {
         super(solverEnvironment, slots, constraints, z3SmtFormatTranslator, lattice);
 
-        // creating solver with timeout
-        // Map<String, String> z3Args = new HashMap<>();
-        // int timeout = 2 * 60 * 1000; // timeout of 2 mins
-        // z3Args.put("timeout", Integer.toString(timeout));
-        // ctx = new Context(z3Args);
+        timeoutSeconds = parseTimeout(solverEnvironment.getArg(Z3SolverEngineArg.z3Timeout));
+        if (timeoutSeconds > 0) {
+            // contexts are created with the timeout, which applies to inprocess mode
+            z3Settings.put("timeout", Integer.toString(timeoutSeconds * 1000));
+        }
+
+        bitVectorWidth =
+                parseBitVectorWidth(solverEnvironment.getArg(Z3SolverEngineArg.z3BitVectorWidth));
+        optimizeBudgetSeconds =
+                parseOptimizeBudget(solverEnvironment.getArg(Z3SolverEngineArg.z3OptimizeBudget));
+    }
+
+    /**
+     * Opens a z3 context scope and initializes the format translator on it, unless a scope is
+     * already open.
+     */
+    public void openContext() {
+        if (contextScope == null || contextScope.isClosed()) {
+            contextScope = new Z3ContextScope(z3Settings, formatTranslator, bitVectorWidth);
+            ctx = contextScope.getContext();
+        }
+    }
 
-        // creating solver without timeout
-        ctx = new Context();
+    /** Drops the z3 objects of the solver and closes the z3 context scope, if one is open. */
+    public void closeContext() {
+        solver = null;
+        softObjective = null;
+        hardSolver = null;
+        softConstraints.clear();
+        constraintIndicators.clear();
+        ctx = null;
+        if (contextScope != null) {
+            contextScope.close();
+        }
+    }
 
-        z3SmtFormatTranslator.init(ctx);
+    // Records the heap and the native z3 memory in use at the given phase
+    private static void recordMemoryStatistics(String phase) {
+        Statistics.addOrIncrementEntry(
+                "z3_heap_used_" + phase + "(KB)", Z3ContextScope.heapUsedBytes() / 1024);
+        Statistics.addOrIncrementEntry(
+                "z3_native_used_" + phase + "(KB)", Z3ContextScope.nativeUsedBytes() / 1024);
     }
 
     // Main entry point
     @Override
     public Map<Integer, AnnotationMirror> solve() {
+        recordMemoryStatistics("before_solve");
+        openContext();
+        boolean unsat = false;
+        try {
+            Map<Integer, AnnotationMirror> result = solveInContext();
+            unsat = result == null;
+            return result;
+        } finally {
+            recordMemoryStatistics("after_solve");
+            // the context of an unsat result is kept until it is explained
+            if (!unsat) {
+                closeContext();
+                recordMemoryStatistics("after_release");
+            }
+        }
+    }
+
+    private Map<Integer, AnnotationMirror> solveInContext() {
         Map<Integer, AnnotationMirror> result;
 
         // serialize based on user choice of running in optimizing or non-optimizing mode
         optimizingMode = solverEnvironment.getBoolArg(Z3SolverEngineArg.optimizingMode);
-        getUnsatCore = false;
+        z3Mode = parseZ3Mode(solverEnvironment.getArg(Z3SolverEngineArg.z3Mode));
+        textFormatTranslator = null;
+        if (parseSmtEncoder(solverEnvironment.getArg(Z3SolverEngineArg.smtEncoder))
+                == SmtEncoder.text) {
+            if (z3Mode == Z3Mode.inprocess) {
+                throw new BugInCF(
+                        "The text encoder writes an SMT file and cannot be used in inprocess mode");
+            }
+            if (bitVectorWidth > 0) {
+                throw new BugInCF("The text encoder only supports integer encodings");
+            }
+            textFormatTranslator = formatTranslator.createTextFormatTranslator();
+            if (textFormatTranslator == null) {
+                throw new BugInCF("No text encoder is available for " + formatTranslator);
+            }
+        }
+        List<Z3Portfolio.Strategy> strategies =
+                Z3Portfolio.parseStrategies(
+                        solverEnvironment.getArg(Z3SolverEngineArg.z3Portfolio));
+        portfolio = null;
+        if (!strategies.isEmpty()) {
+            if (z3Mode != Z3Mode.external) {
+                throw new BugInCF("The z3 portfolio runs z3 on SMT files and needs external mode");
+            }
+            portfolio = new Z3Portfolio(z3Program, strategies, timeoutSeconds);
+        }
+        solutionCache = null;
+        String cacheDir = solverEnvironment.getArg(Z3SolverEngineArg.z3CacheDir);
+        if (cacheDir != null) {
+            if (z3Mode != Z3Mode.external) {
+                throw new BugInCF(
+                        "The z3 solution cache hashes the SMT files and needs external mode");
+            }
+            long cacheSizeMB = defaultCacheSizeMB;
+            String cacheSizeArg = solverEnvironment.getArg(Z3SolverEngineArg.z3CacheSize);
+            if (cacheSizeArg != null) {
+                try {
+                    cacheSizeMB = Long.parseLong(cacheSizeArg);
+                } catch (NumberFormatException e) {
+                    throw new BugInCF(
+                            "Unsupported value for solver argument "
+                                    + Z3SolverEngineArg.z3CacheSize
+                                    + ": "
+                                    + cacheSizeArg
+                                    + ". Expected a number of megabytes");
+                }
+            }
+            solutionCache = new Z3SolutionCache(Paths.get(cacheDir), cacheSizeMB * 1024 * 1024);
+        }
 
         if (optimizingMode) {
             System.err.println("Encoding for optimizing mode");
@@ -104,16 +393,57 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
             System.err.println("Encoding for non-optimizing mode");
         }
 
-        serializeSMTFileContents();
-
-        solvingStart = System.currentTimeMillis();
-        // in Units, if the status is SAT then there must be output in the model
-        List<String> results = runZ3Solver();
-        solvingEnd = System.currentTimeMillis();
-
+        long presolveStart = System.currentTimeMillis();
+        slotIndex = SlotIndex.build(slots, constraints);
+        formatTranslator.setSlotIndex(slotIndex);
+        slotEqualityClasses =
+                SlotEqualityClasses.compute(
+                        slotIndex, constraints, formatTranslator.createEqualityExtractor());
+        formatTranslator.setSlotEqualityClasses(slotEqualityClasses);
+        if (textFormatTranslator != null) {
+            textFormatTranslator.setSlotIndex(slotIndex);
+            textFormatTranslator.setSlotEqualityClasses(slotEqualityClasses);
+        }
+        Statistics.addOrIncrementEntry(
+                "smt_presolve_time(millisec)", System.currentTimeMillis() - presolveStart);
+        Statistics.addOrIncrementEntry(
+                "smt_presolve_merged_slots", slotEqualityClasses.getNumberOfMergedSlots());
+        Statistics.addOrIncrementEntry(
+                "smt_presolve_eliminated_constraints",
+                slotEqualityClasses.getNumberOfEliminatedConstraints());
+        // top and bottom would lose the preference of the slots, so in optimizing mode only the
+        // slots in no constraint are eliminated
+        slotElimination =
+                SlotElimination.compute(
+                        slotIndex, slots, constraints, slotEqualityClasses, !optimizingMode);
         Statistics.addOrIncrementEntry(
-                "smt_serialization_time(millisec)", serializationEnd - serializationStart);
-        Statistics.addOrIncrementEntry("smt_solving_time(millisec)", solvingEnd - solvingStart);
+                "smt_presolve_eliminated_slots", slotElimination.getNumberOfEliminatedSlots());
+        Statistics.addOrIncrementEntry(
+                "smt_presolve_satisfied_constraints",
+                slotElimination.getNumberOfEliminatedConstraints());
+
+        List<Component> components =
+                ConstraintPartitioner.partition(
+                        slotIndex,
+                        constraints,
+                        Math.max(
+                                minComponentBatchSize,
+                                (slots.size() + constraints.size()) / (4 * parallelism)));
+        System.err.println("Solving " + components.size() + " independent components");
+
+        List<ComponentResult> componentResults = solveComponents(components);
+
+        Statistics.addOrIncrementEntry("smt_components", components.size());
+        recordTimeoutStatistics(componentResults);
+        recordZ3Statistics(componentResults);
+        recordOptimizationStatistics(componentResults);
+        if (solutionCache != null) {
+            Statistics.addOrIncrementEntry("smt_cache_hits", solutionCache.getHits());
+            Statistics.addOrIncrementEntry("smt_cache_misses", solutionCache.getMisses());
+        }
+        Statistics.addOrIncrementEntry("smt_serialization_time(millisec)", serializationTime);
+        Statistics.addOrIncrementEntry("smt_solving_time(millisec)", solvingTime);
+        recordPhaseTimings();
 
         // Debug use, finds out number of calls to each instrumented method
         // TODO: use updated stats package to print out the counters
@@ -149,96 +479,598 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
         // System.err.println(" Made comparison constraint: " +
         // comparableConstraints);
 
-        if (results != null) {
-            result =
-                    formatTranslator.decodeSolution(
-                            results, solverEnvironment.processingEnvironment);
-        } else {
-            System.err.println("\n\n!!! The set of constraints is unsatisfiable! !!!");
+        // merge the models of all components, in Units if the status is SAT then there must be
+        // output in the model
+        long decodeStart = System.currentTimeMillis();
+        result = new HashMap<>();
+        unsatComponents.clear();
+        undecidedComponents.clear();
+        unsatConstraintIndices.clear();
+        int timedOutComponents = 0;
+        for (int i = 0; i < components.size(); i++) {
+            ComponentResult componentResult = componentResults.get(i);
+            if (componentResult.status == Status.UNSATISFIABLE) {
+                unsatComponents.add(components.get(i));
+                unsatConstraintIndices.addAll(componentResult.unsatConstraintIndices);
+            } else if (componentResult.status != Status.SATISFIABLE) {
+                undecidedComponents.add(components.get(i));
+                if (componentResult.timedOut) {
+                    timedOutComponents++;
+                }
+            } else if (componentResult.model != null) {
+                result.putAll(
+                        formatTranslator.decodeSolution(
+                                componentResult.model, solverEnvironment.processingEnvironment));
+            } else {
+                result.putAll(
+                        formatTranslator.decodeSolution(
+                                componentResult.modelValues,
+                                solverEnvironment.processingEnvironment));
+            }
+        }
+
+        if (!unsatComponents.isEmpty()) {
+            Statistics.addOrIncrementEntry("smt_unsat_components", unsatComponents.size());
+            System.err.println(
+                    "\n\n!!! The set of constraints is unsatisfiable! !!!\n"
+                            + unsatComponents.size()
+                            + " of "
+                            + components.size()
+                            + " independent components are unsatisfiable");
+        }
+        if (!undecidedComponents.isEmpty()) {
+            Statistics.addOrIncrementEntry("smt_undecided_components", undecidedComponents.size());
+            System.err.println(
+                    "\n\n!!! z3 gave no result for "
+                            + undecidedComponents.size()
+                            + " of "
+                            + components.size()
+                            + " independent components, which are not known to be"
+                            + " unsatisfiable !!!");
+            if (timedOutComponents > 0) {
+                System.err.println(
+                        timedOutComponents
+                                + " of them have no result within "
+                                + Z3SolverEngineArg.z3Timeout
+                                + " = "
+                                + timeoutSeconds
+                                + " seconds");
+            }
+        }
+        if (!unsatComponents.isEmpty() || !undecidedComponents.isEmpty()) {
             result = null;
+        } else {
+            slotElimination.addSolution(
+                    result,
+                    value ->
+                            formatTranslator.decodeEliminatedSlot(
+                                    value, solverEnvironment.processingEnvironment));
+            slotEqualityClasses.expandSolution(
+                    result,
+                    constant ->
+                            formatTranslator.decodeConstantSlot(
+                                    constant, solverEnvironment.processingEnvironment));
         }
+        Statistics.addOrIncrementEntry(
+                "smt_decode_time(millisec)", System.currentTimeMillis() - decodeStart);
 
         return result;
     }
 
-    @Override
-    public Collection<Constraint> explainUnsatisfiable() {
-        optimizingMode = false;
-        getUnsatCore = true;
+    private static Z3Mode parseZ3Mode(String z3ModeArg) {
+        if (z3ModeArg == null) {
+            return Z3Mode.external;
+        }
+        try {
+            return Z3Mode.valueOf(z3ModeArg);
+        } catch (IllegalArgumentException e) {
+            throw new BugInCF(
+                    "Unsupported value for solver argument "
+                            + Z3SolverEngineArg.z3Mode
+                            + ": "
+                            + z3ModeArg
+                            + ". Supported values are: external, inprocess, pipelined");
+        }
+    }
+
+    private static int parseTimeout(String timeoutArg) {
+        if (timeoutArg == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(timeoutArg);
+        } catch (NumberFormatException e) {
+            throw new BugInCF(
+                    "Unsupported value for solver argument "
+                            + Z3SolverEngineArg.z3Timeout
+                            + ": "
+                            + timeoutArg
+                            + ". Expected a number of seconds");
+        }
+    }
+
+    private void recordTimeoutStatistics(List<ComponentResult> componentResults) {
+        int timedOutComponents = 0;
+        for (ComponentResult componentResult : componentResults) {
+            if (componentResult.timedOut) {
+                timedOutComponents++;
+            }
+        }
+        if (timedOutComponents > 0) {
+            Statistics.addOrIncrementEntry("smt_timed_out_components", timedOutComponents);
+        }
+        if (portfolio != null) {
+            for (Map.Entry<Z3Portfolio.Strategy, Integer> entry :
+                    portfolio.getWins().entrySet()) {
+                Statistics.addOrIncrementEntry(
+                        "smt_portfolio_wins_" + entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<Z3Portfolio.Strategy, Integer> entry :
+                    portfolio.getTimeouts().entrySet()) {
+                Statistics.addOrIncrementEntry(
+                        "smt_portfolio_timeouts_" + entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static int parseOptimizeBudget(String optimizeBudgetArg) {
+        if (optimizeBudgetArg == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(optimizeBudgetArg);
+        } catch (NumberFormatException e) {
+            throw new BugInCF(
+                    "Unsupported value for solver argument "
+                            + Z3SolverEngineArg.z3OptimizeBudget
+                            + ": "
+                            + optimizeBudgetArg
+                            + ". Expected a number of seconds");
+        }
+    }
+
+    // Whether z3 optimizes within a budget, returning the best model found when it runs out, or
+    // the model of the hard constraints found before optimizing.
+    private boolean isAnytimeOptimizing() {
+        return optimizingMode && optimizeBudgetSeconds > 0;
+    }
+
+    // Records the cost of the models found within the optimization budget, summed over the
+    // components, and the gap to the lower bound on the optimal cost
+    private void recordOptimizationStatistics(List<ComponentResult> componentResults) {
+        if (!isAnytimeOptimizing()) {
+            return;
+        }
+        int budgetExhaustedComponents = 0;
+        double cost = 0;
+        double lowerBound = 0;
+        for (ComponentResult componentResult : componentResults) {
+            if (componentResult.budgetExhausted) {
+                budgetExhaustedComponents++;
+            }
+            if (componentResult.cost != null) {
+                cost += componentResult.cost;
+                // without a lower bound, the cost is only known to be at least 0
+                if (componentResult.lowerBound != null) {
+                    lowerBound += componentResult.lowerBound;
+                }
+            }
+        }
+        Statistics.addOrIncrementEntry(
+                "smt_optimize_budget_exhausted_components", budgetExhaustedComponents);
+        Statistics.addOrIncrementEntry("smt_optimize_cost", Math.round(cost));
+        Statistics.addOrIncrementEntry("smt_optimize_lower_bound", Math.round(lowerBound));
+        Statistics.addOrIncrementEntry("smt_optimize_gap", Math.round(cost - lowerBound));
+        if (cost > 0) {
+            Statistics.addOrIncrementEntry(
+                    "smt_optimize_gap(percent)", Math.round(100 * (cost - lowerBound) / cost));
+        }
+    }
 
-        System.err.println("Now encoding for unsat core dump.");
-        serializeSMTFileContents();
+    private static int parseBitVectorWidth(String bitVectorWidthArg) {
+        if (bitVectorWidthArg == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(bitVectorWidthArg);
+        } catch (NumberFormatException e) {
+            throw new BugInCF(
+                    "Unsupported value for solver argument "
+                            + Z3SolverEngineArg.z3BitVectorWidth
+                            + ": "
+                            + bitVectorWidthArg
+                            + ". Expected a number of bits");
+        }
+    }
 
-        solvingStart = System.currentTimeMillis();
-        runZ3Solver();
-        solvingEnd = System.currentTimeMillis();
+    // Records the statistics reported by z3. Counters are summed over the components, times are
+    // recorded in milliseconds, and for memory the peak of any one component is recorded.
+    private void recordZ3Statistics(List<ComponentResult> componentResults) {
+        Map<String, Double> z3Statistics = new TreeMap<>();
+        for (ComponentResult componentResult : componentResults) {
+            for (Map.Entry<String, Double> entry : componentResult.z3Statistics.entrySet()) {
+                if (entry.getKey().contains("memory")) {
+                    z3Statistics.merge(entry.getKey(), entry.getValue(), Math::max);
+                } else {
+                    z3Statistics.merge(entry.getKey(), entry.getValue(), Double::sum);
+                }
+            }
+        }
+        for (Map.Entry<String, Double> entry : z3Statistics.entrySet()) {
+            String key = "z3_" + entry.getKey().replace(' ', '_').replace('-', '_');
+            if (entry.getKey().equals("time")) {
+                Statistics.addOrIncrementEntry(
+                        key + "(millisec)", Math.round(entry.getValue() * 1000));
+            } else if (entry.getKey().contains("memory")) {
+                Statistics.addOrIncrementEntry(key + "(MB)", Math.round(entry.getValue()));
+            } else {
+                Statistics.addOrIncrementEntry(key, Math.round(entry.getValue()));
+            }
+        }
+    }
 
+    private void recordPhaseTimings() {
+        Statistics.addOrIncrementEntry(
+                "smt_slot_encoding_time(millisec)", slotEncodingNanos / 1_000_000);
         Statistics.addOrIncrementEntry(
-                "smt_unsat_serialization_time(millisec)", serializationEnd - serializationStart);
+                "smt_hard_constraint_encoding_time(millisec)", hardConstraintNanos / 1_000_000);
         Statistics.addOrIncrementEntry(
-                "smt_unsat_solving_time(millisec)", solvingEnd - solvingStart);
+                "smt_soft_constraint_encoding_time(millisec)", softConstraintNanos / 1_000_000);
+        Statistics.addOrIncrementEntry("smt_file_write_time(millisec)", fileWriteNanos / 1_000_000);
+        slotEncodingNanos = 0;
+        hardConstraintNanos = 0;
+        softConstraintNanos = 0;
+        fileWriteNanos = 0;
+    }
 
-        // System.err.println();
-        // System.err.println("Unsatisfiable constraints: " + String.join(" ",
-        // unsatConstraintIDs));
-        // System.err.println();
+    private static SmtEncoder parseSmtEncoder(String smtEncoderArg) {
+        if (smtEncoderArg == null) {
+            return SmtEncoder.z3api;
+        }
+        try {
+            return SmtEncoder.valueOf(smtEncoderArg);
+        } catch (IllegalArgumentException e) {
+            throw new BugInCF(
+                    "Unsupported value for solver argument "
+                            + Z3SolverEngineArg.smtEncoder
+                            + ": "
+                            + smtEncoderArg
+                            + ". Supported values are: z3api, text");
+        }
+    }
 
-        List<Constraint> unsatConstraints = new ArrayList<>();
+    public static boolean isConstraintIndicator(String z3VarName) {
+        return z3VarName.startsWith(constraintIndicatorPrefix);
+    }
+
+    private static String constraintIndicator(int index) {
+        return constraintIndicatorPrefix + index;
+    }
+
+    private static int constraintIndexFromIndicator(String indicator) {
+        return Integer.parseInt(indicator.substring(constraintIndicatorPrefix.length()));
+    }
+
+    @Override
+    public Collection<Constraint> explainUnsatisfiable() {
+        try {
+            return explainUnsatisfiableInContext();
+        } finally {
+            closeContext();
+            recordMemoryStatistics("after_release");
+        }
+    }
+
+    private Collection<Constraint> explainUnsatisfiableInContext() {
+        // the components z3 gave no answer for are not explained, only the unsat ones
+        if (optimizingMode && !unsatComponents.isEmpty()) {
+            openContext();
+            // hard constraints are not guarded by indicators in optimizing mode, so re-encode
+            // the unsat components in non-optimizing mode to obtain an unsat core
+            optimizingMode = false;
+
+            System.err.println("Now encoding for unsat core dump.");
+            serializationTime = 0;
+            solvingTime = 0;
+
+            unsatConstraintIndices.clear();
+            for (ComponentResult componentResult : solveComponents(unsatComponents)) {
+                unsatConstraintIndices.addAll(componentResult.unsatConstraintIndices);
+            }
+
+            Statistics.addOrIncrementEntry(
+                    "smt_unsat_serialization_time(millisec)", serializationTime);
+            Statistics.addOrIncrementEntry("smt_unsat_solving_time(millisec)", solvingTime);
+        }
 
-        for (String constraintID : unsatConstraintIDs) {
-            Constraint c = serializedConstraints.get(constraintID);
-            // System.err.println(constraintID + " :");
-            // System.err.println(c);
-            // System.err.println(c.getLocation());
-            // System.err.println();
-            unsatConstraints.add(c);
+        Set<Constraint> unsatConstraints = new LinkedHashSet<>();
+
+        for (int index : unsatConstraintIndices) {
+            Constraint constraint = indicatedConstraints.get(index);
+            unsatConstraints.add(constraint);
+            // the equalities merged away by the presolve are part of the explanation
+            unsatConstraints.addAll(slotEqualityClasses.explain(constraint));
         }
 
         return unsatConstraints;
     }
 
-    private void serializeSMTFileContents() {
+    // Encodes and solves each of the given components, returning their results in order
+    private List<ComponentResult> solveComponents(List<Component> components) {
+        // preprocess slots
+        formatTranslator.preAnalyzeSlots(slots);
+        formatTranslator.preAnalyzeConstraints(slots, constraints);
+        modelComponents = formatTranslator.getModelComponents();
+        indicatedConstraints.clear();
+
+        List<ComponentResult> componentResults = new ArrayList<>();
+
+        if (z3Mode == Z3Mode.inprocess) {
+            // the z3 context is not thread safe, solve the components one by one
+            for (Component component : components) {
+                long start = System.currentTimeMillis();
+                serializeSMTFileContents(component, null);
+                serializationTime += System.currentTimeMillis() - start;
+
+                start = System.currentTimeMillis();
+                componentResults.add(runZ3SolverInProcess());
+                solvingTime += System.currentTimeMillis() - start;
+            }
+            return componentResults;
+        }
+
+        if (z3Mode == Z3Mode.pipelined) {
+            return solveComponentsPipelined(components);
+        }
+
+        // encode each component to its own file, then run z3 on the files concurrently
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < components.size(); i++) {
+            serializeSMTFileContents(
+                    components.get(i),
+                    new SmtFileWriter()
+                            .overwrite(constraintsFile(i))
+                            .append(constraintsStatsFile));
+        }
+        serializationTime += System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        ExecutorService executor =
+                Executors.newFixedThreadPool(
+                        Math.max(1, Math.min(componentParallelism(), components.size())));
+        try {
+            List<Future<ComponentResult>> futures = new ArrayList<>();
+            for (int i = 0; i < components.size(); i++) {
+                String file = constraintsFile(i);
+                futures.add(executor.submit(() -> runZ3Solver(file)));
+            }
+            for (Future<ComponentResult> future : futures) {
+                componentResults.add(future.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new BugInCF("Failed to run z3 on the constraint components", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        solvingTime += System.currentTimeMillis() - start;
+
+        return componentResults;
+    }
+
+    // The number of components run at once in external mode. Each component races one z3
+    // process per strategy of the portfolio, so fewer components share the cores.
+    private int componentParallelism() {
+        if (portfolio == null) {
+            return parallelism;
+        }
+        return Math.max(1, parallelism / portfolio.getNumberOfStrategies());
+    }
+
+    // Streams each component into a z3 process started before encoding it, so that z3 parses the
+    // component while it is encoded and while the next components are encoded. At most
+    // parallelism processes run at once, the oldest one is waited for before starting another.
+    private List<ComponentResult> solveComponentsPipelined(List<Component> components) {
+        List<ComponentResult> componentResults = new ArrayList<>();
+        List<Z3Pipe<ComponentResult>> pipes = new ArrayList<>();
+        // the pipes are finished in order, the ones from this index on are still running
+        int finished = 0;
+        try {
+            for (int i = 0; i < components.size(); i++) {
+                if (i >= parallelism) {
+                    long start = System.currentTimeMillis();
+                    componentResults.add(pipes.get(i - parallelism).finish());
+                    finished++;
+                    solvingTime += System.currentTimeMillis() - start;
+                }
+                Z3Pipe<ComponentResult> pipe =
+                        new Z3Pipe<>(
+                                z3Command("-in"),
+                                stdOut -> {
+                                    ComponentResult result = new ComponentResult();
+                                    parseStdOut(stdOut, result);
+                                    return result;
+                                });
+                pipes.add(pipe);
+
+                long start = System.currentTimeMillis();
+                // closing the writer ends the input of z3
+                serializeSMTFileContents(
+                        components.get(i), new SmtFileWriter().to(pipe.getInput(), "z3 input"));
+                serializationTime += System.currentTimeMillis() - start;
+            }
+
+            long start = System.currentTimeMillis();
+            for (; finished < pipes.size(); finished++) {
+                componentResults.add(pipes.get(finished).finish());
+            }
+            solvingTime += System.currentTimeMillis() - start;
+            return componentResults;
+        } finally {
+            // after a failure, the z3 processes still running would never be waited for
+            for (int i = finished; i < pipes.size(); i++) {
+                pipes.get(i).destroy();
+            }
+        }
+    }
+
+    // The command running z3 on the given input, printing the z3 statistics after the result
+    private List<String> z3Command(String input) {
+        List<String> command = new ArrayList<>();
+        command.add(z3Program);
+        command.add("-st");
+        if (timeoutSeconds > 0) {
+            command.add("-T:" + timeoutSeconds);
+        }
+        command.add(input);
+        return command;
+    }
+
+    // the first component is written to z3Constraints.smt, the others are numbered
+    private static String constraintsFile(int component) {
+        if (component == 0) {
+            return constraintsFile;
+        }
+        return pathToProject + "/z3Constraints-" + component + ".smt";
+    }
+
+    // Encodes the component, asserting it into a fresh solver in inprocess mode, or writing it to
+    // the given writer, which is closed after the component
+    private void serializeSMTFileContents(Component component, SmtFileWriter writer) {
         // make a fresh solver to contain encodings of the slots
         solver = ctx.mkOptimize();
-        // make a new buffer to store the serialized smt file contents
-        smtFileContents = new StringBuffer();
+        constraintIndicators.clear();
+        softObjective = null;
+        hardSolver = null;
+        softConstraints.clear();
+        deferredSoftConstraints.clear();
+
+        if (z3Mode == Z3Mode.inprocess) {
+            if (isAnytimeOptimizing()) {
+                hardSolver = ctx.mkSolver();
+            }
+            // all slots and constraints are asserted directly into the solver
+            encodeAllSlots(component.slots);
+            encodeConstraints(component.constraints);
+            return;
+        }
 
-        // only enable in non-optimizing mode
-        if (!optimizingMode && getUnsatCore) {
-            smtFileContents.append("(set-option :produce-unsat-cores true)\n");
+        // the constraints are written to the smt file and stats file for external solver use, or
+        // to the z3 input in pipelined mode
+        smtFileWriter = writer;
+        // debug use: write slots and constraints to separate files, except in pipelined mode
+        slotsDebugWriter = new SmtFileWriter();
+        constraintsDebugWriter = new SmtFileWriter();
+        if (z3Mode == Z3Mode.external) {
+            slotsDebugWriter.append(pathToProject + "/slots.smt");
+            constraintsDebugWriter.append(pathToProject + "/constraints.smt");
         }
 
-        serializationStart = System.currentTimeMillis();
-        encodeAllSlots();
-        encodeAllConstraints();
-        serializationEnd = System.currentTimeMillis();
+        try {
+            // only enable in non-optimizing mode
+            if (!optimizingMode) {
+                smtFileWriter.writeLine("(set-option :produce-unsat-cores true)");
+            } else if (isAnytimeOptimizing()) {
+                smtFileWriter.writeLine("(set-option :opt.maxsat_engine maxres)");
+            }
+
+            int firstIndicator = indicatedConstraints.size();
+            encodeAllSlots(component.slots);
+            encodeConstraints(component.constraints);
 
-        System.err.println("Encoding constraints done!");
+            if (!optimizingMode) {
+                smtFileWriter.write("(check-sat-assuming (");
+                for (int index = firstIndicator; index < indicatedConstraints.size(); index++) {
+                    smtFileWriter.write(constraintIndicator(index)).write(" ");
+                }
+                smtFileWriter.writeLine("))");
+                // z3 reports an error for whichever of the two is not available
+                smtFileWriter.writeLine("(get-model)");
+                smtFileWriter.writeLine("(get-unsat-core)");
+            } else if (isAnytimeOptimizing()) {
+                writeAnytimeOptimization();
+            } else {
+                smtFileWriter.writeLine("(check-sat)");
+                smtFileWriter.writeLine("(get-model)");
+            }
+        } finally {
+            smtFileWriter.close();
+            slotsDebugWriter.close();
+            constraintsDebugWriter.close();
+        }
+    }
 
-        smtFileContents.append("(check-sat)\n");
-        if (!optimizingMode && getUnsatCore) {
-            smtFileContents.append("(get-unsat-core)\n");
+    // Writes the check of the hard constraints, printing the cost of their model, followed by the
+    // deferred soft constraints and their optimization. The soft timeout only ends the
+    // optimization, after which z3 prints the best model found if any.
+    private void writeAnytimeOptimization() {
+        smtFileWriter.writeLine("(check-sat)");
+        smtFileWriter.writeLine("(get-model)");
+        if (deferredSoftConstraints.isEmpty()) {
+            smtFileWriter.writeLine("(eval 0)");
         } else {
-            smtFileContents.append("(get-model)\n");
+            smtFileWriter.write("(eval (+ 0");
+            for (SoftConstraint<String> softConstraint : deferredSoftConstraints) {
+                smtFileWriter
+                        .write(" (ite ")
+                        .write(softConstraint.preference)
+                        .write(" 0 ")
+                        .write(Integer.toString(softConstraint.weight))
+                        .write(")");
+            }
+            smtFileWriter.writeLine("))");
         }
 
-        System.err.println("Writing constraints to file: " + constraintsFile);
+        smtFileWriter.writeLine("(set-option :timeout " + optimizeBudgetSeconds * 1000 + ")");
+        for (SoftConstraint<String> softConstraint : deferredSoftConstraints) {
+            writeSmtLine(
+                    "(assert-soft "
+                            + softConstraint.preference
+                            + " :weight "
+                            + softConstraint.weight
+                            + ")",
+                    constraintsDebugWriter);
+        }
+        deferredSoftConstraints.clear();
+        smtFileWriter.writeLine("(check-sat)");
+        smtFileWriter.writeLine("(get-model)");
+        smtFileWriter.writeLine("(get-objectives)");
+    }
 
-        writeConstraintsToSMTFile();
+    // Writes a soft constraint, deferred in anytime optimizing mode until the hard constraints
+    // are checked, see writeAnytimeOptimization
+    private void writeSoftConstraint(String preference, int weight, SmtFileWriter debugWriter) {
+        if (isAnytimeOptimizing()) {
+            deferredSoftConstraints.add(new SoftConstraint<>(preference, weight));
+        } else {
+            writeSmtLine("(assert-soft " + preference + " :weight " + weight + ")", debugWriter);
+        }
     }
 
-    private void writeConstraintsToSMTFile() {
-        String fileContents = smtFileContents.toString();
+    // Asserts a hard constraint into the solver, and into the plain solver checked first in
+    // anytime optimizing mode
+    private void assertHard(BoolExpr constraint) {
+        solver.Assert(constraint);
+        if (hardSolver != null) {
+            hardSolver.add(constraint);
+        }
+    }
 
-        if (!getUnsatCore) {
-            // write the constraints to the file for external solver use
-            FileUtils.writeFile(new File(constraintsFile), fileContents);
-        } else {
-            // write the constraints to the file for external solver use
-            FileUtils.writeFile(new File(constraintsUnsatCoreFile), fileContents);
+    // Asserts a soft constraint into the solver, kept in anytime optimizing mode to cost the model
+    // of the hard constraints
+    private void assertSoft(BoolExpr preference, int weight) {
+        // empty string means no optimization group
+        softObjective = solver.AssertSoft(preference, weight, "");
+        if (hardSolver != null) {
+            softConstraints.add(new SoftConstraint<>(preference, weight));
         }
-        // write a copy in append mode to stats file for later bulk analysis
-        FileUtils.appendFile(new File(constraintsStatsFile), fileContents);
+    }
+
+    // Streams an SMT-LIB line to the smt file and to the given debug file
+    private void writeSmtLine(String line, SmtFileWriter debugWriter) {
+        long start = System.nanoTime();
+        smtFileWriter.writeLine(line);
+        debugWriter.writeLine(line);
+        fileWriteNanos += System.nanoTime() - start;
     }
     //
     //    private String generateZ3Constraint(BoolExpr serializedConstraint, String
@@ -327,61 +1159,101 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
     //        solver.AssertSoft(serializedConstraint);
     //    }
 
-    protected void encodeAllSlots() {
-        // preprocess slots
-        formatTranslator.preAnalyzeSlots(slots);
+    protected void encodeAllSlots(Collection<Slot> slots) {
+        long start = System.nanoTime();
+        long fileWriteStart = fileWriteNanos;
 
-        //        StringBuilder z3SlotDefinitions = new StringBuilder();
-        //
-        //        // generate slot definitions
-        //        for (Slot slot : slots) {
-        //            if (slot.isVariable()) {
-        //                String slotDefinition =
-        //                        formatTranslator.generateZ3SlotDeclaration((VariableSlot) slot);
-        //                System.err.println(slotDefinition);
-        //                z3SlotDefinitions.append(slotDefinition);
-        //            }
-        //        }
-
-        // generate slot constraints
+        // generate slot definitions and slot constraints
         for (Slot slot : slots) {
-            if (slot.isVariable()) {
+            // merged slots are encoded through their representative
+            if (slot.isVariable()
+                    && slotEqualityClasses.isRepresentative(slot)
+                    && !slotElimination.isEliminated(slot)) {
                 VariableSlot varSlot = (VariableSlot) slot;
+                // the preference is weighted by the number of slots the representative stands for
+                int preferenceWeight = slotEqualityClasses.getClassSize(varSlot);
+
+                if (textFormatTranslator != null) {
+                    writeSlotAsText(varSlot, preferenceWeight);
+                    continue;
+                }
 
                 BoolExpr wfConstraint = formatTranslator.encodeSlotWellformnessConstraint(varSlot);
+                Expr simplifiedWfConstraint = wfConstraint.simplify();
 
-                if (!wfConstraint.simplify().isTrue()) {
-                    solver.Assert(wfConstraint);
+                if (z3Mode == Z3Mode.inprocess) {
+                    if (!simplifiedWfConstraint.isTrue()) {
+                        assertHard(wfConstraint);
+                    }
+                    if (optimizingMode) {
+                        assertSoft(
+                                formatTranslator.encodeSlotPreferenceConstraint(varSlot),
+                                preferenceWeight);
+                    }
+                    continue;
+                }
+
+                // constant slots have no z3 variables to declare
+                if (!(varSlot instanceof ConstantSlot)) {
+                    writeSmtLine(
+                            formatTranslator.generateZ3SlotDeclaration(varSlot), slotsDebugWriter);
+                }
+                if (!simplifiedWfConstraint.isTrue()) {
+                    writeSmtLine("(assert " + simplifiedWfConstraint + ")", slotsDebugWriter);
                 }
                 if (optimizingMode) {
-                    // empty string means no optimization group
-                    solver.AssertSoft(
-                            formatTranslator.encodeSlotPreferenceConstraint(varSlot), 1, "");
+                    writeSoftConstraint(
+                            formatTranslator.encodeSlotPreferenceConstraint(varSlot).toString(),
+                            preferenceWeight,
+                            slotsDebugWriter);
                 }
             }
         }
 
-        // solver.toString() also includes "(check-sat)" as the last line,
-        // remove it
-        String slotDefinitionsAndConstraints = solver.toString();
-        int truncateIndex = slotDefinitionsAndConstraints.lastIndexOf("(check-sat)");
-        assert truncateIndex != -1;
-
-        // append slot definitions to overall smt file
-        smtFileContents.append(slotDefinitionsAndConstraints.substring(0, truncateIndex));
+        slotEncodingNanos += System.nanoTime() - start - (fileWriteNanos - fileWriteStart);
+    }
 
-        // debug use:
-        // Write Slots to file
-        FileUtils.appendFile(new File(pathToProject + "/slots.smt"), solver.toString());
+    // Writes the slot declaration, wellformedness and preference as SMT-LIB text
+    private void writeSlotAsText(VariableSlot varSlot, int preferenceWeight) {
+        if (!(varSlot instanceof ConstantSlot)) {
+            writeSmtLine(textFormatTranslator.generateZ3SlotDeclaration(varSlot), slotsDebugWriter);
+        }
+        SmtText wfConstraint = textFormatTranslator.encodeSlotWellformnessConstraint(varSlot);
+        if (!wfConstraint.isTrue()) {
+            writeSmtLine("(assert " + wfConstraint + ")", slotsDebugWriter);
+        }
+        if (optimizingMode) {
+            SmtText preference = textFormatTranslator.encodeSlotPreferenceConstraint(varSlot);
+            if (!preference.isTrue()) {
+                writeSoftConstraint(preference.toString(), preferenceWeight, slotsDebugWriter);
+            }
+        }
     }
 
     @Override
     protected void encodeAllConstraints() {
-        int current = 1;
+        encodeConstraints(constraints);
+    }
 
-        StringBuffer constraintSmtFileContents = new StringBuffer();
+    protected void encodeConstraints(Collection<Constraint> constraints) {
+        long start = System.nanoTime();
+        long fileWriteStart = fileWriteNanos;
 
         for (Constraint constraint : constraints) {
+            if (slotEqualityClasses.isEliminated(constraint)) {
+                // already captured by the merged slots
+                continue;
+            }
+            if (slotElimination.isEliminated(constraint)) {
+                // satisfied by the values of the eliminated slots
+                continue;
+            }
+
+            if (textFormatTranslator != null) {
+                writeConstraintAsText(constraint);
+                continue;
+            }
+
             // System.err.println("Getting next item.");
 
             // System.err.println(
@@ -398,15 +1270,7 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
             // System.err.println(" Constraint serialized. ");
 
             if (serializedConstraint == null) {
-                // TODO: Should error abort if unsupported constraint detected.
-                // Currently warning is a workaround for making ontology
-                // working, as in some cases existential constraints generated.
-                // Should investigate on this, and change this to ErrorAbort
-                // when eliminated unsupported constraints.
-                System.err.println(
-                        "Unsupported constraint detected! Constraint type: "
-                                + constraint.getClass().getSimpleName());
-                // current++;
+                warnUnsupportedConstraint(constraint);
                 continue;
             }
 
@@ -423,217 +1287,423 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
                 // 0))
                 // Skip tautology.
                 // System.err.println(" simplified to tautology.");
-                current++;
                 continue;
             }
 
             if (simplifiedConstraint.isFalse()) {
-                final ToStringSerializer toStringSerializer = new ToStringSerializer(false);
-                throw new BugInCF(
-                        "impossible constraint: "
-                                + constraint.serialize(toStringSerializer)
-                                + "\nSerialized:\n"
-                                + serializedConstraint);
+                checkFalseConstraint(constraint, serializedConstraint);
             }
 
-            String clause = simplifiedConstraint.toString();
+            // prefer equality for subtype and comparable constraints
+            addSoftEqualityPreference(constraint);
 
-            if (!optimizingMode && getUnsatCore) {
-                // add assertions with names, for unsat core dump
-                String constraintName = constraint.getClass().getSimpleName() + current;
+            String indicator = null;
+            if (!optimizingMode) {
+                indicator = constraintIndicator(indicatedConstraints.size());
+                indicatedConstraints.add(constraint);
+            }
 
-                constraintSmtFileContents.append("(assert (! ");
-                constraintSmtFileContents.append(clause);
-                constraintSmtFileContents.append(" :named " + constraintName + "))\n");
+            if (z3Mode == Z3Mode.inprocess) {
+                if (indicator != null) {
+                    BoolExpr indicatorLiteral = ctx.mkBoolConst(indicator);
+                    constraintIndicators.add(indicatorLiteral);
+                    solver.Assert(ctx.mkImplies(indicatorLiteral, (BoolExpr) simplifiedConstraint));
+                } else {
+                    assertHard((BoolExpr) simplifiedConstraint);
+                }
+                continue;
+            }
+
+            String clause = simplifiedConstraint.toString();
 
-                // add constraint to serialized constraints map, so that we can
-                // retrieve later using
-                // the constraint name when outputting the unsat core
-                serializedConstraints.put(constraintName, constraint);
+            if (indicator != null) {
+                writeSmtLine("(declare-const " + indicator + " Bool)", constraintsDebugWriter);
+                writeSmtLine(
+                        "(assert (=> " + indicator + " " + clause + "))", constraintsDebugWriter);
             } else {
-                constraintSmtFileContents.append("(assert ");
-                constraintSmtFileContents.append(clause);
-                constraintSmtFileContents.append(")\n");
+                writeSmtLine("(assert " + clause + ")", constraintsDebugWriter);
             }
 
-            // generate a soft constraint that we prefer equality for subtype
-            // TODO: perhaps prefer not bottom and prefer not top will suffice?
-            if (optimizingMode && constraint instanceof SubtypeConstraint) {
-                SubtypeConstraint stc = (SubtypeConstraint) constraint;
+            // System.err.println(" Added constraint. HasNext? " +
+            // iter.hasNext());
+        }
 
-                Constraint eqc =
-                        InferenceMain.getInstance()
-                                .getConstraintManager()
-                                .createEqualityConstraint(stc.getSubtype(), stc.getSupertype());
+        // the soft equality preferences are collected while encoding the constraints, and are
+        // counted as soft constraint encoding
+        hardConstraintNanos += System.nanoTime() - start - (fileWriteNanos - fileWriteStart);
 
-                Expr simplifiedEQC = eqc.serialize(formatTranslator).simplify();
+        encodeSoftEqualityPreferences();
+    }
 
-                if (!simplifiedEQC.isTrue()) {
-                    constraintSmtFileContents.append("(assert-soft ");
-                    constraintSmtFileContents.append(simplifiedEQC);
-                    constraintSmtFileContents.append(" :weight 1)\n");
-                }
-            }
+    // Writes the constraint as SMT-LIB text
+    private void writeConstraintAsText(Constraint constraint) {
+        SmtText serializedConstraint = constraint.serialize(textFormatTranslator);
+
+        if (serializedConstraint == null) {
+            warnUnsupportedConstraint(constraint);
+            return;
+        }
+        if (serializedConstraint.isTrue()) {
+            // skip tautology, which the text encoding folds away as it is built
+            return;
+        }
+        if (serializedConstraint.isFalse()) {
+            checkFalseConstraint(constraint, serializedConstraint);
+        }
+
+        addSoftEqualityPreference(constraint);
+
+        if (!optimizingMode) {
+            String indicator = constraintIndicator(indicatedConstraints.size());
+            indicatedConstraints.add(constraint);
+            writeSmtLine("(declare-const " + indicator + " Bool)", constraintsDebugWriter);
+            writeSmtLine(
+                    "(assert (=> " + indicator + " " + serializedConstraint + "))",
+                    constraintsDebugWriter);
+        } else {
+            writeSmtLine("(assert " + serializedConstraint + ")", constraintsDebugWriter);
+        }
+    }
+
+    private static void warnUnsupportedConstraint(Constraint constraint) {
+        // TODO: Should error abort if unsupported constraint detected.
+        // Currently warning is a workaround for making ontology
+        // working, as in some cases existential constraints generated.
+        // Should investigate on this, and change this to ErrorAbort
+        // when eliminated unsupported constraints.
+        System.err.println(
+                "Unsupported constraint detected! Constraint type: "
+                        + constraint.getClass().getSimpleName());
+    }
+
+    // A constraint over merged slots can be false because of the equalities merged away, which is
+    // left for z3 to report as unsat. Any other false constraint is an error.
+    private void checkFalseConstraint(Constraint constraint, Object serializedConstraint) {
+        if (!slotEqualityClasses.involvesMergedSlots(constraint)) {
+            final ToStringSerializer toStringSerializer = new ToStringSerializer(false);
+            throw new BugInCF(
+                    "impossible constraint: "
+                            + constraint.serialize(toStringSerializer)
+                            + "\nSerialized:\n"
+                            + serializedConstraint);
+        }
+    }
 
-            // generate soft constraint for comparisons that their args are
-            // equal
-            if (optimizingMode && constraint instanceof ComparableConstraint) {
-                ComparableConstraint cc = (ComparableConstraint) constraint;
+    // In optimizing mode, records the preference that the two sides of a subtype or comparable
+    // constraint are equal. Preferences over the same pair of slots are merged into one.
+    // TODO: perhaps prefer not bottom and prefer not top will suffice?
+    private void addSoftEqualityPreference(Constraint constraint) {
+        if (!optimizingMode) {
+            return;
+        }
 
-                Constraint eqc =
-                        InferenceMain.getInstance()
-                                .getConstraintManager()
-                                .createEqualityConstraint(cc.getFirst(), cc.getSecond());
+        Slot first;
+        Slot second;
+        if (constraint instanceof SubtypeConstraint) {
+            SubtypeConstraint stc = (SubtypeConstraint) constraint;
+            first = stc.getSubtype();
+            second = stc.getSupertype();
+        } else if (constraint instanceof ComparableConstraint) {
+            ComparableConstraint cc = (ComparableConstraint) constraint;
+            first = cc.getFirst();
+            second = cc.getSecond();
+        } else {
+            return;
+        }
 
-                Expr simplifiedEQC = eqc.serialize(formatTranslator).simplify();
+        // slots are encoded as their representatives, so key the pair on those
+        int firstID = slotEqualityClasses.getRepresentative(first).getId();
+        int secondID = slotEqualityClasses.getRepresentative(second).getId();
+        if (firstID == secondID) {
+            // the slots are already equal
+            return;
+        }
+        long pairKey =
+                ((long) Math.min(firstID, secondID) << 32) | Math.max(firstID, secondID);
+        SoftEquality softEquality = softEqualities.get(pairKey);
+        if (softEquality == null) {
+            softEqualities.put(pairKey, new SoftEquality(first, second));
+        } else {
+            softEquality.weight++;
+        }
+    }
 
-                if (!simplifiedEQC.isTrue()) {
-                    constraintSmtFileContents.append("(assert-soft ");
-                    constraintSmtFileContents.append(simplifiedEQC);
-                    constraintSmtFileContents.append(" :weight 1)\n");
+    // Encodes one soft constraint per pair of slots preferred to be equal, weighted by the number
+    // of constraints preferring it
+    private void encodeSoftEqualityPreferences() {
+        long start = System.nanoTime();
+        long fileWriteStart = fileWriteNanos;
+
+        int mergedPreferences = 0;
+        for (SoftEquality softEquality : softEqualities.values()) {
+            mergedPreferences += softEquality.weight - 1;
+            Constraint eqc =
+                    InferenceMain.getInstance()
+                            .getConstraintManager()
+                            .createEqualityConstraint(softEquality.first, softEquality.second);
+
+            if (textFormatTranslator != null) {
+                SmtText preference = eqc.serialize(textFormatTranslator);
+                if (!preference.isTrue()) {
+                    writeSoftConstraint(
+                            preference.toString(), softEquality.weight, constraintsDebugWriter);
                 }
+                continue;
             }
 
-            current++;
-            // System.err.println(" Added constraint. HasNext? " +
-            // iter.hasNext());
+            Expr preference = eqc.serialize(formatTranslator).simplify();
+            if (preference.isTrue()) {
+                continue;
+            }
+            if (z3Mode == Z3Mode.inprocess) {
+                assertSoft((BoolExpr) preference, softEquality.weight);
+            } else {
+                writeSoftConstraint(
+                        preference.toString(), softEquality.weight, constraintsDebugWriter);
+            }
         }
 
-        String constraintSmt = constraintSmtFileContents.toString();
+        if (!softEqualities.isEmpty()) {
+            Statistics.addOrIncrementEntry("smt_soft_equalities", softEqualities.size());
+            Statistics.addOrIncrementEntry("smt_soft_equalities_merged", mergedPreferences);
+        }
+        softEqualities.clear();
 
-        smtFileContents.append(constraintSmt);
+        softConstraintNanos += System.nanoTime() - start - (fileWriteNanos - fileWriteStart);
+    }
+
+    // Runs z3 on the assertions held by the solver, obtaining the model if the constraints are
+    // satisfiable, or the unsat core otherwise
+    private ComponentResult runZ3SolverInProcess() {
+        if (isAnytimeOptimizing()) {
+            return runAnytimeOptimizationInProcess();
+        }
 
-        // debug use
-        // Write Constraints to file
-        FileUtils.appendFile(new File(pathToProject + "/constraints.smt"), constraintSmt);
+        ComponentResult result = new ComponentResult();
+        result.status = solver.Check(constraintIndicators.toArray(new BoolExpr[0]));
+        if (result.status == Status.SATISFIABLE) {
+            result.model = solver.getModel();
+        } else if (result.status == Status.UNSATISFIABLE && !optimizingMode) {
+            for (BoolExpr indicator : solver.getUnsatCore()) {
+                result.unsatConstraintIndices.add(
+                        constraintIndexFromIndicator(indicator.toString()));
+            }
+        } else if (result.status == Status.UNKNOWN) {
+            String reason = solver.getReasonUnknown();
+            System.err.println("z3 returned unknown: " + reason);
+            result.timedOut = timeoutSeconds > 0 && reason.contains("timeout");
+        }
+        addZ3Statistics(solver.getStatistics(), result);
+        return result;
     }
 
-    private List<String> runZ3Solver() {
-        // TODO: add z3 stats?
-        String[] command;
-        if (!getUnsatCore) {
-            command = new String[] {z3Program, constraintsFile};
+    // Checks the hard constraints with a plain solver first, then improves the cost of their model
+    // with core-guided MaxSMT for the rest of the optimization budget. The model of the hard
+    // constraints is kept when the optimization finds no model within the budget.
+    private ComponentResult runAnytimeOptimizationInProcess() {
+        long start = System.currentTimeMillis();
+        ComponentResult result = new ComponentResult();
+        result.status = hardSolver.check();
+        addZ3Statistics(hardSolver.getStatistics(), result);
+        if (result.status == Status.UNKNOWN) {
+            String reason = hardSolver.getReasonUnknown();
+            System.err.println("z3 returned unknown: " + reason);
+            result.timedOut = timeoutSeconds > 0 && reason.contains("timeout");
+        }
+        if (result.status != Status.SATISFIABLE) {
+            return result;
+        }
+        result.model = hardSolver.getModel();
+        result.cost = (double) softConstraintCost(result.model);
+        if (softConstraints.isEmpty()) {
+            // no soft constraints, any model is optimal
+            result.lowerBound = 0.0;
+            return result;
+        }
+
+        long remainingMillis = optimizeBudgetSeconds * 1000L - (System.currentTimeMillis() - start);
+        if (remainingMillis <= 0) {
+            result.budgetExhausted = true;
+            return result;
+        }
+        com.microsoft.z3.Params params = ctx.mkParams();
+        params.add("maxsat_engine", "maxres");
+        params.add("timeout", (int) Math.min(remainingMillis, Integer.MAX_VALUE));
+        solver.setParameters(params);
+
+        Status optimizationStatus = solver.Check();
+        addZ3Statistics(solver.getStatistics(), result);
+        Model optimizedModel = null;
+        if (optimizationStatus == Status.SATISFIABLE) {
+            optimizedModel = solver.getModel();
         } else {
-            command = new String[] {z3Program, constraintsUnsatCoreFile};
+            // the optimization budget ran out, use the best model found so far if any
+            result.budgetExhausted = true;
+            try {
+                optimizedModel = solver.getModel();
+            } catch (com.microsoft.z3.Z3Exception e) {
+                optimizedModel = null;
+            }
+        }
+        if (optimizedModel != null) {
+            result.model = optimizedModel;
+            result.cost = parseObjectiveBound(softObjective.getUpper().toString());
         }
+        result.lowerBound = parseObjectiveBound(softObjective.getLower().toString());
+        return result;
+    }
+
+    // The summed weights of the soft constraints which do not hold in the model
+    private long softConstraintCost(Model model) {
+        long cost = 0;
+        for (SoftConstraint<BoolExpr> softConstraint : softConstraints) {
+            if (!model.eval(softConstraint.preference, true).isTrue()) {
+                cost += softConstraint.weight;
+            }
+        }
+        return cost;
+    }
+
+    // Adds the statistics of a z3 solver to those of the result, summing those of several checks
+    private static void addZ3Statistics(
+            com.microsoft.z3.Statistics statistics, ComponentResult result) {
+        for (com.microsoft.z3.Statistics.Entry entry : statistics.getEntries()) {
+            if (entry.isUInt()) {
+                result.z3Statistics.merge(entry.Key, (double) entry.getUIntValue(), Double::sum);
+            } else if (entry.isDouble()) {
+                result.z3Statistics.merge(entry.Key, entry.getDoubleValue(), Double::sum);
+            }
+        }
+    }
+
+    // Parses a bound on an objective given by the z3 Java API, null if it is not a number
+    private static Double parseObjectiveBound(String bound) {
+        try {
+            return Double.parseDouble(bound);
+        } catch (NumberFormatException e) {
+            // infinite or symbolic bounds
+            return null;
+        }
+    }
+
+    // Runs z3 on the given smt file, or reuses the output of an earlier run on the same component
+    // from the solution cache. May be called concurrently for different files.
+    private ComponentResult runZ3Solver(String smtFile) {
+        if (solutionCache == null) {
+            return runZ3Binary(smtFile);
+        }
+
+        Z3SolutionCache.CanonicalComponent component = solutionCache.canonicalize(smtFile);
+        String cachedOutput = solutionCache.lookup(component);
+        if (cachedOutput != null) {
+            ComponentResult result = new ComponentResult();
+            parseOutput(new StringReader(cachedOutput), result);
+            // the statistics are those of the earlier run
+            result.z3Statistics.clear();
+            return result;
+        }
+
+        ComponentResult result = runZ3Binary(smtFile);
+        // only answers are cached, z3 may do better on another run after giving up
+        if (result.isConclusive() && !result.budgetExhausted) {
+            solutionCache.store(component, result.output);
+        }
+        return result;
+    }
+
+    // Runs the z3 binary on the given smt file
+    private ComponentResult runZ3Binary(String smtFile) {
+        if (portfolio != null) {
+            ComponentResult result =
+                    portfolio.run(
+                            smtFile,
+                            stdOut -> {
+                                ComponentResult strategyResult = new ComponentResult();
+                                parseStdOut(stdOut, strategyResult);
+                                return strategyResult;
+                            },
+                            ComponentResult::isConclusive,
+                            () -> {
+                                ComponentResult timedOut = new ComponentResult();
+                                timedOut.status = Status.UNKNOWN;
+                                timedOut.timedOut = true;
+                                return timedOut;
+                            });
+            if (!result.isConclusive()) {
+                System.err.println("No z3 strategy found a result for " + smtFile);
+            }
+            return result;
+        }
+
+        String[] command = z3Command(smtFile).toArray(new String[0]);
 
         // TODO: build Typecheckunits here?
         // Map<Integer, TypecheckUnit> solutionSlots = new HashMap<>();
 
         // stores results from z3 program output
-        final List<String> results = new ArrayList<>();
+        final ComponentResult result = new ComponentResult();
 
         // Run command
         // TODO: check that stdErr has no errors
         int exitStatus =
                 ExternalSolverUtils.runExternalSolver(
                         command,
-                        stdOut -> parseStdOut(stdOut, results),
+                        stdOut -> parseStdOut(stdOut, result),
                         stdErr -> ExternalSolverUtils.printStdStream(System.err, stdErr));
-        // if exit status from z3 is not 0, then it is unsat
-        return exitStatus == 0 ? results : null;
-    }
-
-    // Sample satisfying output format:
-    /* @formatter:off // this is for eclipse formatter */
-    /*
-    sat
-    (model
-      (define-fun |338-BOT| () Bool
-        false)
-      (define-fun |509-TOP| () Bool
-        false)
-      (define-fun |750-m| () Int
-        (- 9))
-      (define-fun |355-s| () Int
-        0)
-      (define-fun |790-PREFIX| () Int
-        0)
-    )
-    */
-    /* @formatter:on // this is for eclipse formatter */
-
-    // Sample unsat output format:
-    /* @formatter:off // this is for eclipse formatter */
-    /*
-    unsat
-    (SubtypeConstraint58 ArithmeticConstraint73 EqualityConstraint188 SubtypeConstraint553)
-    */
-    /* @formatter:on // this is for eclipse formatter */
-
-    // parses the STD output from the z3 process and handles SAT and UNSAT
-    // outputs
-    private void parseStdOut(BufferedReader stdOut, List<String> results) {
-        String line = "";
-
-        boolean declarationLine = true;
-        // each result line is "varName value"
-        String resultsLine = "";
+        if (result.status == null) {
+            System.err.println(
+                    "z3 exited with status " + exitStatus + " without a result for " + smtFile);
+        } else if (result.status == Status.UNKNOWN) {
+            System.err.println("z3 returned unknown for " + smtFile);
+        }
+        return result;
+    }
 
-        boolean unsat = false;
+    // Parses the standard output of the z3 process, handling SAT and UNSAT outputs
+    private void parseStdOut(BufferedReader stdOut, ComponentResult result) {
+        Reader output = stdOut;
+        if (solutionCache != null) {
+            // the output is kept to be stored in the solution cache
+            result.output = stdOut.lines().collect(Collectors.joining("\n", "", "\n"));
+            output = new StringReader(result.output);
+        }
+        parseOutput(output, result);
+    }
 
+    private void parseOutput(Reader output, ComponentResult result) {
+        Z3OutputParser parser =
+                new Z3OutputParser(output, modelComponents, constraintIndicatorPrefix);
         try {
-            while ((line = stdOut.readLine()) != null) {
-                line = line.trim();
-
-                if (getUnsatCore) {
-                    // UNSAT Cases ====================
-                    if (line.contentEquals("unsat")) {
-                        unsat = true;
-                        continue;
-                    }
-                    if (unsat) {
-                        if (line.startsWith("(")) {
-                            line = line.substring(1); // remove open bracket
-                        }
-                        if (line.endsWith(")")) {
-                            line = line.substring(0, line.length() - 1);
-                        }
-
-                        for (String constraintID : line.split(" ")) {
-                            unsatConstraintIDs.add(constraintID);
-                        }
-                        continue;
-                    }
-                } else {
-                    // SAT Cases =======================
-                    // processing define-fun lines
-                    if (declarationLine && line.startsWith("(define-fun")) {
-                        declarationLine = false;
-
-                        int firstBar = line.indexOf('|');
-                        int lastBar = line.lastIndexOf('|');
-
-                        assert firstBar != -1;
-                        assert lastBar != -1;
-                        assert firstBar < lastBar;
-                        assert line.contains("Bool") || line.contains("Int");
-
-                        // copy z3 variable name into results line
-                        resultsLine += line.substring(firstBar + 1, lastBar);
-                        continue;
-                    }
-                    // processing lines immediately following define-fun lines
-                    if (!declarationLine) {
-                        declarationLine = true;
-                        String value = line.substring(0, line.lastIndexOf(')'));
-
-                        if (value.contains("-")) { // negative number
-                            // remove brackets surrounding negative numbers
-                            value = value.substring(1, value.length() - 1);
-                            // remove space between - and the number itself
-                            value = String.join("", value.split(" "));
-                        }
-
-                        resultsLine += " " + value;
-                        results.add(resultsLine);
-                        resultsLine = "";
-                        continue;
-                    }
-                }
-            }
+            parser.parse();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        result.status = parser.getStatus();
+        result.timedOut = parser.isTimedOut();
+        result.z3Statistics.putAll(parser.getStatistics());
+        if (isAnytimeOptimizing()) {
+            // the first check is of the hard constraints, the second one optimizes, see
+            // writeAnytimeOptimization
+            int checks = parser.getCheckCount();
+            if (checks > 1 && parser.getModelCheck() == checks) {
+                if (result.status == Status.UNKNOWN) {
+                    // the optimization budget ran out, the model is the best one found so far
+                    result.status = Status.SATISFIABLE;
+                    result.budgetExhausted = true;
+                }
+                result.cost = parser.getObjectiveUpper();
+            } else if (parser.getModelCheck() == 1) {
+                // the optimization found no model within the budget, keep the hard model
+                result.status = Status.SATISFIABLE;
+                result.budgetExhausted = true;
+                result.cost = parser.getEvaluatedValue();
+            }
+            result.lowerBound = parser.getObjectiveLower();
+        }
+        if (result.status == Status.SATISFIABLE) {
+            result.modelValues = parser.getModel();
+        } else if (result.status == Status.UNSATISFIABLE) {
+            result.unsatConstraintIndices.addAll(parser.getUnsatCoreIndices());
+        }
     }
 }
@@ -0,0 +1,352 @@
+package backend.z3smt;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk cache of z3 outputs, keyed on a hash of the SMT file of each constraint component.
+ *
+ * <p>The SMT file is canonicalized before hashing by renumbering the slot IDs of the z3 variables
+ * "|slotID-component|" and the indices of the constraint indicators "c!index" in order of first
+ * appearance, so that a component which is unchanged apart from its slot IDs has the same hash
+ * from one run to the next. The z3 output is stored in the same canonical form and mapped back to
+ * the IDs of the current run when it is reused.
+ *
+ * <p>The cache directory is bounded in size, the least recently used entries are evicted first.
+ */
+public class Z3SolutionCache {
+
+    private static final String entryExtension = ".z3out";
+    // entries are written to temporary files first, which are left behind by a crash while
+    // writing, and deleted once they are older than any write could take
+    private static final String temporaryExtension = ".z3out.tmp";
+    private static final long staleTemporaryMillis = TimeUnit.HOURS.toMillis(1);
+
+    private final Path directory;
+    private final long maxBytes;
+
+    // statistics, updated concurrently by the components being solved
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /** A component SMT file in canonical form, with the renaming back to the current run. */
+    public static class CanonicalComponent {
+        private final String hash;
+        // canonical slot IDs and indicator indices from the ones of the current run
+        private final Map<Integer, Integer> canonicalSlots = new HashMap<>();
+        private final Map<Integer, Integer> canonicalIndicators = new HashMap<>();
+        // the ones of the current run, indexed by canonical slot ID and indicator index
+        private final List<Integer> slots = new ArrayList<>();
+        private final List<Integer> indicators = new ArrayList<>();
+
+        private CanonicalComponent(String smtFile) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new BugInCF("SHA-256 is not available", e);
+            }
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get(smtFile))) {
+                StringBuilder canonicalLine = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    canonicalLine.setLength(0);
+                    rename(line, canonicalLine, this::toCanonicalSlot, this::toCanonicalIndicator);
+                    canonicalLine.append('\n');
+                    digest.update(canonicalLine.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException e) {
+                throw new BugInCF("Could not read SMT file " + smtFile, e);
+            }
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            hash = hex.toString();
+        }
+
+        private Integer toCanonicalSlot(int slotID) {
+            return canonicalSlots.computeIfAbsent(
+                    slotID,
+                    id -> {
+                        slots.add(id);
+                        return slots.size() - 1;
+                    });
+        }
+
+        private Integer toCanonicalIndicator(int index) {
+            return canonicalIndicators.computeIfAbsent(
+                    index,
+                    i -> {
+                        indicators.add(i);
+                        return indicators.size() - 1;
+                    });
+        }
+
+        private Integer fromCanonicalSlot(int slotID) {
+            return slotID < slots.size() ? slots.get(slotID) : null;
+        }
+
+        private Integer fromCanonicalIndicator(int index) {
+            return index < indicators.size() ? indicators.get(index) : null;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+    }
+
+    /** Maps a slot ID or indicator index to another, or returns null if it has no mapping. */
+    private interface Renaming {
+        Integer rename(int id);
+    }
+
+    public Z3SolutionCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new BugInCF("Could not create the z3 solution cache " + directory, e);
+        }
+    }
+
+    /** Canonicalizes and hashes the given SMT file. */
+    public CanonicalComponent canonicalize(String smtFile) {
+        return new CanonicalComponent(smtFile);
+    }
+
+    /**
+     * Returns the cached z3 output for the component, renamed to the IDs of the current run, or
+     * null if the component is not in the cache.
+     */
+    public String lookup(CanonicalComponent component) {
+        Path entry = entryPath(component);
+        String canonicalOutput;
+        try {
+            canonicalOutput = new String(Files.readAllBytes(entry), StandardCharsets.UTF_8);
+            // mark the entry as recently used
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // not cached, or evicted concurrently
+            misses.incrementAndGet();
+            return null;
+        }
+
+        String output =
+                renameAll(
+                        canonicalOutput,
+                        component::fromCanonicalSlot,
+                        component::fromCanonicalIndicator);
+        if (output == null) {
+            // the entry does not fit the slots of this component
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return output;
+    }
+
+    /** Stores the z3 output for the component, evicting old entries if the cache is too large. */
+    public void store(CanonicalComponent component, String output) {
+        String canonicalOutput =
+                renameAll(
+                        output, component.canonicalSlots::get, component.canonicalIndicators::get);
+        if (canonicalOutput == null) {
+            // the output refers to slots not in the SMT file, which cannot be reused
+            return;
+        }
+
+        Path entry = entryPath(component);
+        // written to a temporary file first, so that no partial entry is ever read
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(directory, component.hash + ".", temporaryExtension);
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(canonicalOutput);
+            }
+            Files.move(
+                    temporary,
+                    entry,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteTemporary(temporary);
+            throw new BugInCF("Could not write the z3 solution cache entry " + entry, e);
+        }
+
+        evict();
+    }
+
+    private static void deleteTemporary(Path temporary) {
+        if (temporary == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temporary);
+        } catch (IOException e) {
+            // deleted once stale, see evict()
+        }
+    }
+
+    // Deletes the stale temporary files, then the least recently used entries until the cache
+    // fits in its size bound
+    private synchronized void evict() {
+        List<Path> entries = new ArrayList<>();
+        List<Path> temporaries = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(
+                    file -> {
+                        if (file.toString().endsWith(entryExtension)) {
+                            entries.add(file);
+                        } else if (file.toString().endsWith(temporaryExtension)) {
+                            temporaries.add(file);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new BugInCF("Could not list the z3 solution cache " + directory, e);
+        }
+
+        long staleBefore = System.currentTimeMillis() - staleTemporaryMillis;
+        for (Path temporary : temporaries) {
+            try {
+                if (Files.getLastModifiedTime(temporary).toMillis() < staleBefore) {
+                    Files.deleteIfExists(temporary);
+                }
+            } catch (IOException e) {
+                // moved or deleted concurrently
+            }
+        }
+
+        Map<Path, Long> sizes = new HashMap<>();
+        Map<Path, Long> lastUsed = new HashMap<>();
+        long totalSize = 0;
+        for (Path entry : entries) {
+            try {
+                sizes.put(entry, Files.size(entry));
+                lastUsed.put(entry, Files.getLastModifiedTime(entry).toMillis());
+            } catch (IOException e) {
+                // deleted concurrently
+                sizes.put(entry, 0L);
+                lastUsed.put(entry, 0L);
+            }
+            totalSize += sizes.get(entry);
+        }
+        if (totalSize <= maxBytes) {
+            return;
+        }
+
+        entries.sort(Comparator.comparing(lastUsed::get));
+        for (Path entry : entries) {
+            if (totalSize <= maxBytes) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(entry);
+            } catch (IOException e) {
+                throw new BugInCF("Could not evict the z3 solution cache entry " + entry, e);
+            }
+            totalSize -= sizes.get(entry);
+        }
+    }
+
+    private Path entryPath(CanonicalComponent component) {
+        return directory.resolve(component.hash + entryExtension);
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    // Renames every line of the text, returns null if some ID has no mapping
+    private static String renameAll(
+            String text, Renaming slotRenaming, Renaming indicatorRenaming) {
+        StringBuilder renamed = new StringBuilder(text.length());
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!rename(line, renamed, slotRenaming, indicatorRenaming)) {
+                    return null;
+                }
+                renamed.append('\n');
+            }
+        } catch (IOException e) {
+            throw new BugInCF("Could not read z3 output", e);
+        }
+        return renamed.toString();
+    }
+
+    // Appends the line with the slot IDs in "|slotID-" and the indicator indices in "c!index"
+    // renamed, returns false if some ID has no mapping
+    private static boolean rename(
+            String line,
+            StringBuilder renamed,
+            Renaming slotRenaming,
+            Renaming indicatorRenaming) {
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            char c = line.charAt(i);
+            Renaming renaming = null;
+            int prefixLength = 0;
+            if (c == '|') {
+                renaming = slotRenaming;
+                prefixLength = 1;
+            } else if (c == Z3SmtSolver.constraintIndicatorPrefix.charAt(0)
+                    && line.startsWith(Z3SmtSolver.constraintIndicatorPrefix, i)) {
+                renaming = indicatorRenaming;
+                prefixLength = Z3SmtSolver.constraintIndicatorPrefix.length();
+            }
+            if (renaming == null) {
+                renamed.append(c);
+                i++;
+                continue;
+            }
+
+            int start = i + prefixLength;
+            int end = start;
+            while (end < length && Character.isDigit(line.charAt(end))) {
+                end++;
+            }
+            // slot IDs are followed by the component, indicators end the symbol
+            boolean isSlot = renaming == slotRenaming;
+            if (end == start || (isSlot && (end == length || line.charAt(end) != '-'))) {
+                renamed.append(line, i, start);
+                i = start;
+                continue;
+            }
+            Integer id = renaming.rename(Integer.parseInt(line.substring(start, end)));
+            if (id == null) {
+                return false;
+            }
+            renamed.append(line, i, start).append(id);
+            i = end;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,22 @@
+package backend.z3smt.encoder;
+
+import backend.z3smt.SmtText;
+import backend.z3smt.SmtTextFormatTranslator;
+
+import checkers.inference.solver.backend.encoder.AbstractConstraintEncoder;
+import checkers.inference.solver.frontend.Lattice;
+
+/** Abstract base class for every SMT-LIB text constraint encoders. */
+public class SmtTextAbstractConstraintEncoder<SlotEncodingT, SlotSolutionT>
+        extends AbstractConstraintEncoder<SmtText> {
+
+    protected final SmtTextFormatTranslator<SlotEncodingT, SlotSolutionT> textFormatTranslator;
+
+    public SmtTextAbstractConstraintEncoder(
+            Lattice lattice,
+            SmtTextFormatTranslator<SlotEncodingT, SlotSolutionT> textFormatTranslator) {
+        // empty value is true, contradictory value is false
+        super(lattice, SmtText.TRUE, SmtText.FALSE);
+        this.textFormatTranslator = textFormatTranslator;
+    }
+}
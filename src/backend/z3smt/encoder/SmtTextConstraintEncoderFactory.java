@@ -0,0 +1,25 @@
+package backend.z3smt.encoder;
+
+import backend.z3smt.SmtText;
+import backend.z3smt.SmtTextFormatTranslator;
+
+import checkers.inference.solver.backend.encoder.AbstractConstraintEncoderFactory;
+import checkers.inference.solver.frontend.Lattice;
+
+/**
+ * Abstract SMT-LIB text implementation of {@link
+ * checkers.inference.solver.backend.encoder.ConstraintEncoderFactory}. Subclasses must specify the
+ * exact encoders used.
+ *
+ * @see checkers.inference.solver.backend.encoder.ConstraintEncoderFactory
+ */
+public abstract class SmtTextConstraintEncoderFactory<SlotEncodingT, SlotSolutionT>
+        extends AbstractConstraintEncoderFactory<
+                SmtText, SmtTextFormatTranslator<SlotEncodingT, SlotSolutionT>> {
+
+    public SmtTextConstraintEncoderFactory(
+            Lattice lattice,
+            SmtTextFormatTranslator<SlotEncodingT, SlotSolutionT> textFormatTranslator) {
+        super(lattice, textFormatTranslator);
+    }
+}
@@ -127,6 +127,12 @@ public class UnitsRepresentationUtils {
     /** An immutable view of {@link #swappedMap}. */
     private Map<AnnotationMirror, AnnotationMirror> immutableSwappedMap;
 
+    /**
+     * Surface units of decoded solutions, keyed on the prefix exponent followed by the base unit
+     * exponents in base unit order, so that each distinct solution unit is built only once.
+     */
+    private final Map<List<Integer>, AnnotationMirror> decodedSurfaceUnits = new HashMap<>();
+
     private UnitsRepresentationUtils(ProcessingEnvironment processingEnv, Elements elements) {
         UnitsRepresentationUtils.processingEnv = processingEnv;
         UnitsRepresentationUtils.elements = elements;
@@ -420,10 +426,42 @@ public class UnitsRepresentationUtils {
             swappedMap.putAll(
                     unitsAnnotationMirrorMap.entrySet().stream()
                             .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey)));
+            // decoded units may now have a surface alias
+            decodedSurfaceUnits.clear();
         }
         return immutableSwappedMap;
     }
 
+    /**
+     * Returns the surface unit representation of a solved unit. Top and bottom are returned based
+     * on their booleans alone, since the other values can be arbitrary. Other units are interned:
+     * units with the same prefix and base unit exponents share one annotation.
+     */
+    public AnnotationMirror getSurfaceUnit(TypecheckUnit unit) {
+        if (unit.isUnknownUnits()) {
+            return SURFACE_TOP;
+        } else if (unit.isUnitsBottom()) {
+            return SURFACE_BOTTOM;
+        }
+
+        // ensure the cache is in sync with the alias map before looking up
+        Map<AnnotationMirror, AnnotationMirror> aliasMap = getUnitsAliasMapSwapped();
+
+        List<Integer> key = new ArrayList<>(unit.getExponents().size() + 1);
+        key.add(unit.getPrefixExponent());
+        // exponents is a sorted map, so the base units are always in the same order
+        key.addAll(unit.getExponents().values());
+
+        AnnotationMirror surfaceUnit = decodedSurfaceUnits.get(key);
+        if (surfaceUnit == null) {
+            AnnotationMirror internalUnit =
+                    createInternalUnit(false, false, unit.getPrefixExponent(), unit.getExponents());
+            surfaceUnit = aliasMap.getOrDefault(internalUnit, internalUnit);
+            decodedSurfaceUnits.put(key, surfaceUnit);
+        }
+        return surfaceUnit;
+    }
+
     public boolean hasAllBaseUnits(AnnotationMirror anno) {
         if (!AnnotationUtils.areSameByClass(anno, UnitsRep.class)) {
             return false;
@@ -0,0 +1,158 @@
+package units.solvers.backend;
+
+import backend.util.SlotIndex;
+import backend.util.UnionFind;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.solver.util.Statistics;
+
+import units.representation.TypecheckUnit;
+import units.representation.UnitsRepresentationUtils;
+import units.solvers.backend.z3smt.encoder.UnitsZ3SmtEncoderUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Computes for each variable slot the dimensions (the prefix and the serializable base units) in
+ * which its exponent can be nonzero. The exponents of the other dimensions are fixed to 0 when
+ * encoding, instead of being z3 variables.
+ *
+ * <p>Every constraint relates the exponents of its slots by homogeneous linear equations, per
+ * dimension, so the only source of a nonzero exponent is a constant slot. The exponents of a
+ * dimension can thus be set to 0 in every slot of a component of the constraint graph which has no
+ * constant slot with a nonzero exponent in that dimension, without losing solutions: top and
+ * bottom only require exponents of 0, and 0 is the preferred dimensionless value. As in {@link
+ * backend.util.ConstraintPartitioner}, constant slots do not connect the slots they are related
+ * to.
+ */
+public class UnitsActiveDimensions {
+
+    /** Every dimension is active in every slot, for encoding before the analysis is run. */
+    @SuppressWarnings("unchecked")
+    public static final UnitsActiveDimensions ALL =
+            new UnitsActiveDimensions(SlotIndex.EMPTY, new Set[0]);
+
+    private final SlotIndex slotIndex;
+    // active dimensions of each analyzed variable slot, indexed by slot index and shared by the
+    // slots of a component, null for constant slots
+    private final Set<String>[] activeDimensions;
+
+    private UnitsActiveDimensions(SlotIndex slotIndex, Set<String>[] activeDimensions) {
+        this.slotIndex = slotIndex;
+        this.activeDimensions = activeDimensions;
+    }
+
+    /**
+     * Analyzes the slots of the given index and the constraints, after the serializable base units
+     * have been set, see {@link UnitsRepresentationUtils#setSerializedBaseUnits(Set)}.
+     */
+    @SuppressWarnings("unchecked")
+    public static UnitsActiveDimensions compute(
+            SlotIndex slotIndex, Collection<Constraint> constraints) {
+        UnitsRepresentationUtils unitsRepUtils = UnitsRepresentationUtils.getInstance();
+        List<String> dimensions = new ArrayList<>();
+        if (unitsRepUtils.serializePrefix()) {
+            dimensions.add(UnitsZ3SmtEncoderUtils.prefixSlotName);
+        }
+        dimensions.addAll(unitsRepUtils.serializableBaseUnits());
+
+        UnionFind unionFind = new UnionFind(slotIndex.size());
+        for (Constraint constraint : constraints) {
+            int first = -1;
+            for (Slot slot : constraint.getSlots()) {
+                if (slot.isConstant()) {
+                    continue;
+                }
+                int index = slotIndex.indexOf(slot);
+                if (first == -1) {
+                    first = index;
+                } else {
+                    unionFind.union(first, index);
+                }
+            }
+        }
+
+        // the nonzero dimensions of the constants related to each component, indexed by the
+        // slot index of its root, and the nonzero dimensions of each constant
+        Set<String>[] componentDimensions = new Set[slotIndex.size()];
+        Set<String>[] constantDimensions = new Set[slotIndex.size()];
+        for (Constraint constraint : constraints) {
+            Set<String> nonzeroDimensions = new HashSet<>();
+            for (Slot slot : constraint.getSlots()) {
+                if (slot.isConstant()) {
+                    int index = slotIndex.indexOf(slot);
+                    if (constantDimensions[index] == null) {
+                        constantDimensions[index] =
+                                nonzeroDimensions((ConstantSlot) slot, dimensions);
+                    }
+                    nonzeroDimensions.addAll(constantDimensions[index]);
+                }
+            }
+            if (nonzeroDimensions.isEmpty()) {
+                continue;
+            }
+            for (Slot slot : constraint.getSlots()) {
+                if (!slot.isConstant()) {
+                    int root = unionFind.find(slotIndex.indexOf(slot));
+                    if (componentDimensions[root] == null) {
+                        componentDimensions[root] = new HashSet<>();
+                    }
+                    componentDimensions[root].addAll(nonzeroDimensions);
+                }
+            }
+        }
+
+        Set<String>[] activeDimensions = new Set[slotIndex.size()];
+        long inactiveExponents = 0;
+        for (int i = 0; i < slotIndex.size(); i++) {
+            if (slotIndex.getSlot(i).isConstant()) {
+                continue;
+            }
+            int root = unionFind.find(i);
+            if (componentDimensions[root] == null) {
+                componentDimensions[root] = new HashSet<>();
+            }
+            activeDimensions[i] = componentDimensions[root];
+            inactiveExponents += dimensions.size() - activeDimensions[i].size();
+        }
+        Statistics.addOrIncrementEntry("smt_inactive_exponents", inactiveExponents);
+
+        return new UnitsActiveDimensions(slotIndex, activeDimensions);
+    }
+
+    private static Set<String> nonzeroDimensions(ConstantSlot slot, List<String> dimensions) {
+        TypecheckUnit unit =
+                UnitsRepresentationUtils.getInstance().createTypecheckUnit(slot.getValue());
+        Set<String> nonzeroDimensions = new HashSet<>();
+        if (unit.isUnknownUnits() || unit.isUnitsBottom()) {
+            // top and bottom are encoded with exponents of 0
+            return nonzeroDimensions;
+        }
+        for (String dimension : dimensions) {
+            int exponent =
+                    dimension.equals(UnitsZ3SmtEncoderUtils.prefixSlotName)
+                            ? unit.getPrefixExponent()
+                            : unit.getExponent(dimension);
+            if (exponent != 0) {
+                nonzeroDimensions.add(dimension);
+            }
+        }
+        return nonzeroDimensions;
+    }
+
+    /** Returns whether the exponent of the given dimension can be nonzero in the slot. */
+    public boolean isActive(int slotID, String dimension) {
+        int index = slotIndex.indexOf(slotID);
+        if (index < 0 || activeDimensions[index] == null) {
+            // slots not analyzed are not restricted
+            return true;
+        }
+        return activeDimensions[index].contains(dimension);
+    }
+}
@@ -0,0 +1,87 @@
+package units.solvers.backend;
+
+import backend.util.SlotEqualityClasses.EqualityExtractor;
+
+import checkers.inference.model.ArithmeticConstraint;
+import checkers.inference.model.ArithmeticConstraint.ArithmeticOperationKind;
+import checkers.inference.model.CombineConstraint;
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+
+import units.representation.UnitsRepresentationUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Identifies the Units constraints which only alias slots together, for the equality presolve
+ * shared by the Z3 and GJE back ends. The constraints considered match how each back end encodes
+ * them.
+ */
+public class UnitsEqualityExtractor implements EqualityExtractor {
+
+    // whether subtype, comparable, addition and subtraction constraints are encoded as equalities
+    private final boolean subtypeIsEquality;
+    // whether combine constraints are encoded, as equalities
+    private final boolean encodesCombine;
+
+    public UnitsEqualityExtractor(boolean subtypeIsEquality, boolean encodesCombine) {
+        this.subtypeIsEquality = subtypeIsEquality;
+        this.encodesCombine = encodesCombine;
+    }
+
+    @Override
+    public List<Slot> getForcedEqualSlots(Constraint constraint) {
+        if (constraint instanceof EqualityConstraint) {
+            EqualityConstraint ec = (EqualityConstraint) constraint;
+            return Arrays.asList(ec.getFirst(), ec.getSecond());
+        }
+
+        if (constraint instanceof ArithmeticConstraint) {
+            ArithmeticConstraint ac = (ArithmeticConstraint) constraint;
+            ArithmeticOperationKind operation = ac.getOperation();
+            if (operation == ArithmeticOperationKind.REMAINDER) {
+                // the result of a modulus is always equal to the left operand
+                return Arrays.asList(ac.getLeftOperand(), ac.getResult());
+            }
+            if (subtypeIsEquality
+                    && (operation == ArithmeticOperationKind.PLUS
+                            || operation == ArithmeticOperationKind.MINUS)) {
+                return Arrays.asList(ac.getLeftOperand(), ac.getRightOperand(), ac.getResult());
+            }
+            return null;
+        }
+
+        if (constraint instanceof CombineConstraint && encodesCombine) {
+            CombineConstraint cc = (CombineConstraint) constraint;
+            Slot declared = cc.getDeclared();
+            if (declared instanceof ConstantSlot
+                    && AnnotationUtils.areSame(
+                            ((ConstantSlot) declared).getValue(),
+                            UnitsRepresentationUtils.getInstance().RECEIVER_DEPENDANT_UNIT)) {
+                // receiver dependent units take the unit of the target
+                return Arrays.asList(cc.getTarget(), cc.getResult());
+            }
+            return Arrays.asList(declared, cc.getResult());
+        }
+
+        if (subtypeIsEquality) {
+            if (constraint instanceof SubtypeConstraint) {
+                SubtypeConstraint stc = (SubtypeConstraint) constraint;
+                return Arrays.asList(stc.getSubtype(), stc.getSupertype());
+            }
+            if (constraint instanceof ComparableConstraint) {
+                ComparableConstraint cc = (ComparableConstraint) constraint;
+                return Arrays.asList(cc.getFirst(), cc.getSecond());
+            }
+        }
+
+        return null;
+    }
+}
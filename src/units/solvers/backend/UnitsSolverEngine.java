@@ -6,6 +6,7 @@ import checkers.inference.solver.backend.SolverFactory;
 import org.checkerframework.javacutil.BugInCF;
 
 import units.solvers.backend.gje.UnitsGJESolverFactory;
+import units.solvers.backend.hybrid.UnitsHybridSolverFactory;
 import units.solvers.backend.z3smt.UnitsZ3SmtSolverFactory;
 
 public class UnitsSolverEngine extends SolverEngine {
@@ -15,9 +16,12 @@ public class UnitsSolverEngine extends SolverEngine {
             return new UnitsZ3SmtSolverFactory();
         } else if (solverName.contentEquals("GJE")) {
             return new UnitsGJESolverFactory();
+        } else if (solverName.contentEquals("Hybrid")) {
+            return new UnitsHybridSolverFactory();
         } else {
             throw new BugInCF(
-                    "A back end solver (Z3smt, GJE) must be supplied in solverArgs: solver=Z3smt");
+                    "A back end solver (Z3smt, GJE, Hybrid) must be supplied in solverArgs:"
+                            + " solver=Z3smt");
         }
     }
 }
@@ -0,0 +1,674 @@
+package units.solvers.backend.gje;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import units.solvers.backend.gje.representation.GJEEquation;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Exact Gauss-Jordan elimination over the integers for the sparse linear systems of a GJE
+ * encoding. Equations are added one at a time as {@link GJEEquation}s. Each added equation is
+ * reduced by the pivot rows so far, and unless it becomes empty it is eliminated from them and kept
+ * as a new pivot row, so that the pivot rows are always in reduced row echelon form.
+ *
+ * <p>Systems which share their coefficient matrix, such as the dimensions of most encodings, are
+ * solved together by giving each equation one right hand side per system: the elimination is done
+ * once and applied to every right hand side, and each system has its own consistency and solution.
+ *
+ * <p>Rows are kept fraction free with {@code long} coefficients divided by their gcd after each
+ * step, and are promoted to {@link BigInteger} coefficients when a step would overflow. An equation
+ * which reduces to {@code 0 = c} for a nonzero c makes the system inconsistent. Variables without a
+ * pivot are free, and are fixed to 0 (dimensionless) in the solution unless that leaves a pivot
+ * variable non-integral.
+ *
+ * <p>Every row remembers the two rows it was combined from, so that an inconsistent row is
+ * explained by the added equations it was derived from, see {@link #getInconsistentEquations}.
+ * This costs two ints per elimination step, rather than a set of equations per row.
+ */
+public class GaussJordanElimination {
+
+    private final int numOfVariables;
+    private final int numOfRightHandSides;
+    // pivot row of each variable, -1 for free variables
+    private final int[] pivotOfVariable;
+    private Row[] pivotRows = new Row[16];
+    // pivot variable of each pivot row
+    private int[] pivotColumns = new int[16];
+    private int numOfPivots;
+    // the pivot rows each free variable has been added to, indexed by variable; rows which no
+    // longer contain the variable are skipped when read
+    private final IntList[] occurrences;
+    // whether the system of each right hand side is consistent
+    private final boolean[] consistent;
+    private int numOfConsistent;
+    // the first row reduced to 0 = c with a nonzero c for each right hand side, -1 if none
+    private final int[] inconsistentNodes;
+    // the derivation of every row, two ints per row node: -1 and the index of the added equation
+    // for the rows of added equations, or the nodes of the two rows combined by an elimination step
+    private final IntList derivations = new IntList();
+    private int numOfEquations;
+    private int numOfBigIntegerSteps;
+
+    /** Creates a system with one right hand side. */
+    public GaussJordanElimination(int numOfVariables) {
+        this(numOfVariables, 1);
+    }
+
+    /** Creates systems sharing their coefficient matrix, one per right hand side. */
+    public GaussJordanElimination(int numOfVariables, int numOfRightHandSides) {
+        this.numOfVariables = numOfVariables;
+        this.numOfRightHandSides = numOfRightHandSides;
+        pivotOfVariable = new int[numOfVariables];
+        Arrays.fill(pivotOfVariable, -1);
+        occurrences = new IntList[numOfVariables];
+        consistent = new boolean[numOfRightHandSides];
+        Arrays.fill(consistent, true);
+        numOfConsistent = numOfRightHandSides;
+        inconsistentNodes = new int[numOfRightHandSides];
+        Arrays.fill(inconsistentNodes, -1);
+    }
+
+    /**
+     * Adds the equation to a system with one right hand side, and returns whether the system is
+     * still consistent. Once inconsistent, further equations are ignored.
+     */
+    public boolean addEquation(GJEEquation equation) {
+        if (numOfRightHandSides != 1) {
+            throw new BugInCF(
+                    "Adding an equation with one right hand side to GJE systems with "
+                            + numOfRightHandSides);
+        }
+        return addEquation(equation, new long[] {equation.getRhs()});
+    }
+
+    /**
+     * Adds the equation with the terms of the given equation, ignoring its right hand side, and
+     * one right hand side per system. Returns whether any system is still consistent; once none
+     * is, further equations are ignored. Equations are numbered from 0 in the order they are added,
+     * including the ignored ones.
+     */
+    public boolean addEquation(GJEEquation terms, long[] rightHandSides) {
+        int equationIndex = numOfEquations++;
+        if (numOfConsistent == 0) {
+            return false;
+        }
+        if (rightHandSides.length != numOfRightHandSides) {
+            throw new BugInCF(
+                    "Expected "
+                            + numOfRightHandSides
+                            + " right hand sides for the GJE equation: "
+                            + terms);
+        }
+        Row row = toRow(terms, rightHandSides.clone());
+        row.node = newNode(-1, equationIndex);
+
+        // the pivot rows only contain free variables besides their pivot, so reducing the row by
+        // one pivot row leaves the coefficients of the other pivot variables unchanged
+        for (int column : row.columns) {
+            int pivot = pivotOfVariable[column];
+            if (pivot >= 0) {
+                row = eliminate(row, pivotRows[pivot], column);
+            }
+        }
+
+        if (row.isEmpty()) {
+            // either redundant or 0 = c, which makes the systems with a nonzero c inconsistent
+            for (int rhsIndex = 0; rhsIndex < numOfRightHandSides; rhsIndex++) {
+                if (consistent[rhsIndex] && !row.isZero(rhsIndex)) {
+                    consistent[rhsIndex] = false;
+                    inconsistentNodes[rhsIndex] = row.node;
+                    numOfConsistent--;
+                }
+            }
+            return numOfConsistent > 0;
+        }
+
+        int column = choosePivotColumn(row);
+        IntList containingRows = occurrences[column];
+        if (containingRows != null) {
+            for (int i = 0; i < containingRows.size(); i++) {
+                int pivot = containingRows.get(i);
+                Row pivotRow = pivotRows[pivot];
+                if (pivotRow.indexOf(column) < 0) {
+                    continue;
+                }
+                Row reduced = eliminate(pivotRow, row, column);
+                pivotRows[pivot] = reduced;
+                // the reduced row gains the free variables of the new pivot row
+                for (int other : row.columns) {
+                    if (other != column
+                            && pivotRow.indexOf(other) < 0
+                            && reduced.indexOf(other) >= 0) {
+                        addOccurrence(other, pivot);
+                    }
+                }
+            }
+            occurrences[column] = null;
+        }
+
+        if (numOfPivots == pivotRows.length) {
+            pivotRows = Arrays.copyOf(pivotRows, numOfPivots * 2);
+            pivotColumns = Arrays.copyOf(pivotColumns, numOfPivots * 2);
+        }
+        pivotRows[numOfPivots] = row;
+        pivotColumns[numOfPivots] = column;
+        pivotOfVariable[column] = numOfPivots;
+        for (int other : row.columns) {
+            if (other != column) {
+                addOccurrence(other, numOfPivots);
+            }
+        }
+        numOfPivots++;
+        return true;
+    }
+
+    /** Returns whether every system is consistent. */
+    public boolean isConsistent() {
+        return numOfConsistent == numOfRightHandSides;
+    }
+
+    /** Returns whether the system of the given right hand side is consistent. */
+    public boolean isConsistent(int rhsIndex) {
+        return consistent[rhsIndex];
+    }
+
+    /**
+     * Returns the indices of the added equations from which the system of the given right hand
+     * side was found inconsistent. These equations are inconsistent on their own, but are not
+     * necessarily a minimal inconsistent subset.
+     */
+    public BitSet getInconsistentEquations(int rhsIndex) {
+        if (consistent[rhsIndex]) {
+            throw new BugInCF("Asking for the inconsistent equations of a consistent GJE system");
+        }
+        BitSet equations = new BitSet();
+        BitSet visited = new BitSet();
+        IntList worklist = new IntList();
+        worklist.add(inconsistentNodes[rhsIndex]);
+        while (worklist.size() > 0) {
+            int node = worklist.removeLast();
+            if (visited.get(node)) {
+                continue;
+            }
+            visited.set(node);
+            int first = derivations.get(2 * node);
+            int second = derivations.get(2 * node + 1);
+            if (first < 0) {
+                equations.set(second);
+            } else {
+                worklist.add(first);
+                worklist.add(second);
+            }
+        }
+        return equations;
+    }
+
+    /** Returns the rank of the system, which is the number of variables which are not free. */
+    public int getNumberOfPivots() {
+        return numOfPivots;
+    }
+
+    /** Returns the number of elimination steps which overflowed and were redone as BigIntegers. */
+    public int getNumberOfBigIntegerSteps() {
+        return numOfBigIntegerSteps;
+    }
+
+    /** Returns the solution of a system with one right hand side, see {@link #getSolution(int)}. */
+    public int[] getSolution() {
+        return getSolution(0);
+    }
+
+    /**
+     * Returns the value of each variable in the system of the given right hand side, indexed by GJE
+     * variable ID, or null if no integral solution which fits in an int was found. The system must
+     * be consistent.
+     *
+     * <p>The free variables are fixed to 0, unless that leaves some pivot variable non-integral. In
+     * that case some free variables of the non-integral rows are given integral values making their
+     * pivot variables integral, see {@link #getSolutionWithFixedFreeVariables(int)}.
+     */
+    public int[] getSolution(int rhsIndex) {
+        if (!consistent[rhsIndex]) {
+            throw new BugInCF("Asking for the solution of an inconsistent GJE system");
+        }
+        int[] solution = getSolutionWithFreeVariablesAtZero(rhsIndex);
+        if (solution == null) {
+            solution = getSolutionWithFixedFreeVariables(rhsIndex);
+        }
+        return solution;
+    }
+
+    // Returns the solution with the free variables fixed to 0, or null if it is not integral or
+    // does not fit in an int
+    private int[] getSolutionWithFreeVariablesAtZero(int rhsIndex) {
+        int[] solution = new int[numOfVariables];
+        for (int pivot = 0; pivot < numOfPivots; pivot++) {
+            Row row = pivotRows[pivot];
+            int index = row.indexOf(pivotColumns[pivot]);
+            long value;
+            if (!row.isBig()) {
+                if (row.rhs[rhsIndex] % row.coefficients[index] != 0) {
+                    return null;
+                }
+                value = row.rhs[rhsIndex] / row.coefficients[index];
+            } else {
+                BigInteger[] quotientAndRemainder =
+                        row.bigRhs(rhsIndex).divideAndRemainder(row.bigCoefficient(index));
+                if (quotientAndRemainder[1].signum() != 0
+                        || quotientAndRemainder[0].bitLength() >= Integer.SIZE) {
+                    return null;
+                }
+                value = quotientAndRemainder[0].longValue();
+            }
+            if (value != (int) value) {
+                return null;
+            }
+            solution[pivotColumns[pivot]] = (int) value;
+        }
+        return solution;
+    }
+
+    /**
+     * Returns a solution in which some free variables are given integral values, or null if none
+     * was found. While some pivot row a * x_pivot + sum(c_j * x_j) = b leaves its pivot variable
+     * non-integral, one of its free variables x_j which has not been fixed yet is fixed to a value
+     * v with c_j * v = b - sum(c_k * x_k) (mod a), over the other free variables x_k. Every step
+     * fixes one more free variable, and fixed variables are never changed. This is a greedy
+     * search, so a system may have an integral solution which is not found.
+     */
+    private int[] getSolutionWithFixedFreeVariables(int rhsIndex) {
+        // the values of the free variables, 0 until they are fixed
+        BigInteger[] freeValues = new BigInteger[numOfVariables];
+        Arrays.fill(freeValues, BigInteger.ZERO);
+        boolean[] fixed = new boolean[numOfVariables];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int pivot = 0; pivot < numOfPivots; pivot++) {
+                Row row = pivotRows[pivot];
+                int pivotIndex = row.indexOf(pivotColumns[pivot]);
+                BigInteger modulus = row.bigCoefficient(pivotIndex).abs();
+                BigInteger remainder = freeRemainder(row, rhsIndex, pivotIndex, -1, freeValues);
+                if (remainder.mod(modulus).signum() == 0) {
+                    continue;
+                }
+                if (!fixFreeVariable(row, rhsIndex, pivotIndex, modulus, freeValues, fixed)) {
+                    return null;
+                }
+                changed = true;
+            }
+        }
+
+        int[] solution = new int[numOfVariables];
+        for (int column = 0; column < numOfVariables; column++) {
+            if (freeValues[column].bitLength() >= Integer.SIZE) {
+                return null;
+            }
+            solution[column] = freeValues[column].intValue();
+        }
+        for (int pivot = 0; pivot < numOfPivots; pivot++) {
+            Row row = pivotRows[pivot];
+            int pivotIndex = row.indexOf(pivotColumns[pivot]);
+            BigInteger value =
+                    freeRemainder(row, rhsIndex, pivotIndex, -1, freeValues)
+                            .divide(row.bigCoefficient(pivotIndex));
+            if (value.bitLength() >= Integer.SIZE) {
+                return null;
+            }
+            solution[pivotColumns[pivot]] = value.intValue();
+        }
+        return solution;
+    }
+
+    // Fixes a free variable of the row which is not fixed yet, so that the pivot variable of the
+    // row is integral. Returns whether there is such a variable.
+    private static boolean fixFreeVariable(
+            Row row,
+            int rhsIndex,
+            int pivotIndex,
+            BigInteger modulus,
+            BigInteger[] freeValues,
+            boolean[] fixed) {
+        for (int index = 0; index < row.columns.length; index++) {
+            if (index == pivotIndex || fixed[row.columns[index]]) {
+                continue;
+            }
+            // solve c * v = remainder (mod modulus), which has a solution iff the gcd of c and the
+            // modulus divides the remainder
+            BigInteger coefficient = row.bigCoefficient(index).mod(modulus);
+            BigInteger remainder =
+                    freeRemainder(row, rhsIndex, pivotIndex, index, freeValues).mod(modulus);
+            BigInteger gcd = coefficient.gcd(modulus);
+            if (remainder.mod(gcd).signum() != 0) {
+                continue;
+            }
+            BigInteger reducedModulus = modulus.divide(gcd);
+            BigInteger value =
+                    reducedModulus.equals(BigInteger.ONE)
+                            ? BigInteger.ZERO
+                            : remainder
+                                    .divide(gcd)
+                                    .multiply(coefficient.divide(gcd).modInverse(reducedModulus))
+                                    .mod(reducedModulus);
+            freeValues[row.columns[index]] = value;
+            fixed[row.columns[index]] = true;
+            return true;
+        }
+        return false;
+    }
+
+    // Returns the right hand side minus the terms of the free variables of the row, except for the
+    // pivot variable and the excluded term, which is negative to exclude none
+    private static BigInteger freeRemainder(
+            Row row, int rhsIndex, int pivotIndex, int excluded, BigInteger[] freeValues) {
+        BigInteger remainder = row.bigRhs(rhsIndex);
+        for (int index = 0; index < row.columns.length; index++) {
+            if (index != pivotIndex && index != excluded) {
+                remainder =
+                        remainder.subtract(
+                                row.bigCoefficient(index).multiply(freeValues[row.columns[index]]));
+            }
+        }
+        return remainder;
+    }
+
+    private int newNode(int first, int second) {
+        derivations.add(first);
+        derivations.add(second);
+        return derivations.size() / 2 - 1;
+    }
+
+    private void addOccurrence(int column, int pivot) {
+        if (occurrences[column] == null) {
+            occurrences[column] = new IntList();
+        }
+        occurrences[column].add(pivot);
+    }
+
+    // Prefers a variable with a unit coefficient, which does not grow the other rows, otherwise
+    // the variable with the smallest coefficient
+    private static int choosePivotColumn(Row row) {
+        if (row.isBig()) {
+            return row.columns[0];
+        }
+        int best = 0;
+        for (int i = 0; i < row.columns.length; i++) {
+            long magnitude = Math.abs(row.coefficients[i]);
+            if (magnitude == 1) {
+                return row.columns[i];
+            }
+            if (magnitude > 0 && magnitude < Math.abs(row.coefficients[best])) {
+                best = i;
+            }
+        }
+        return row.columns[best];
+    }
+
+    private Row toRow(GJEEquation terms, long[] rhs) {
+        int[] columns = new int[terms.size()];
+        long[] coefficients = new long[terms.size()];
+        for (int term = 0; term < terms.size(); term++) {
+            columns[term] = terms.getVariable(term);
+            coefficients[term] = terms.getCoefficient(term);
+            if (columns[term] < 0 || columns[term] >= numOfVariables) {
+                throw new BugInCF("GJE variable " + columns[term] + " out of range in: " + terms);
+            }
+        }
+        return Row.normalized(columns, coefficients, rhs);
+    }
+
+    // Returns a multiple of row minus a multiple of pivot, in which the column cancels
+    private Row eliminate(Row row, Row pivot, int column) {
+        Row result = null;
+        if (!row.isBig() && !pivot.isBig()) {
+            try {
+                result = eliminateLong(row, pivot, column);
+            } catch (ArithmeticException e) {
+                numOfBigIntegerSteps++;
+            }
+        }
+        if (result == null) {
+            result = eliminateBig(row, pivot, column);
+        }
+        result.node = newNode(row.node, pivot.node);
+        return result;
+    }
+
+    private static Row eliminateLong(Row row, Row pivot, int column) {
+        long rowCoefficient = row.coefficients[row.indexOf(column)];
+        long pivotCoefficient = pivot.coefficients[pivot.indexOf(column)];
+        long gcd = gcd(rowCoefficient, pivotCoefficient);
+        long rowFactor = pivotCoefficient / gcd;
+        long pivotFactor = rowCoefficient / gcd;
+
+        int[] columns = new int[row.columns.length + pivot.columns.length];
+        long[] coefficients = new long[columns.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < row.columns.length || j < pivot.columns.length) {
+            int resultColumn;
+            long coefficient;
+            if (j == pivot.columns.length
+                    || (i < row.columns.length && row.columns[i] < pivot.columns[j])) {
+                resultColumn = row.columns[i];
+                coefficient = Math.multiplyExact(rowFactor, row.coefficients[i++]);
+            } else if (i == row.columns.length || pivot.columns[j] < row.columns[i]) {
+                resultColumn = pivot.columns[j];
+                coefficient =
+                        Math.subtractExact(
+                                0, Math.multiplyExact(pivotFactor, pivot.coefficients[j++]));
+            } else {
+                resultColumn = row.columns[i];
+                coefficient =
+                        Math.subtractExact(
+                                Math.multiplyExact(rowFactor, row.coefficients[i++]),
+                                Math.multiplyExact(pivotFactor, pivot.coefficients[j++]));
+            }
+            if (coefficient != 0) {
+                columns[size] = resultColumn;
+                coefficients[size++] = coefficient;
+            }
+        }
+        long[] rhs = new long[row.rhs.length];
+        for (int rhsIndex = 0; rhsIndex < rhs.length; rhsIndex++) {
+            rhs[rhsIndex] =
+                    Math.subtractExact(
+                            Math.multiplyExact(rowFactor, row.rhs[rhsIndex]),
+                            Math.multiplyExact(pivotFactor, pivot.rhs[rhsIndex]));
+        }
+        return Row.normalized(
+                Arrays.copyOf(columns, size), Arrays.copyOf(coefficients, size), rhs);
+    }
+
+    private static Row eliminateBig(Row row, Row pivot, int column) {
+        BigInteger rowCoefficient = row.bigCoefficient(row.indexOf(column));
+        BigInteger pivotCoefficient = pivot.bigCoefficient(pivot.indexOf(column));
+        BigInteger gcd = rowCoefficient.gcd(pivotCoefficient);
+        BigInteger rowFactor = pivotCoefficient.divide(gcd);
+        BigInteger pivotFactor = rowCoefficient.divide(gcd);
+
+        int numOfRightHandSides = row.numOfRightHandSides();
+        int[] columns = new int[row.columns.length + pivot.columns.length];
+        BigInteger[] coefficients = new BigInteger[columns.length + numOfRightHandSides];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < row.columns.length || j < pivot.columns.length) {
+            int resultColumn;
+            BigInteger coefficient;
+            if (j == pivot.columns.length
+                    || (i < row.columns.length && row.columns[i] < pivot.columns[j])) {
+                resultColumn = row.columns[i];
+                coefficient = rowFactor.multiply(row.bigCoefficient(i++));
+            } else if (i == row.columns.length || pivot.columns[j] < row.columns[i]) {
+                resultColumn = pivot.columns[j];
+                coefficient = pivotFactor.multiply(pivot.bigCoefficient(j++)).negate();
+            } else {
+                resultColumn = row.columns[i];
+                coefficient =
+                        rowFactor
+                                .multiply(row.bigCoefficient(i++))
+                                .subtract(pivotFactor.multiply(pivot.bigCoefficient(j++)));
+            }
+            if (coefficient.signum() != 0) {
+                columns[size] = resultColumn;
+                coefficients[size++] = coefficient;
+            }
+        }
+        for (int rhsIndex = 0; rhsIndex < numOfRightHandSides; rhsIndex++) {
+            coefficients[size + rhsIndex] =
+                    rowFactor
+                            .multiply(row.bigRhs(rhsIndex))
+                            .subtract(pivotFactor.multiply(pivot.bigRhs(rhsIndex)));
+        }
+        return Row.normalized(
+                Arrays.copyOf(columns, size),
+                Arrays.copyOf(coefficients, size + numOfRightHandSides));
+    }
+
+    private static long gcd(long a, long b) {
+        if (a == Long.MIN_VALUE || b == Long.MIN_VALUE) {
+            // the magnitude does not fit in a long
+            throw new ArithmeticException("long overflow");
+        }
+        a = Math.abs(a);
+        b = Math.abs(b);
+        while (b != 0) {
+            long remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return a;
+    }
+
+    /**
+     * A sparse row sum(coefficients[i] * x_columns[i]) = rhs[k] for each right hand side k, with
+     * the columns in increasing order and no zero coefficients. When the coefficients and right
+     * hand sides do not all fit in a long, they are kept in bigCoefficients instead, the
+     * coefficients followed by the right hand sides.
+     */
+    private static final class Row {
+        final int[] columns;
+        final long[] coefficients;
+        final long[] rhs;
+        final BigInteger[] bigCoefficients;
+        // the node of the row in the derivations, set when the row is made
+        int node;
+
+        private Row(int[] columns, long[] coefficients, long[] rhs, BigInteger[] bigCoefficients) {
+            this.columns = columns;
+            this.coefficients = coefficients;
+            this.rhs = rhs;
+            this.bigCoefficients = bigCoefficients;
+        }
+
+        // Divides the row by the gcd of its coefficients and right hand sides
+        static Row normalized(int[] columns, long[] coefficients, long[] rhs) {
+            long gcd = 0;
+            for (long value : rhs) {
+                gcd = gcd(gcd, value);
+            }
+            for (long coefficient : coefficients) {
+                gcd = gcd(gcd, coefficient);
+            }
+            if (gcd > 1) {
+                for (int i = 0; i < coefficients.length; i++) {
+                    coefficients[i] /= gcd;
+                }
+                for (int i = 0; i < rhs.length; i++) {
+                    rhs[i] /= gcd;
+                }
+            }
+            return new Row(columns, coefficients, rhs, null);
+        }
+
+        // Divides the row by the gcd of its coefficients and right hand sides, and demotes it to
+        // longs if they fit
+        static Row normalized(int[] columns, BigInteger[] coefficientsAndRhs) {
+            BigInteger gcd = BigInteger.ZERO;
+            for (BigInteger coefficient : coefficientsAndRhs) {
+                gcd = gcd.gcd(coefficient);
+            }
+            boolean fitsInLong = true;
+            for (int i = 0; i < coefficientsAndRhs.length; i++) {
+                if (gcd.compareTo(BigInteger.ONE) > 0) {
+                    coefficientsAndRhs[i] = coefficientsAndRhs[i].divide(gcd);
+                }
+                fitsInLong &= coefficientsAndRhs[i].bitLength() < Long.SIZE;
+            }
+            if (!fitsInLong) {
+                return new Row(columns, null, null, coefficientsAndRhs);
+            }
+            long[] coefficients = new long[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                coefficients[i] = coefficientsAndRhs[i].longValue();
+            }
+            long[] rhs = new long[coefficientsAndRhs.length - columns.length];
+            for (int i = 0; i < rhs.length; i++) {
+                rhs[i] = coefficientsAndRhs[columns.length + i].longValue();
+            }
+            return new Row(columns, coefficients, rhs, null);
+        }
+
+        boolean isBig() {
+            return bigCoefficients != null;
+        }
+
+        boolean isEmpty() {
+            return columns.length == 0;
+        }
+
+        int numOfRightHandSides() {
+            return isBig() ? bigCoefficients.length - columns.length : rhs.length;
+        }
+
+        // whether the given right hand side is 0
+        boolean isZero(int rhsIndex) {
+            return isBig() ? bigRhs(rhsIndex).signum() == 0 : rhs[rhsIndex] == 0;
+        }
+
+        // index of the column in the row, negative if the column is not in the row
+        int indexOf(int column) {
+            return Arrays.binarySearch(columns, column);
+        }
+
+        BigInteger bigCoefficient(int index) {
+            return isBig() ? bigCoefficients[index] : BigInteger.valueOf(coefficients[index]);
+        }
+
+        BigInteger bigRhs(int rhsIndex) {
+            return isBig()
+                    ? bigCoefficients[columns.length + rhsIndex]
+                    : BigInteger.valueOf(rhs[rhsIndex]);
+        }
+    }
+
+    // a growable list of pivot row indices or derivation nodes
+    private static class IntList {
+        private int[] elements = new int[4];
+        private int size;
+
+        void add(int element) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = element;
+        }
+
+        int get(int index) {
+            return elements[index];
+        }
+
+        int removeLast() {
+            return elements[--size];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package units.solvers.backend.gje;
 
+import backend.util.SlotEqualityClasses;
+import backend.util.SlotIndex;
+import backend.util.SlotEqualityClasses.EqualityExtractor;
+
 import checkers.inference.model.CombVariableSlot;
 import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
@@ -8,20 +12,20 @@ import checkers.inference.model.LubVariableSlot;
 import checkers.inference.model.RefinementVariableSlot;
 import checkers.inference.model.Slot;
 import checkers.inference.model.VariableSlot;
-import checkers.inference.model.serialization.ToStringSerializer;
 import checkers.inference.solver.backend.AbstractFormatTranslator;
 import checkers.inference.solver.backend.encoder.ConstraintEncoderFactory;
 import checkers.inference.solver.frontend.Lattice;
-import checkers.inference.solver.util.PrintUtils.UniqueSlotCollector;
 
 import org.checkerframework.javacutil.AnnotationUtils;
 
 import units.representation.TypecheckUnit;
 import units.representation.UnitsRepresentationUtils;
+import units.solvers.backend.UnitsEqualityExtractor;
 import units.solvers.backend.gje.encoder.UnitsGJEConstraintEncoderFactory;
 import units.solvers.backend.gje.representation.GJEEquationSet;
 import units.solvers.backend.gje.representation.GJEInferenceUnit;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -37,12 +41,18 @@ public class UnitsGJEFormatTranslator
     // static reference to the singleton instance
     protected static UnitsRepresentationUtils unitsRepUtils;
 
-    /** Cache of all serialized slots, keyed on slot ID. */
-    protected final Map<Integer, GJEInferenceUnit> serializedSlots = new HashMap<>();
+    /** Cache of all serialized slots, keyed on slot ID and stored densely over the slot index. */
+    protected final SlotIndex.SlotMap<GJEInferenceUnit> serializedSlots = new SlotIndex.SlotMap<>();
+
+    protected SlotIndex slotIndex = SlotIndex.EMPTY;
+    // GJE variable ID of each slot, indexed by slot index, -1 for slots without a GJE variable
+    protected int[] gjeIDs = new int[0];
+    // the slot of each GJE variable, indexed by GJE variable ID
+    protected Slot[] gjeSlots = new Slot[0];
+    protected int numOfGJEVariables;
 
-    // maps serialized slot ID to the slot objects
-    protected final Map<Integer, Slot> slotGJEtoCFIMap = new HashMap<>();
-    protected final Map<Slot, Integer> slotCFItoGJEMap = new HashMap<>();
+    /** Slots forced to be equal by the constraints are serialized as their representative. */
+    protected SlotEqualityClasses slotEqualityClasses = SlotEqualityClasses.NONE;
 
     public UnitsGJEFormatTranslator(Lattice lattice) {
         super(lattice);
@@ -55,36 +65,64 @@ public class UnitsGJEFormatTranslator
         return new UnitsGJEConstraintEncoderFactory(lattice, this);
     }
 
-    protected int assignGJEVarIDs(Collection<Constraint> constraints) {
-        int gjeID = 0;
+    public void setSlotEqualityClasses(SlotEqualityClasses slotEqualityClasses) {
+        this.slotEqualityClasses = slotEqualityClasses;
+    }
 
-        final ToStringSerializer toStringSerializer = new ToStringSerializer(false);
+    /** Returns the constraints which only force slots to be equal, for the equality presolve. */
+    public EqualityExtractor createEqualityExtractor() {
+        // subtype, comparable, addition and subtraction are all encoded as equalities in GJE
+        return new UnitsEqualityExtractor(true, false);
+    }
 
-        System.err.println("== Slot serialization map ==");
-        // get a set of unique slots used in the constraints
-        UniqueSlotCollector slotsCollector = new UniqueSlotCollector();
-        for (Constraint constraint : constraints) {
-            constraint.serialize(slotsCollector);
-        }
+    /**
+     * Numbers the GJE variables of the slots of the constraints, which are indexed by the given
+     * slot index, and returns the number of GJE variables.
+     */
+    protected int assignGJEVarIDs(SlotIndex slotIndex, Collection<Constraint> constraints) {
+        this.slotIndex = slotIndex;
+        serializedSlots.setIndex(slotIndex);
+        gjeIDs = new int[slotIndex.size()];
+        Arrays.fill(gjeIDs, -1);
+        gjeSlots = new Slot[slotIndex.size()];
+        int gjeID = 0;
 
-        for (VariableSlot slot : slotsCollector.getSlots()) {
-            slotGJEtoCFIMap.put(gjeID, slot);
-            slotCFItoGJEMap.put(slot, gjeID);
-            System.err.println("ID: " + gjeID + " --> slot " + slot.serialize(toStringSerializer));
-            gjeID++;
+        for (Constraint constraint : constraints) {
+            for (Slot slot : constraint.getSlots()) {
+                // only representatives which are not constants need a GJE variable
+                Slot representative = slotEqualityClasses.getRepresentative(slot);
+                int index = slotIndex.indexOf(representative);
+                if (representative.isConstant() || gjeIDs[index] >= 0) {
+                    continue;
+                }
+                gjeIDs[index] = gjeID;
+                gjeSlots[gjeID] = representative;
+                gjeID++;
+            }
         }
 
+        numOfGJEVariables = gjeID;
         return gjeID;
     }
 
+    // Serializes the slot as the representative of its equality class
+    private GJEInferenceUnit serializeRepresentative(VariableSlot slot) {
+        Slot representative = slotEqualityClasses.getRepresentative(slot);
+        if (representative instanceof ConstantSlot) {
+            return serializeConstantSlot((ConstantSlot) representative);
+        }
+        return serializeVarSlot((VariableSlot) representative);
+    }
+
     protected GJEInferenceUnit serializeVarSlot(VariableSlot slot) {
         int cfiSlotID = slot.getId();
-        int gjeSlotID = slotCFItoGJEMap.get(slot);
 
         if (serializedSlots.containsKey(cfiSlotID)) {
             return serializedSlots.get(cfiSlotID);
         }
 
+        int gjeSlotID = gjeIDs[slotIndex.indexOf(cfiSlotID)];
+
         GJEInferenceUnit encodedSlot = GJEInferenceUnit.makeVariableSlot(cfiSlotID, gjeSlotID);
 
         serializedSlots.put(cfiSlotID, encodedSlot);
@@ -140,7 +178,7 @@ public class UnitsGJEFormatTranslator
     @Override
     public GJEInferenceUnit serialize(VariableSlot slot) {
         // System.err.println("Serializing vs " + slot);
-        return serializeVarSlot(slot);
+        return serializeRepresentative(slot);
     }
 
     @Override
@@ -151,80 +189,64 @@ public class UnitsGJEFormatTranslator
 
     @Override
     public GJEInferenceUnit serialize(ExistentialVariableSlot slot) {
-        return serializeVarSlot(slot);
+        return serializeRepresentative(slot);
     }
 
     @Override
     public GJEInferenceUnit serialize(RefinementVariableSlot slot) {
-        return serializeVarSlot(slot);
+        return serializeRepresentative(slot);
     }
 
     @Override
     public GJEInferenceUnit serialize(CombVariableSlot slot) {
-        return serializeVarSlot(slot);
+        return serializeRepresentative(slot);
     }
 
     @Override
     public GJEInferenceUnit serialize(LubVariableSlot slot) {
-        return serializeVarSlot(slot);
+        return serializeRepresentative(slot);
     }
 
-    // Decode overall solutions from GJE
+    /**
+     * Decodes the values of the GJE variables in each dimension, indexed by dimension and then by
+     * GJE variable ID, into a unit for the slot of each GJE variable. Dimensions without equations
+     * are null, and have the value 0.
+     */
     public Map<Integer, AnnotationMirror> decodeSolution(
-            List<String> model, ProcessingEnvironment processingEnv) {
-
+            int[][] solutions, ProcessingEnvironment processingEnv) {
         Map<Integer, AnnotationMirror> result = new HashMap<>();
-        // Map<Integer, TypecheckUnit> solutionSlots = new HashMap<>();
-        //
-        // for (String line : model) {
-        // // each line is "varName value"
-        // String[] parts = line.split(" ");
-        // String varName = parts[0];
-        // String value = parts[1];
-        //
-        // // Get slotID and component name
-        // Pair<Integer, String> slot =
-        // UnitsGJEEncoderUtils.slotFromZ3VarName(varName);
-        // int slotID = slot.first;
-        // String component = slot.second;
-        //
-        // // Create a fresh solution slot if needed in the map
-        // if (!solutionSlots.containsKey(slotID)) {
-        // solutionSlots.put(slotID, new TypecheckUnit());
-        // }
-        //
-        // TypecheckUnit z3Slot = solutionSlots.get(slotID);
-        // if (component.contentEquals(UnitsGJEEncoderUtils.uuSlotName)) {
-        // z3Slot.setUnknownUnits(Boolean.parseBoolean(value));
-        // } else if (component.contentEquals(UnitsGJEEncoderUtils.ubSlotName))
-        // {
-        // z3Slot.setUnitsBottom(Boolean.parseBoolean(value));
-        // } else if
-        // (component.contentEquals(UnitsGJEEncoderUtils.prefixSlotName)) {
-        // z3Slot.setPrefixExponent(Integer.parseInt(value));
-        // } else {
-        // // assumes it is a base unit exponent
-        // z3Slot.setExponent(component, Integer.parseInt(value));
-        // }
-        //
-        // // DEBUG:
-        // // System.err.println(" " + varName + " => " + value);
-        // // 10-s => -3
-        // // 10-m => 1
-        // // 10-Prefix => 0
-        // // 10-UnitsBottom => false
-        // // 10-UnknownUnits => true
-        // // 10 : UU = true UB = false p = 0 m = 1 s = -3
-        // }
-        //
-        // for (Integer slotID : solutionSlots.keySet()) {
-        // result.put(slotID, decodeSolution(solutionSlots.get(slotID),
-        // processingEnv));
-        // }
-
+        List<String> dimensions = GJEEquationSet.getDimensions();
+        for (int gjeID = 0; gjeID < numOfGJEVariables; gjeID++) {
+            TypecheckUnit unit = new TypecheckUnit();
+            unit.setPrefixExponent(valueOf(solutions, 0, gjeID));
+            for (int d = 1; d < dimensions.size(); d++) {
+                unit.setExponent(dimensions.get(d), valueOf(solutions, d, gjeID));
+            }
+            result.put(gjeSlots[gjeID].getId(), decodeSolution(unit, processingEnv));
+        }
         return result;
     }
 
+    private static int valueOf(int[][] solutions, int dimension, int gjeID) {
+        return solutions[dimension] == null ? 0 : solutions[dimension][gjeID];
+    }
+
+    /** Decodes the value of a constant slot, given to the slots merged into the constant. */
+    public AnnotationMirror decodeConstantSlot(
+            ConstantSlot slot, ProcessingEnvironment processingEnv) {
+        GJEInferenceUnit encodedSlot = serializeConstantSlot(slot);
+
+        TypecheckUnit unit = new TypecheckUnit();
+        unit.setUnknownUnits(encodedSlot.getUnknownUnits());
+        unit.setUnitsBottom(encodedSlot.getUnitsBottom());
+        unit.setPrefixExponent(encodedSlot.getPrefixExponent());
+        for (String baseUnit : unitsRepUtils.baseUnits()) {
+            unit.setExponent(baseUnit, encodedSlot.getExponent(baseUnit));
+        }
+
+        return decodeSolution(unit, processingEnv);
+    }
+
     // Convert a UnitsZ3EncodedSlot to an AnnotationMirror
     @Override
     public AnnotationMirror decodeSolution(
@@ -234,21 +256,6 @@ public class UnitsGJEFormatTranslator
         // annotations
         // TODO: infer original name somehow
 
-        AnnotationMirror solutionUnit =
-                unitsRepUtils.createInternalUnit(
-                        solutionSlot.isUnknownUnits(),
-                        solutionSlot.isUnitsBottom(),
-                        solutionSlot.getPrefixExponent(),
-                        solutionSlot.getExponents());
-
-        // Always return top and bottom based on the booleans, since the BU
-        // values can be arbitrary
-        if (solutionSlot.isUnknownUnits()) {
-            return unitsRepUtils.SURFACE_TOP;
-        } else if (solutionSlot.isUnitsBottom()) {
-            return unitsRepUtils.SURFACE_BOTTOM;
-        } else {
-            return unitsRepUtils.getSurfaceUnit(solutionUnit);
-        }
+        return unitsRepUtils.getSurfaceUnit(solutionSlot);
     }
 }
@@ -1,25 +1,34 @@
 package units.solvers.backend.gje;
 
+import backend.util.SlotEqualityClasses;
+import backend.util.SlotIndex;
+
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
 import checkers.inference.model.serialization.ToStringSerializer;
 import checkers.inference.solver.backend.Solver;
 import checkers.inference.solver.frontend.Lattice;
 import checkers.inference.solver.util.FileUtils;
+import checkers.inference.solver.util.SolverArg;
 import checkers.inference.solver.util.SolverEnvironment;
 import checkers.inference.solver.util.Statistics;
 
 import org.checkerframework.javacutil.BugInCF;
 
+import units.solvers.backend.gje.representation.GJEEquation;
 import units.solvers.backend.gje.representation.GJEEquationSet;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -32,9 +41,14 @@ import javax.lang.model.element.AnnotationMirror;
 // GaussJordanElimination solver
 public class UnitsGJESolver extends Solver<UnitsGJEFormatTranslator> {
 
+    public enum GJESolverEngineArg implements SolverArg {
+        /** option to also write the equations of each dimension to a .gje file */
+        gjeExportFiles
+    }
+
     protected final Logger logger = Logger.getLogger(UnitsGJESolver.class.getName());
 
-    // file is written at projectRootFolder/gjeConstraints_<dimension>.gje
+    // files are exported to projectRootFolder/gjeConstraints_<dimension>.gje
     protected static final Path pathToProject = Paths.get(System.getProperty("user.dir"));
     protected static final Path constraintsFilePrefix =
             Paths.get(pathToProject.toString(), "gjeConstraints");
@@ -49,6 +63,20 @@ public class UnitsGJESolver extends Solver<UnitsGJEFormatTranslator> {
     // number of GJE variables
     protected int numOfGJEVariables;
 
+    // slots forced to be equal are merged before encoding, see SlotEqualityClasses
+    protected SlotEqualityClasses slotEqualityClasses;
+
+    // the encoded equations of every dimension
+    protected GJEEquationSet totalEquationSet;
+    // the encoded constraints, and the index of the first constraint encoded as each equation of
+    // each dimension, indexed by dimension, for explaining unsat results
+    protected List<Constraint> encodedConstraints;
+    protected List<Map<GJEEquation, Integer>> equationSources;
+    // the dimension found inconsistent and the equations it was found inconsistent from, null if
+    // no dimension is inconsistent
+    protected int unsatDimension;
+    protected List<GJEEquation> unsatEquations;
+
     public UnitsGJESolver(
             SolverEnvironment solverEnvironment,
             Collection<Slot> slots,
@@ -64,12 +92,22 @@ public class UnitsGJESolver extends Solver<UnitsGJEFormatTranslator> {
         Map<Integer, AnnotationMirror> result;
 
         serializationStart = System.currentTimeMillis();
-        numOfGJEVariables = formatTranslator.assignGJEVarIDs(constraints);
+        SlotIndex slotIndex = SlotIndex.build(slots, constraints);
+        slotEqualityClasses =
+                SlotEqualityClasses.compute(
+                        slotIndex, constraints, formatTranslator.createEqualityExtractor());
+        formatTranslator.setSlotEqualityClasses(slotEqualityClasses);
+        Statistics.addOrIncrementEntry(
+                "gje_presolve_merged_slots", slotEqualityClasses.getNumberOfMergedSlots());
+        Statistics.addOrIncrementEntry(
+                "gje_presolve_eliminated_constraints",
+                slotEqualityClasses.getNumberOfEliminatedConstraints());
+        numOfGJEVariables = formatTranslator.assignGJEVarIDs(slotIndex, constraints);
         encodeAllConstraints();
         serializationEnd = System.currentTimeMillis();
 
         solvingStart = System.currentTimeMillis();
-        List<String> results = runSolver();
+        int[][] results = runSolver();
         solvingEnd = System.currentTimeMillis();
 
         long serializationTime = serializationEnd - serializationStart;
@@ -81,9 +119,22 @@ public class UnitsGJESolver extends Solver<UnitsGJEFormatTranslator> {
             result =
                     formatTranslator.decodeSolution(
                             results, solverEnvironment.processingEnvironment);
-        } else {
+            slotEqualityClasses.expandSolution(
+                    result,
+                    constant ->
+                            formatTranslator.decodeConstantSlot(
+                                    constant, solverEnvironment.processingEnvironment));
+        } else if (unsatEquations != null) {
             System.err.println("\n\n!!! The set of constraints is unsatisfiable! !!!");
             result = null;
+        } else {
+            // the equations are consistent, but may still have an integral solution which the
+            // search of GaussJordanElimination did not find, so they are not reported unsat
+            Statistics.addOrIncrementEntry("gje_no_integral_solution_found", 1);
+            System.err.println(
+                    "\n\n!!! No integral solution was found for the consistent set of"
+                            + " constraints !!!");
+            result = null;
         }
 
         return result;
@@ -94,9 +145,18 @@ public class UnitsGJESolver extends Solver<UnitsGJEFormatTranslator> {
 
         final ToStringSerializer toStringSerializer = new ToStringSerializer(false);
 
-        GJEEquationSet totalEquationSet = new GJEEquationSet();
+        totalEquationSet = new GJEEquationSet();
+        encodedConstraints = new ArrayList<>();
+        equationSources = new ArrayList<>();
+        for (int d = 0; d < totalEquationSet.getNumberOfDimensions(); d++) {
+            equationSources.add(new HashMap<>());
+        }
 
         for (Constraint constraint : constraints) {
+            if (slotEqualityClasses.isEliminated(constraint)) {
+                // already captured by the merged slots
+                continue;
+            }
 
             // System.err.println("Serializing " +
             // constraint.serialize(toStringSerializer));
@@ -116,6 +176,12 @@ public class UnitsGJESolver extends Solver<UnitsGJEFormatTranslator> {
                                 + " is contradictory");
             } else if (!serializedConstraint.isEmpty()) {
                 totalEquationSet.union(serializedConstraint);
+                for (int d = 0; d < serializedConstraint.getNumberOfDimensions(); d++) {
+                    for (GJEEquation equation : serializedConstraint.getEquations(d)) {
+                        equationSources.get(d).putIfAbsent(equation, encodedConstraints.size());
+                    }
+                }
+                encodedConstraints.add(constraint);
             }
 
             // System.err.println(serializedConstraint.toString());
@@ -124,14 +190,19 @@ public class UnitsGJESolver extends Solver<UnitsGJEFormatTranslator> {
         // System.err.println("Total equation set:");
         // System.err.println(totalEquationSet);
 
-        // serialize into files
-        writeGJEFiles(totalEquationSet.getEquationSet());
+        if (solverEnvironment.getBoolArg(GJESolverEngineArg.gjeExportFiles)) {
+            writeGJEFiles();
+        }
     }
 
-    private void writeGJEFiles(Map<String, Set<String>> eqSet) {
-        for (Entry<String, Set<String>> entry : eqSet.entrySet()) {
-            String dimension = entry.getKey();
-            Set<String> equations = entry.getValue();
+    private void writeGJEFiles() {
+        List<String> dimensions = GJEEquationSet.getDimensions();
+        for (int d = 0; d < dimensions.size(); d++) {
+            String dimension = dimensions.get(d);
+            Set<GJEEquation> equations = totalEquationSet.getEquations(d);
+            if (equations.isEmpty()) {
+                continue;
+            }
 
             String fileName =
                     constraintsFilePrefix.toString() + "_" + dimension + constraintsFileExtension;
@@ -149,7 +220,7 @@ public class UnitsGJESolver extends Solver<UnitsGJEFormatTranslator> {
         }
     }
 
-    private String generateGJEFileContent(Set<String> equations) {
+    private String generateGJEFileContent(Set<GJEEquation> equations) {
         StringBuffer sb = new StringBuffer();
         // # of variables
         sb.append(numOfGJEVariables);
@@ -158,31 +229,227 @@ public class UnitsGJESolver extends Solver<UnitsGJEFormatTranslator> {
         sb.append(equations.size());
         sb.append(System.lineSeparator());
         // sort and write each equation out
-        sb.append(String.join(System.lineSeparator(), new TreeSet<>(equations)));
+        Set<String> lines = new TreeSet<>();
+        for (GJEEquation equation : equations) {
+            lines.add(equation.toString());
+        }
+        sb.append(String.join(System.lineSeparator(), lines));
         return sb.toString();
     }
 
-    private List<String> runSolver() {
-        // TODO
-        return null;
+    // Solves the equations of each dimension, and returns the values of the GJE variables in each
+    // dimension, indexed by dimension, null for dimensions without equations. Returns null if the
+    // equations of a dimension are inconsistent or the solution with the free variables set to 0
+    // is not integral.
+    private int[][] runSolver() {
+        unsatEquations = null;
+        List<String> dimensions = GJEEquationSet.getDimensions();
+        List<Integer> activeDimensions = new ArrayList<>();
+        for (int d = 0; d < dimensions.size(); d++) {
+            if (!totalEquationSet.getEquations(d).isEmpty()) {
+                activeDimensions.add(d);
+            }
+        }
+        int[][] solutions = new int[dimensions.size()][];
+        if (activeDimensions.isEmpty()) {
+            return solutions;
+        }
+
+        Map<GJEEquation, long[]> sharedRows = shareCoefficientMatrix(activeDimensions);
+        if (sharedRows != null) {
+            Statistics.addOrIncrementEntry("gje_shared_coefficient_matrix", 1);
+            return solveShared(activeDimensions, sharedRows, solutions);
+        }
+        return solveDimensionsSeparately(activeDimensions, solutions);
+    }
+
+    // The encoders emit the same terms in every dimension, only the right hand sides of constants
+    // differ. Groups the equations by their terms, and returns the right hand side of each of the
+    // given dimensions for each terms. Returns null if the dimensions do not share their
+    // coefficient matrix: when some terms are missing from a dimension, or have two right hand
+    // sides in a dimension, which is inconsistent.
+    private Map<GJEEquation, long[]> shareCoefficientMatrix(List<Integer> dimensions) {
+        int numOfDimensions = dimensions.size();
+        // the right hand sides of each terms, followed by the number of dimensions filled in
+        Map<GJEEquation, long[]> rows = new LinkedHashMap<>();
+        for (int i = 0; i < numOfDimensions; i++) {
+            Set<GJEEquation> equations = totalEquationSet.getEquations(dimensions.get(i));
+            if (i > 0 && equations.size() != rows.size()) {
+                return null;
+            }
+            for (GJEEquation equation : equations) {
+                GJEEquation terms = equation.withRhs(0);
+                long[] rightHandSides = rows.get(terms);
+                if (rightHandSides == null) {
+                    if (i > 0) {
+                        return null;
+                    }
+                    rightHandSides = new long[numOfDimensions + 1];
+                    rows.put(terms, rightHandSides);
+                }
+                if (rightHandSides[numOfDimensions] != i) {
+                    return null;
+                }
+                rightHandSides[i] = equation.getRhs();
+                rightHandSides[numOfDimensions] = i + 1;
+            }
+        }
+        return rows;
+    }
+
+    // Eliminates once over the shared coefficient matrix, with one right hand side per dimension
+    private int[][] solveShared(
+            List<Integer> dimensions, Map<GJEEquation, long[]> rows, int[][] solutions) {
+        GaussJordanElimination gje =
+                new GaussJordanElimination(numOfGJEVariables, dimensions.size());
+        List<Entry<GJEEquation, long[]>> rowList = new ArrayList<>(rows.entrySet());
+        for (Entry<GJEEquation, long[]> row : rowList) {
+            gje.addEquation(row.getKey(), Arrays.copyOf(row.getValue(), dimensions.size()));
+        }
+        Statistics.addOrIncrementEntry("gje_pivots", gje.getNumberOfPivots());
+        Statistics.addOrIncrementEntry("gje_biginteger_steps", gje.getNumberOfBigIntegerSteps());
+
+        // an inconsistent dimension is looked for even after a dimension without a solution
+        boolean solved = true;
+        for (int i = 0; i < dimensions.size(); i++) {
+            int[] solution = solutionOf(gje, i, dimensions.get(i));
+            if (solution == null) {
+                solved = false;
+                if (!gje.isConsistent(i)) {
+                    unsatDimension = dimensions.get(i);
+                    unsatEquations = new ArrayList<>();
+                    BitSet rowIndices = gje.getInconsistentEquations(i);
+                    for (int row = rowIndices.nextSetBit(0);
+                            row >= 0;
+                            row = rowIndices.nextSetBit(row + 1)) {
+                        Entry<GJEEquation, long[]> entry = rowList.get(row);
+                        unsatEquations.add(entry.getKey().withRhs(entry.getValue()[i]));
+                    }
+                    return null;
+                }
+                continue;
+            }
+            solutions[dimensions.get(i)] = solution;
+        }
+        return solved ? solutions : null;
     }
 
-    // outputs
-    private void parseStdOut(BufferedReader stdOut, List<String> results) {
-        String line = "";
+    // Solves the dimensions one by one when they do not share their coefficient matrix. As the
+    // encoders emit the same terms in every dimension, this happens when some terms have two
+    // right hand sides in a dimension, which is inconsistent, so it is not worth parallelizing
+    private int[][] solveDimensionsSeparately(List<Integer> dimensions, int[][] solutions) {
+        boolean solved = true;
+        for (int dimension : dimensions) {
+            GaussJordanElimination gje = eliminate(totalEquationSet.getEquations(dimension));
+            Statistics.addOrIncrementEntry("gje_pivots", gje.getNumberOfPivots());
+            Statistics.addOrIncrementEntry(
+                    "gje_biginteger_steps", gje.getNumberOfBigIntegerSteps());
+
+            int[] solution = solutionOf(gje, 0, dimension);
+            if (solution == null) {
+                solved = false;
+                if (!gje.isConsistent()) {
+                    unsatDimension = dimension;
+                    List<GJEEquation> equations =
+                            new ArrayList<>(totalEquationSet.getEquations(dimension));
+                    unsatEquations = new ArrayList<>();
+                    BitSet indices = gje.getInconsistentEquations(0);
+                    for (int index = indices.nextSetBit(0);
+                            index >= 0;
+                            index = indices.nextSetBit(index + 1)) {
+                        unsatEquations.add(equations.get(index));
+                    }
+                    return null;
+                }
+                continue;
+            }
+            solutions[dimension] = solution;
+        }
+        return solved ? solutions : null;
+    }
 
-        try {
-            while ((line = stdOut.readLine()) != null) {}
+    // Reduces the equations of one dimension, up to the first inconsistent equation
+    private GaussJordanElimination eliminate(Set<GJEEquation> equations) {
+        GaussJordanElimination gje = new GaussJordanElimination(numOfGJEVariables);
+        for (GJEEquation equation : equations) {
+            if (!gje.addEquation(equation)) {
+                break;
+            }
+        }
+        return gje;
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Returns the solution of the system of the given right hand side, or null after reporting
+    // why it has none
+    private static int[] solutionOf(GaussJordanElimination gje, int rhsIndex, int dimension) {
+        String dimensionName = GJEEquationSet.getDimensions().get(dimension);
+        if (!gje.isConsistent(rhsIndex)) {
+            System.err.println(
+                    "The GJE equations of dimension " + dimensionName + " are inconsistent");
+            return null;
+        }
+        int[] solution = gje.getSolution(rhsIndex);
+        if (solution == null) {
+            System.err.println(
+                    "The GJE equations of dimension "
+                            + dimensionName
+                            + " are consistent, but no integral solution was found");
         }
+        return solution;
     }
 
     @Override
     public Collection<Constraint> explainUnsatisfiable() {
-        // TODO
-        List<Constraint> unsatConstraints = new ArrayList<>();
+        if (unsatEquations == null) {
+            // the equations are consistent, there is no inconsistency to explain
+            return Collections.emptyList();
+        }
+
+        // the constraints encoded as the equations the inconsistency was derived from
+        Set<Constraint> derivedFrom = new LinkedHashSet<>();
+        for (GJEEquation equation : unsatEquations) {
+            derivedFrom.add(
+                    encodedConstraints.get(equationSources.get(unsatDimension).get(equation)));
+        }
+        List<Constraint> explanation = minimize(new ArrayList<>(derivedFrom), unsatDimension);
+
+        Set<Constraint> unsatConstraints = new LinkedHashSet<>(explanation);
+        for (Constraint constraint : explanation) {
+            // the equalities merged away by the presolve are part of the explanation
+            unsatConstraints.addAll(slotEqualityClasses.explain(constraint));
+        }
         return unsatConstraints;
     }
+
+    // Greedily drops each constraint whose equations in the dimension are not needed for the
+    // others to be inconsistent, leaving a minimal inconsistent subset
+    private List<Constraint> minimize(List<Constraint> constraints, int dimension) {
+        Map<Constraint, Set<GJEEquation>> equations = new HashMap<>();
+        for (Constraint constraint : constraints) {
+            GJEEquationSet serializedConstraint = constraint.serialize(formatTranslator);
+            equations.put(constraint, serializedConstraint.getEquations(dimension));
+        }
+
+        List<Constraint> explanation = new ArrayList<>(constraints);
+        for (int i = explanation.size() - 1; i >= 0; i--) {
+            Constraint removed = explanation.remove(i);
+            if (!isInconsistent(explanation, equations)) {
+                explanation.add(i, removed);
+            }
+        }
+        return explanation;
+    }
+
+    private boolean isInconsistent(
+            List<Constraint> constraints, Map<Constraint, Set<GJEEquation>> equations) {
+        GaussJordanElimination gje = new GaussJordanElimination(numOfGJEVariables);
+        for (Constraint constraint : constraints) {
+            for (GJEEquation equation : equations.get(constraint)) {
+                if (!gje.addEquation(equation)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 }
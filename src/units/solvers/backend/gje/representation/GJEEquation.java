@@ -0,0 +1,148 @@
+package units.solvers.backend.gje.representation;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import java.util.Arrays;
+
+/**
+ * An immutable sparse linear equation sum(coefficients[i] * x_variables[i]) = rhs over GJE
+ * variables, with the variables in increasing order and no zero coefficients. Equations are
+ * compared structurally, so that sets of equations deduplicate them without any text encoding.
+ *
+ * <p>The text format of the .gje files, "n c_1 x_1 ... c_n x_n rhs", is produced by {@link
+ * #toString()} and read by {@link #parse(String)}.
+ */
+public final class GJEEquation {
+
+    private final int[] variables;
+    private final long[] coefficients;
+    private final long rhs;
+    // structural hash of the variables and coefficients, the rhs is mixed in by hashCode()
+    private final int termsHashCode;
+
+    private GJEEquation(int[] variables, long[] coefficients, long rhs, int termsHashCode) {
+        this.variables = variables;
+        this.coefficients = coefficients;
+        this.rhs = rhs;
+        this.termsHashCode = termsHashCode;
+    }
+
+    /**
+     * Returns the equation sum(coefficients[i] * x_variables[i]) = rhs, summing the coefficients of
+     * repeated variables and dropping zero coefficients. The given arrays are not kept.
+     */
+    public static GJEEquation of(int[] variables, long[] coefficients, long rhs) {
+        if (variables.length != coefficients.length) {
+            throw new BugInCF("Mismatched variables and coefficients of a GJE equation");
+        }
+        int[] sortedVariables = new int[variables.length];
+        long[] sortedCoefficients = new long[variables.length];
+        int size = 0;
+        for (int term = 0; term < variables.length; term++) {
+            int index = Arrays.binarySearch(sortedVariables, 0, size, variables[term]);
+            if (index >= 0) {
+                sortedCoefficients[index] += coefficients[term];
+                continue;
+            }
+            index = -index - 1;
+            System.arraycopy(sortedVariables, index, sortedVariables, index + 1, size - index);
+            System.arraycopy(
+                    sortedCoefficients, index, sortedCoefficients, index + 1, size - index);
+            sortedVariables[index] = variables[term];
+            sortedCoefficients[index] = coefficients[term];
+            size++;
+        }
+
+        int nonZero = 0;
+        for (int i = 0; i < size; i++) {
+            if (sortedCoefficients[i] != 0) {
+                sortedVariables[nonZero] = sortedVariables[i];
+                sortedCoefficients[nonZero++] = sortedCoefficients[i];
+            }
+        }
+        int[] finalVariables = Arrays.copyOf(sortedVariables, nonZero);
+        long[] finalCoefficients = Arrays.copyOf(sortedCoefficients, nonZero);
+        return new GJEEquation(
+                finalVariables,
+                finalCoefficients,
+                rhs,
+                31 * Arrays.hashCode(finalVariables) + Arrays.hashCode(finalCoefficients));
+    }
+
+    /** Parses an equation in the text format of the .gje files. */
+    public static GJEEquation parse(String equation) {
+        String[] tokens = equation.trim().split("\\s+");
+        int numOfTerms = Integer.parseInt(tokens[0]);
+        if (tokens.length != 2 * numOfTerms + 2) {
+            throw new BugInCF("Malformed GJE equation: " + equation);
+        }
+        int[] variables = new int[numOfTerms];
+        long[] coefficients = new long[numOfTerms];
+        for (int term = 0; term < numOfTerms; term++) {
+            coefficients[term] = Long.parseLong(tokens[1 + 2 * term]);
+            variables[term] = Integer.parseInt(tokens[2 + 2 * term]);
+        }
+        return of(variables, coefficients, Long.parseLong(tokens[tokens.length - 1]));
+    }
+
+    /** Returns the equation with the same terms and the given right hand side. */
+    public GJEEquation withRhs(long rhs) {
+        if (rhs == this.rhs) {
+            return this;
+        }
+        return new GJEEquation(variables, coefficients, rhs, termsHashCode);
+    }
+
+    public int size() {
+        return variables.length;
+    }
+
+    public boolean isEmpty() {
+        return variables.length == 0;
+    }
+
+    public int getVariable(int term) {
+        return variables[term];
+    }
+
+    public long getCoefficient(int term) {
+        return coefficients[term];
+    }
+
+    public long getRhs() {
+        return rhs;
+    }
+
+    /** Returns whether the equations have the same variables and coefficients. */
+    public boolean hasSameTerms(GJEEquation other) {
+        return termsHashCode == other.termsHashCode
+                && Arrays.equals(variables, other.variables)
+                && Arrays.equals(coefficients, other.coefficients);
+    }
+
+    // Example format: 2 1 IDv1 -1 IDv2 0
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(variables.length);
+        for (int term = 0; term < variables.length; term++) {
+            sb.append(' ').append(coefficients[term]).append(' ').append(variables[term]);
+        }
+        sb.append(' ').append(rhs);
+        return sb.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * termsHashCode + Long.hashCode(rhs);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        GJEEquation other = (GJEEquation) obj;
+        return rhs == other.rhs && hasSameTerms(other);
+    }
+}
@@ -1,13 +1,11 @@
 package units.solvers.backend.gje.representation;
 
-import org.checkerframework.javacutil.BugInCF;
-
 import units.representation.UnitsRepresentationUtils;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -20,8 +18,9 @@ public class GJEEquationSet {
     // TODO: set this too by adding incompatible equations??
     private boolean isContradiction;
 
-    // Map<Dimension, Set<Equation>>
-    private final Map<String, Set<String>> eqSet = new HashMap<>();
+    // the equations of each dimension, indexed by dimension, see getDimensions(); null for
+    // dimensions without equations
+    private final List<Set<GJEEquation>> eqSet;
 
     public GJEEquationSet() {
         this(false);
@@ -29,45 +28,66 @@ public class GJEEquationSet {
 
     public GJEEquationSet(boolean isContradiction) {
         this.isContradiction = isContradiction;
+        int numOfDimensions = 1 + UnitsRepresentationUtils.getInstance().baseUnits().size();
+        eqSet = new ArrayList<>(numOfDimensions);
+        for (int dimension = 0; dimension < numOfDimensions; dimension++) {
+            eqSet.add(null);
+        }
+    }
+
+    /**
+     * Returns the names of the dimensions, whose positions are the dimension indices: the prefix
+     * exponent, followed by the base units.
+     */
+    public static List<String> getDimensions() {
+        List<String> dimensions = new ArrayList<>();
+        dimensions.add(prefixExponentKey);
+        dimensions.addAll(UnitsRepresentationUtils.getInstance().baseUnits());
+        return dimensions;
     }
 
-    public Map<String, Set<String>> getEquationSet() {
-        return eqSet;
+    /** Returns the equations of the given dimension. */
+    public Set<GJEEquation> getEquations(int dimension) {
+        Set<GJEEquation> equations = eqSet.get(dimension);
+        return equations == null ? Collections.emptySet() : equations;
+    }
+
+    public int getNumberOfDimensions() {
+        return eqSet.size();
     }
 
     public boolean isEmpty() {
-        return eqSet.isEmpty();
+        for (Set<GJEEquation> equations : eqSet) {
+            if (equations != null) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public boolean isContradiction() {
         return isContradiction;
     }
 
-    public void addEquation(String key, String equation) {
-        if (!(key == prefixExponentKey
-                || UnitsRepresentationUtils.getInstance().baseUnits().contains(key))) {
-            throw new BugInCF("Trying to add an equation for unsupported key " + key);
-        }
-
-        if (!eqSet.containsKey(key)) {
-            eqSet.put(key, new HashSet<>());
+    public void addEquation(int dimension, GJEEquation equation) {
+        if (eqSet.get(dimension) == null) {
+            eqSet.set(dimension, new LinkedHashSet<>());
         }
-
-        eqSet.get(key).add(equation);
+        eqSet.get(dimension).add(equation);
     }
 
     public void union(GJEEquationSet otherSet) {
         isContradiction = isContradiction || otherSet.isContradiction;
 
-        for (Entry<String, Set<String>> otherEntry : otherSet.eqSet.entrySet()) {
-            String key = otherEntry.getKey();
-            if (!eqSet.containsKey(key)) {
-                eqSet.put(key, new HashSet<>());
+        for (int dimension = 0; dimension < eqSet.size(); dimension++) {
+            Set<GJEEquation> otherEquations = otherSet.eqSet.get(dimension);
+            if (otherEquations == null) {
+                continue;
             }
-            Set<String> myEquations = eqSet.get(key);
-            for (String equation : otherEntry.getValue()) {
-                myEquations.add(equation);
+            if (eqSet.get(dimension) == null) {
+                eqSet.set(dimension, new LinkedHashSet<>());
             }
+            eqSet.get(dimension).addAll(otherEquations);
         }
     }
 
@@ -76,11 +96,9 @@ public class GJEEquationSet {
 
     // Example format:
     // [
-    //  s -> [2 1 2 -1 3 0]
     //  prefixExponent -> [2 1 2 -1 3 0]
-    //  rad -> [2 1 2 -1 3 0]
-    //  deg -> [2 1 2 -1 3 0]
     //  m -> [2 1 2 -1 3 0]
+    //  s -> [2 1 2 -1 3 0]
     // ]
     @Override
     public String toString() {
@@ -89,9 +107,18 @@ public class GJEEquationSet {
         if (isContradiction) {
             sb.append("contradiction");
         } else {
-            for (String key : eqSet.keySet()) {
-                sb.append(" " + key + " -> [");
-                sb.append(String.join(", ", eqSet.get(key)));
+            List<String> dimensions = getDimensions();
+            for (int dimension = 0; dimension < eqSet.size(); dimension++) {
+                Set<GJEEquation> equations = eqSet.get(dimension);
+                if (equations == null) {
+                    continue;
+                }
+                sb.append(" " + dimensions.get(dimension) + " -> [");
+                List<String> equationStrings = new ArrayList<>();
+                for (GJEEquation equation : equations) {
+                    equationStrings.add(equation.toString());
+                }
+                sb.append(String.join(", ", equationStrings));
                 sb.append("]" + System.lineSeparator());
             }
         }
@@ -0,0 +1,39 @@
+package units.solvers.backend.hybrid;
+
+import backend.hybrid.HybridSolver;
+import backend.z3smt.Z3SmtFormatTranslator;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.solver.backend.AbstractSolverFactory;
+import checkers.inference.solver.backend.Solver;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.SolverEnvironment;
+
+import units.representation.TypecheckUnit;
+import units.solvers.backend.z3smt.UnitsZ3SmtFormatTranslator;
+import units.solvers.backend.z3smt.representation.Z3InferenceUnit;
+
+import java.util.Collection;
+
+public class UnitsHybridSolverFactory
+        extends AbstractSolverFactory<Z3SmtFormatTranslator<Z3InferenceUnit, TypecheckUnit>> {
+
+    @Override
+    public Solver<?> createSolver(
+            SolverEnvironment solverEnvironment,
+            Collection<Slot> slots,
+            Collection<Constraint> constraints,
+            Lattice lattice) {
+        Z3SmtFormatTranslator<Z3InferenceUnit, TypecheckUnit> formatTranslator =
+                createFormatTranslator(lattice);
+        return new HybridSolver<Z3InferenceUnit, TypecheckUnit>(
+                solverEnvironment, slots, constraints, formatTranslator, lattice);
+    }
+
+    @Override
+    protected Z3SmtFormatTranslator<Z3InferenceUnit, TypecheckUnit> createFormatTranslator(
+            Lattice lattice) {
+        return new UnitsZ3SmtFormatTranslator(lattice);
+    }
+}
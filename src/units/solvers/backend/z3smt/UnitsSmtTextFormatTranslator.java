@@ -0,0 +1,154 @@
+package units.solvers.backend.z3smt;
+
+import backend.z3smt.SmtText;
+import backend.z3smt.SmtTextFormatTranslator;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.ConstraintEncoderFactory;
+import checkers.inference.solver.frontend.Lattice;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+
+import units.representation.TypecheckUnit;
+import units.representation.UnitsRepresentationUtils;
+import units.solvers.backend.z3smt.encoder.UnitsSmtTextConstraintEncoderFactory;
+import units.solvers.backend.z3smt.encoder.UnitsSmtTextEncoderUtils;
+import units.solvers.backend.z3smt.representation.SmtTextInferenceUnit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+/**
+ * Text counterpart of {@link UnitsZ3SmtFormatTranslator}, which writes the same encodings as
+ * SMT-LIB text. Solutions are decoded by the given {@link UnitsZ3SmtFormatTranslator}.
+ */
+public class UnitsSmtTextFormatTranslator
+        extends SmtTextFormatTranslator<SmtTextInferenceUnit, TypecheckUnit> {
+
+    // static reference to the singleton instance
+    protected static UnitsRepresentationUtils unitsRepUtils;
+
+    private final UnitsZ3SmtFormatTranslator solutionTranslator;
+
+    public UnitsSmtTextFormatTranslator(
+            Lattice lattice, UnitsZ3SmtFormatTranslator solutionTranslator) {
+        super(lattice);
+        unitsRepUtils = UnitsRepresentationUtils.getInstance();
+        this.solutionTranslator = solutionTranslator;
+        finishInitializingEncoders();
+    }
+
+    @Override
+    protected ConstraintEncoderFactory<SmtText> createConstraintEncoderFactory() {
+        return new UnitsSmtTextConstraintEncoderFactory(lattice, this);
+    }
+
+    @Override
+    public String generateZ3SlotDeclaration(VariableSlot slot) {
+        SmtTextInferenceUnit encodedSlot = serializeVarSlot(slot);
+
+        List<String> slotDeclaration = new ArrayList<>();
+
+        // (declare-fun |5-TOP| () Bool)
+        slotDeclaration.add("(declare-fun " + encodedSlot.getUnknownUnits() + " () Bool)");
+        slotDeclaration.add("(declare-fun " + encodedSlot.getUnitsBottom() + " () Bool)");
+
+        // the exponents of inactive dimensions are 0 rather than variables
+        if (unitsRepUtils.serializePrefix() && encodedSlot.getPrefixExponent().isConst()) {
+            slotDeclaration.add("(declare-fun " + encodedSlot.getPrefixExponent() + " () Int)");
+        }
+        for (String baseUnit : unitsRepUtils.serializableBaseUnits()) {
+            if (encodedSlot.getExponent(baseUnit).isConst()) {
+                slotDeclaration.add(
+                        "(declare-fun " + encodedSlot.getExponent(baseUnit) + " () Int)");
+            }
+        }
+
+        return String.join(System.lineSeparator(), slotDeclaration);
+    }
+
+    @Override
+    protected SmtTextInferenceUnit serializeVarSlot(VariableSlot slot) {
+        int slotID = slot.getId();
+
+        if (serializedSlots.containsKey(slotID)) {
+            return serializedSlots.get(slotID);
+        }
+
+        SmtTextInferenceUnit encodedSlot =
+                SmtTextInferenceUnit.makeVariableSlot(
+                        slotID, solutionTranslator.getActiveDimensions());
+
+        serializedSlots.put(slotID, encodedSlot);
+        return encodedSlot;
+    }
+
+    @Override
+    protected SmtTextInferenceUnit serializeConstantSlot(ConstantSlot slot) {
+        int slotID = slot.getId();
+
+        if (serializedSlots.containsKey(slotID)) {
+            return serializedSlots.get(slotID);
+        }
+
+        AnnotationMirror anno = slot.getValue();
+
+        // Temp Hack: forcefully encode constant slot for poly qualifiers as
+        // unknownunits
+        if (AnnotationUtils.areSame(anno, unitsRepUtils.POLYUNIT)) {
+            anno = unitsRepUtils.TOP;
+        }
+
+        // if for some reason a raw internal appears, then treat it as dimensionless
+        if (AnnotationUtils.areSame(anno, unitsRepUtils.RAWUNITSREP)) {
+            anno = unitsRepUtils.DIMENSIONLESS;
+        }
+
+        SmtTextInferenceUnit encodedSlot =
+                SmtTextInferenceUnit.makeConstantSlot(
+                        slotID, unitsRepUtils.createTypecheckUnit(anno));
+
+        serializedSlots.put(slotID, encodedSlot);
+        return encodedSlot;
+    }
+
+    @Override
+    public SmtText encodeSlotWellformnessConstraint(VariableSlot slot) {
+        if (slot instanceof ConstantSlot) {
+            ConstantSlot cs = (ConstantSlot) slot;
+            AnnotationMirror anno = cs.getValue();
+            // encode PolyUnit as constant trues
+            if (AnnotationUtils.areSame(anno, unitsRepUtils.POLYUNIT)) {
+                return SmtText.TRUE;
+            }
+        }
+
+        SmtTextInferenceUnit serializedSlot = slot.serialize(this);
+        return UnitsSmtTextEncoderUtils.slotWellformedness(serializedSlot);
+    }
+
+    @Override
+    public SmtText encodeSlotPreferenceConstraint(VariableSlot slot) {
+        if (slot instanceof ConstantSlot) {
+            ConstantSlot cs = (ConstantSlot) slot;
+            AnnotationMirror anno = cs.getValue();
+            // encode PolyUnit as constant trues
+            if (AnnotationUtils.areSame(anno, unitsRepUtils.POLYUNIT)) {
+                return SmtText.TRUE;
+            }
+        }
+
+        SmtTextInferenceUnit serializedSlot = slot.serialize(this);
+        return UnitsSmtTextEncoderUtils.slotPreference(serializedSlot);
+    }
+
+    @Override
+    public AnnotationMirror decodeSolution(
+            TypecheckUnit solutionSlot, ProcessingEnvironment processingEnv) {
+        return solutionTranslator.decodeSolution(solutionSlot, processingEnv);
+    }
+}
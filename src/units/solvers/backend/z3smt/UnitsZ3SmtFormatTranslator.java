@@ -1,23 +1,33 @@
 package units.solvers.backend.z3smt;
 
+import backend.util.SlotElimination;
+import backend.util.SlotEqualityClasses.EqualityExtractor;
+import backend.z3smt.Z3ModelValues;
 import backend.z3smt.Z3SmtFormatTranslator;
+import backend.z3smt.Z3SmtSolver;
 
 import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.solver.backend.encoder.ConstraintEncoderFactory;
 import checkers.inference.solver.frontend.Lattice;
 
 import com.microsoft.z3.BoolExpr;
-import com.microsoft.z3.IntExpr;
+import com.microsoft.z3.Expr;
+import com.microsoft.z3.FuncDecl;
+import com.microsoft.z3.Model;
 
 import org.checkerframework.javacutil.AnnotationUtils;
 import org.checkerframework.javacutil.Pair;
 
 import units.representation.TypecheckUnit;
 import units.representation.UnitsRepresentationUtils;
+import units.solvers.backend.UnitsActiveDimensions;
+import units.solvers.backend.UnitsEqualityExtractor;
 import units.solvers.backend.z3smt.encoder.UnitsZ3SmtConstraintEncoderFactory;
 import units.solvers.backend.z3smt.encoder.UnitsZ3SmtEncoderUtils;
+import units.solvers.backend.z3smt.representation.Z3ExponentSort;
 import units.solvers.backend.z3smt.representation.Z3InferenceUnit;
 
 import java.util.ArrayList;
@@ -34,12 +44,15 @@ import javax.lang.model.element.AnnotationMirror;
 public class UnitsZ3SmtFormatTranslator
         extends Z3SmtFormatTranslator<Z3InferenceUnit, TypecheckUnit> {
 
-    public static BoolExpr Z3TRUE;
-    public static BoolExpr Z3FALSE;
-
     // static reference to the singleton instance
     protected static UnitsRepresentationUtils unitsRepUtils;
 
+    // the sort of the exponents, integers or bit-vectors
+    protected Z3ExponentSort exponentSort;
+
+    // the dimensions in which the exponents of each slot can be nonzero
+    protected UnitsActiveDimensions activeDimensions = UnitsActiveDimensions.ALL;
+
     public UnitsZ3SmtFormatTranslator(Lattice lattice) {
         super(lattice);
         unitsRepUtils = UnitsRepresentationUtils.getInstance();
@@ -49,8 +62,15 @@ public class UnitsZ3SmtFormatTranslator
     protected void finishInitializingEncoders() {
         super.finishInitializingEncoders();
         // Context is now available
-        UnitsZ3SmtFormatTranslator.Z3TRUE = ctx.mkBool(true);
-        UnitsZ3SmtFormatTranslator.Z3FALSE = ctx.mkBool(false);
+        exponentSort = new Z3ExponentSort(ctx, bitVectorWidth);
+    }
+
+    @Override
+    public void releaseContext() {
+        super.releaseContext();
+        exponentSort = null;
+        // the active dimensions belong to the constraints of the solve which is over
+        activeDimensions = UnitsActiveDimensions.ALL;
     }
 
     @Override
@@ -67,11 +87,15 @@ public class UnitsZ3SmtFormatTranslator
         slotDeclaration.add(addZ3BoolDefinition(encodedSlot.getUnknownUnits()));
         slotDeclaration.add(addZ3BoolDefinition(encodedSlot.getUnitsBottom()));
 
-        if (unitsRepUtils.serializePrefix()) {
-            slotDeclaration.add(addZ3IntDefinition(encodedSlot.getPrefixExponent()));
+        // the exponents of inactive dimensions are 0 rather than variables
+        if (unitsRepUtils.serializePrefix()
+                && !exponentSort.isZero(encodedSlot.getPrefixExponent())) {
+            slotDeclaration.add(addZ3ExponentDefinition(encodedSlot.getPrefixExponent()));
         }
         for (String baseUnit : unitsRepUtils.serializableBaseUnits()) {
-            slotDeclaration.add(addZ3IntDefinition(encodedSlot.getExponent(baseUnit)));
+            if (!exponentSort.isZero(encodedSlot.getExponent(baseUnit))) {
+                slotDeclaration.add(addZ3ExponentDefinition(encodedSlot.getExponent(baseUnit)));
+            }
         }
 
         return String.join(System.lineSeparator(), slotDeclaration);
@@ -86,13 +110,17 @@ public class UnitsZ3SmtFormatTranslator
         return "(declare-fun " + z3BoolVariable.toString() + " () Bool)";
     }
 
-    private String addZ3IntDefinition(IntExpr z3IntVariable) {
+    private String addZ3ExponentDefinition(Expr z3ExponentVariable) {
         // gives the assigned variable name generated by
         // Z3InferenceUnit.makeVariableSlot(), eg |5-m|
-        // System.err.println(z3IntVariable.toString());
-
-        // (declare-fun |5-m| () Int)
-        return "(declare-fun " + z3IntVariable.toString() + " () Int)";
+        // System.err.println(z3ExponentVariable.toString());
+
+        // (declare-fun |5-m| () Int) or (declare-fun |5-m| () (_ BitVec 8))
+        return "(declare-fun "
+                + z3ExponentVariable.toString()
+                + " () "
+                + exponentSort.getSortName()
+                + ")";
     }
 
     @Override
@@ -103,7 +131,8 @@ public class UnitsZ3SmtFormatTranslator
             return serializedSlots.get(slotID);
         }
 
-        Z3InferenceUnit encodedSlot = Z3InferenceUnit.makeVariableSlot(ctx, slotID);
+        Z3InferenceUnit encodedSlot =
+                Z3InferenceUnit.makeVariableSlot(ctx, exponentSort, slotID, activeDimensions);
 
         serializedSlots.put(slotID, encodedSlot);
         return encodedSlot;
@@ -136,7 +165,7 @@ public class UnitsZ3SmtFormatTranslator
         TypecheckUnit unit = unitsRepUtils.createTypecheckUnit(anno);
 
         // Makes a constant encoded slot with default values
-        Z3InferenceUnit encodedSlot = Z3InferenceUnit.makeConstantSlot(ctx, slotID);
+        Z3InferenceUnit encodedSlot = Z3InferenceUnit.makeConstantSlot(ctx, exponentSort, slotID);
 
         // TODO: move this into makeConstantSlot()
         // Replace values in constant encoded slot with values in the annotation
@@ -155,6 +184,16 @@ public class UnitsZ3SmtFormatTranslator
         return encodedSlot;
     }
 
+    @Override
+    public EqualityExtractor createEqualityExtractor() {
+        return new UnitsEqualityExtractor(false, true);
+    }
+
+    @Override
+    public UnitsSmtTextFormatTranslator createTextFormatTranslator() {
+        return new UnitsSmtTextFormatTranslator(lattice, this);
+    }
+
     @Override
     public void preAnalyzeSlots(Collection<Slot> slots) {
         Set<ConstantSlot> constantSlots = new HashSet<>();
@@ -170,6 +209,16 @@ public class UnitsZ3SmtFormatTranslator
         // System.err.println("bu: " + unitsRepUtils.serializableBaseUnits().size());
     }
 
+    @Override
+    public void preAnalyzeConstraints(Collection<Slot> slots, Collection<Constraint> constraints) {
+        // recomputed for every solve, as the translator may outlive the constraints of one solve
+        activeDimensions = UnitsActiveDimensions.compute(slotIndex, constraints);
+    }
+
+    public UnitsActiveDimensions getActiveDimensions() {
+        return activeDimensions;
+    }
+
     @Override
     public BoolExpr encodeSlotWellformnessConstraint(VariableSlot slot) {
         if (slot instanceof ConstantSlot) {
@@ -200,59 +249,123 @@ public class UnitsZ3SmtFormatTranslator
         return UnitsZ3SmtEncoderUtils.slotPreference(ctx, serializedSlot);
     }
 
-    // Decode overall solutions from Z3
     @Override
-    public Map<Integer, AnnotationMirror> decodeSolution(
-            List<String> model, ProcessingEnvironment processingEnv) {
+    public List<String> getModelComponents() {
+        List<String> components = new ArrayList<>();
+        components.add(UnitsZ3SmtEncoderUtils.uuSlotName);
+        components.add(UnitsZ3SmtEncoderUtils.ubSlotName);
+        components.add(UnitsZ3SmtEncoderUtils.prefixSlotName);
+        components.addAll(unitsRepUtils.serializableBaseUnits());
+        return components;
+    }
 
+    @Override
+    public boolean isBooleanModelComponent(String component) {
+        return component.equals(UnitsZ3SmtEncoderUtils.uuSlotName)
+                || component.equals(UnitsZ3SmtEncoderUtils.ubSlotName);
+    }
+
+    // Decode overall solutions from Z3, the columns of the model are given by getModelComponents()
+    @Override
+    public Map<Integer, AnnotationMirror> decodeSolution(
+            Z3ModelValues model, ProcessingEnvironment processingEnv) {
+        List<String> components = model.getComponents();
         Map<Integer, AnnotationMirror> result = new HashMap<>();
+
+        for (int row = 0; row < model.getSlotCount(); row++) {
+            // Note: fresh TypecheckUnit has all exponents = 0 by default
+            // the exponents not encoded for z3 will simply be assumed to have a solution of
+            // 0, which is always true
+            TypecheckUnit z3Slot = new TypecheckUnit();
+            z3Slot.setUnknownUnits(model.getBool(row, 0));
+            z3Slot.setUnitsBottom(model.getBool(row, 1));
+            z3Slot.setPrefixExponent(model.getInt(row, 2));
+            for (int component = 3; component < components.size(); component++) {
+                if (model.isAssigned(row, component)) {
+                    z3Slot.setExponent(components.get(component), model.getInt(row, component));
+                }
+            }
+
+            result.put(model.getSlotID(row), decodeSolution(z3Slot, processingEnv));
+        }
+
+        return result;
+    }
+
+    @Override
+    public AnnotationMirror decodeConstantSlot(
+            ConstantSlot slot, ProcessingEnvironment processingEnv) {
+        Z3InferenceUnit encodedSlot = serializeConstantSlot(slot);
+
+        // the encoded values are the solution z3 would have given a slot equal to the constant
+        TypecheckUnit unit = new TypecheckUnit();
+        unit.setUnknownUnits(encodedSlot.getUnknownUnits().isTrue());
+        unit.setUnitsBottom(encodedSlot.getUnitsBottom().isTrue());
+        unit.setPrefixExponent(exponentSort.getValue(encodedSlot.getPrefixExponent()));
+        for (String baseUnit : unitsRepUtils.serializableBaseUnits()) {
+            unit.setExponent(baseUnit, exponentSort.getValue(encodedSlot.getExponent(baseUnit)));
+        }
+
+        return decodeSolution(unit, processingEnv);
+    }
+
+    @Override
+    public AnnotationMirror decodeEliminatedSlot(
+            SlotElimination.Value value, ProcessingEnvironment processingEnv) {
+        // the preferred value is dimensionless, a unit with all exponents 0
+        TypecheckUnit unit = new TypecheckUnit();
+        unit.setUnknownUnits(value == SlotElimination.Value.TOP);
+        unit.setUnitsBottom(value == SlotElimination.Value.BOTTOM);
+        return decodeSolution(unit, processingEnv);
+    }
+
+    // Decode overall solutions from a model obtained through the z3 Java API
+    @Override
+    public Map<Integer, AnnotationMirror> decodeSolution(
+            Model model, ProcessingEnvironment processingEnv) {
+
         Map<Integer, TypecheckUnit> solutionSlots = new HashMap<>();
 
-        for (String line : model) {
-            // each line is "varName value"
-            String[] parts = line.split(" ");
-            String varName = parts[0];
-            String value = parts[1];
+        for (FuncDecl varDecl : model.getConstDecls()) {
+            // the symbol name has no surrounding |'s
+            String z3VarName = varDecl.getName().toString();
+            if (Z3SmtSolver.isConstraintIndicator(z3VarName)) {
+                continue;
+            }
 
             // Get slotID and component name
-            Pair<Integer, String> slot = UnitsZ3SmtEncoderUtils.slotFromZ3VarName(varName);
+            Pair<Integer, String> slot = UnitsZ3SmtEncoderUtils.slotFromZ3VarName(z3VarName);
             int slotID = slot.first;
             String component = slot.second;
+            Expr value = model.getConstInterp(varDecl);
 
-            // Create a fresh solution slot if needed in the map
+            // Note: fresh TypecheckUnit has all exponents = 0 by default
             if (!solutionSlots.containsKey(slotID)) {
-                // Note: fresh TypecheckUnit has all exponents = 0 by default
-                // the exponents not encoded for z3 will simply be assumed to have a solution of
-                // 0, which is always true
                 solutionSlots.put(slotID, new TypecheckUnit());
             }
 
             TypecheckUnit z3Slot = solutionSlots.get(slotID);
             if (component.contentEquals(UnitsZ3SmtEncoderUtils.uuSlotName)) {
-                z3Slot.setUnknownUnits(Boolean.parseBoolean(value));
+                z3Slot.setUnknownUnits(value.isTrue());
             } else if (component.contentEquals(UnitsZ3SmtEncoderUtils.ubSlotName)) {
-                z3Slot.setUnitsBottom(Boolean.parseBoolean(value));
+                z3Slot.setUnitsBottom(value.isTrue());
             } else if (component.contentEquals(UnitsZ3SmtEncoderUtils.prefixSlotName)) {
-                z3Slot.setPrefixExponent(Integer.parseInt(value));
+                z3Slot.setPrefixExponent(exponentSort.getValue(value));
             } else {
                 // assumes it is a base unit exponent
-                z3Slot.setExponent(component, Integer.parseInt(value));
+                z3Slot.setExponent(component, exponentSort.getValue(value));
             }
-
-            // DEBUG:
-            // System.err.println(" " + varName + " => " + value);
-            // 10-s => -3
-            // 10-m => 1
-            // 10-Prefix => 0
-            // 10-UnitsBottom => false
-            // 10-UnknownUnits => true
-            // 10 : UU = true UB = false p = 0 m = 1 s = -3
         }
 
+        return decodeSolutionSlots(solutionSlots, processingEnv);
+    }
+
+    private Map<Integer, AnnotationMirror> decodeSolutionSlots(
+            Map<Integer, TypecheckUnit> solutionSlots, ProcessingEnvironment processingEnv) {
+        Map<Integer, AnnotationMirror> result = new HashMap<>();
         for (Integer slotID : solutionSlots.keySet()) {
             result.put(slotID, decodeSolution(solutionSlots.get(slotID), processingEnv));
         }
-
         return result;
     }
 
@@ -264,21 +377,6 @@ public class UnitsZ3SmtFormatTranslator
         // TODO: translate @UnitsRep annotations to string from @Units annotations
         // TODO: infer original name somehow
 
-        AnnotationMirror solutionUnit =
-                unitsRepUtils.createInternalUnit(
-                        solutionSlot.isUnknownUnits(),
-                        solutionSlot.isUnitsBottom(),
-                        solutionSlot.getPrefixExponent(),
-                        solutionSlot.getExponents());
-
-        // Always return top and bottom based on the booleans, since the BU values can
-        // be arbitrary
-        if (solutionSlot.isUnknownUnits()) {
-            return unitsRepUtils.SURFACE_TOP;
-        } else if (solutionSlot.isUnitsBottom()) {
-            return unitsRepUtils.SURFACE_BOTTOM;
-        } else {
-            return unitsRepUtils.getSurfaceUnit(solutionUnit);
-        }
+        return unitsRepUtils.getSurfaceUnit(solutionSlot);
     }
 }
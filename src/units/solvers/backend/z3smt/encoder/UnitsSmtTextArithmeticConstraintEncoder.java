@@ -0,0 +1,113 @@
+package units.solvers.backend.z3smt.encoder;
+
+import backend.z3smt.SmtText;
+import backend.z3smt.SmtTextFormatTranslator;
+import backend.z3smt.encoder.SmtTextAbstractConstraintEncoder;
+
+import checkers.inference.model.ArithmeticConstraint.ArithmeticOperationKind;
+import checkers.inference.model.ArithmeticVariableSlot;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.ArithmeticConstraintEncoder;
+import checkers.inference.solver.frontend.Lattice;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import units.representation.TypecheckUnit;
+import units.solvers.backend.z3smt.representation.SmtTextInferenceUnit;
+import units.util.UnitsTypecheckUtils;
+
+public class UnitsSmtTextArithmeticConstraintEncoder
+        extends SmtTextAbstractConstraintEncoder<SmtTextInferenceUnit, TypecheckUnit>
+        implements ArithmeticConstraintEncoder<SmtText> {
+
+    public UnitsSmtTextArithmeticConstraintEncoder(
+            Lattice lattice,
+            SmtTextFormatTranslator<SmtTextInferenceUnit, TypecheckUnit> textFormatTranslator) {
+        super(lattice, textFormatTranslator);
+    }
+
+    // Encodes each operation as UnitsZ3SmtArithmeticConstraintEncoder does
+    protected SmtText encode(
+            ArithmeticOperationKind operation,
+            Slot leftOperand,
+            Slot rightOperand,
+            ArithmeticVariableSlot result) {
+        SmtTextInferenceUnit left = leftOperand.serialize(textFormatTranslator);
+        SmtTextInferenceUnit right = rightOperand.serialize(textFormatTranslator);
+        SmtTextInferenceUnit res = result.serialize(textFormatTranslator);
+        switch (operation) {
+            case PLUS:
+            case MINUS:
+                // a pair of subtype constraints
+                return SmtText.mkAnd(
+                        UnitsSmtTextEncoderUtils.subtype(left, res),
+                        UnitsSmtTextEncoderUtils.subtype(right, res));
+            case MULTIPLY:
+                return UnitsSmtTextEncoderUtils.multiply(left, right, res);
+            case DIVIDE:
+                return UnitsSmtTextEncoderUtils.divide(left, right, res);
+            case REMAINDER:
+                // always an equality between leftOperand and result slots
+                return UnitsSmtTextEncoderUtils.equality(left, res);
+            default:
+                throw new BugInCF(
+                        "Attempting to encode an unsupported arithmetic operation: "
+                                + operation
+                                + " leftOperand: "
+                                + leftOperand
+                                + " rightOperand: "
+                                + rightOperand
+                                + " result: "
+                                + result);
+        }
+    }
+
+    @Override
+    public SmtText encodeVariable_Variable(
+            ArithmeticOperationKind operation,
+            VariableSlot leftOperand,
+            VariableSlot rightOperand,
+            ArithmeticVariableSlot result) {
+        return encode(operation, leftOperand, rightOperand, result);
+    }
+
+    @Override
+    public SmtText encodeVariable_Constant(
+            ArithmeticOperationKind operation,
+            VariableSlot leftOperand,
+            ConstantSlot rightOperand,
+            ArithmeticVariableSlot result) {
+        return encode(operation, leftOperand, rightOperand, result);
+    }
+
+    @Override
+    public SmtText encodeConstant_Variable(
+            ArithmeticOperationKind operation,
+            ConstantSlot leftOperand,
+            VariableSlot rightOperand,
+            ArithmeticVariableSlot result) {
+        return encode(operation, leftOperand, rightOperand, result);
+    }
+
+    @Override
+    public SmtText encodeConstant_Constant(
+            ArithmeticOperationKind operation,
+            ConstantSlot leftOperand,
+            ConstantSlot rightOperand,
+            ArithmeticVariableSlot result) {
+        // if leftOperand == rightOperand, then an addition or subtraction is an equality between
+        // rightOperand and result
+        if ((operation == ArithmeticOperationKind.PLUS
+                        || operation == ArithmeticOperationKind.MINUS)
+                && UnitsTypecheckUtils.unitsEqual(
+                        leftOperand.getValue(), rightOperand.getValue())) {
+            return UnitsSmtTextEncoderUtils.equality(
+                    rightOperand.serialize(textFormatTranslator),
+                    result.serialize(textFormatTranslator));
+        }
+        // with both operands constant, the literals of the result are computed by the folding
+        return encode(operation, leftOperand, rightOperand, result);
+    }
+}
@@ -0,0 +1,68 @@
+package units.solvers.backend.z3smt.encoder;
+
+import backend.z3smt.SmtText;
+import backend.z3smt.SmtTextFormatTranslator;
+import backend.z3smt.encoder.SmtTextAbstractConstraintEncoder;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.combine.CombineConstraintEncoder;
+import checkers.inference.solver.frontend.Lattice;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+
+import units.representation.TypecheckUnit;
+import units.representation.UnitsRepresentationUtils;
+import units.solvers.backend.z3smt.representation.SmtTextInferenceUnit;
+
+public class UnitsSmtTextCombineConstraintEncoder
+        extends SmtTextAbstractConstraintEncoder<SmtTextInferenceUnit, TypecheckUnit>
+        implements CombineConstraintEncoder<SmtText> {
+
+    UnitsRepresentationUtils unitsRepUtils;
+
+    public UnitsSmtTextCombineConstraintEncoder(
+            Lattice lattice,
+            SmtTextFormatTranslator<SmtTextInferenceUnit, TypecheckUnit> textFormatTranslator) {
+        super(lattice, textFormatTranslator);
+        unitsRepUtils = UnitsRepresentationUtils.getInstance();
+    }
+
+    @Override
+    public SmtText encodeVariable_Variable(
+            VariableSlot target, VariableSlot declared, VariableSlot result) {
+        SmtTextInferenceUnit decl = declared.serialize(textFormatTranslator);
+        SmtTextInferenceUnit res = result.serialize(textFormatTranslator);
+        return UnitsSmtTextEncoderUtils.equality(decl, res);
+    }
+
+    @Override
+    public SmtText encodeVariable_Constant(
+            VariableSlot target, ConstantSlot declared, VariableSlot result) {
+        return encodeConstantDeclared(target.serialize(textFormatTranslator), declared, result);
+    }
+
+    @Override
+    public SmtText encodeConstant_Variable(
+            ConstantSlot target, VariableSlot declared, VariableSlot result) {
+        SmtTextInferenceUnit decl = declared.serialize(textFormatTranslator);
+        SmtTextInferenceUnit res = result.serialize(textFormatTranslator);
+        return UnitsSmtTextEncoderUtils.equality(decl, res);
+    }
+
+    @Override
+    public SmtText encodeConstant_Constant(
+            ConstantSlot target, ConstantSlot declared, VariableSlot result) {
+        return encodeConstantDeclared(target.serialize(textFormatTranslator), declared, result);
+    }
+
+    // receiver dependent units take the unit of the target
+    private SmtText encodeConstantDeclared(
+            SmtTextInferenceUnit tar, ConstantSlot declared, VariableSlot result) {
+        SmtTextInferenceUnit res = result.serialize(textFormatTranslator);
+        if (AnnotationUtils.areSame(declared.getValue(), unitsRepUtils.RECEIVER_DEPENDANT_UNIT)) {
+            return UnitsSmtTextEncoderUtils.equality(tar, res);
+        }
+        return UnitsSmtTextEncoderUtils.equality(declared.serialize(textFormatTranslator), res);
+    }
+}
@@ -0,0 +1,50 @@
+package units.solvers.backend.z3smt.encoder;
+
+import backend.z3smt.SmtText;
+import backend.z3smt.SmtTextFormatTranslator;
+import backend.z3smt.encoder.SmtTextAbstractConstraintEncoder;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.binary.ComparableConstraintEncoder;
+import checkers.inference.solver.frontend.Lattice;
+
+import units.representation.TypecheckUnit;
+import units.solvers.backend.z3smt.representation.SmtTextInferenceUnit;
+
+public class UnitsSmtTextComparableConstraintEncoder
+        extends SmtTextAbstractConstraintEncoder<SmtTextInferenceUnit, TypecheckUnit>
+        implements ComparableConstraintEncoder<SmtText> {
+
+    public UnitsSmtTextComparableConstraintEncoder(
+            Lattice lattice,
+            SmtTextFormatTranslator<SmtTextInferenceUnit, TypecheckUnit> textFormatTranslator) {
+        super(lattice, textFormatTranslator);
+    }
+
+    protected SmtText encode(Slot fst, Slot snd) {
+        SmtTextInferenceUnit first = fst.serialize(textFormatTranslator);
+        SmtTextInferenceUnit second = snd.serialize(textFormatTranslator);
+
+        // fst <: snd or snd <: fst
+        return SmtText.mkOr(
+                UnitsSmtTextEncoderUtils.subtype(first, second),
+                UnitsSmtTextEncoderUtils.subtype(second, first));
+    }
+
+    @Override
+    public SmtText encodeVariable_Variable(VariableSlot fst, VariableSlot snd) {
+        return encode(fst, snd);
+    }
+
+    @Override
+    public SmtText encodeVariable_Constant(VariableSlot fst, ConstantSlot snd) {
+        return encode(fst, snd);
+    }
+
+    @Override
+    public SmtText encodeConstant_Variable(ConstantSlot fst, VariableSlot snd) {
+        return encode(fst, snd);
+    }
+}
@@ -0,0 +1,80 @@
+package units.solvers.backend.z3smt.encoder;
+
+import backend.z3smt.SmtText;
+import backend.z3smt.SmtTextFormatTranslator;
+import backend.z3smt.encoder.SmtTextConstraintEncoderFactory;
+
+import checkers.inference.solver.backend.encoder.ArithmeticConstraintEncoder;
+import checkers.inference.solver.backend.encoder.binary.ComparableConstraintEncoder;
+import checkers.inference.solver.backend.encoder.binary.EqualityConstraintEncoder;
+import checkers.inference.solver.backend.encoder.binary.InequalityConstraintEncoder;
+import checkers.inference.solver.backend.encoder.binary.SubtypeConstraintEncoder;
+import checkers.inference.solver.backend.encoder.combine.CombineConstraintEncoder;
+import checkers.inference.solver.backend.encoder.existential.ExistentialConstraintEncoder;
+import checkers.inference.solver.backend.encoder.implication.ImplicationConstraintEncoder;
+import checkers.inference.solver.backend.encoder.preference.PreferenceConstraintEncoder;
+import checkers.inference.solver.frontend.Lattice;
+
+import units.representation.TypecheckUnit;
+import units.solvers.backend.z3smt.representation.SmtTextInferenceUnit;
+
+/**
+ * SMT-LIB text implementation of {@link
+ * checkers.inference.solver.backend.encoder.ConstraintEncoderFactory} for Units Type System,
+ * supporting the same constraints as {@link UnitsZ3SmtConstraintEncoderFactory}.
+ *
+ * @see checkers.inference.solver.backend.encoder.ConstraintEncoderFactory
+ */
+public class UnitsSmtTextConstraintEncoderFactory
+        extends SmtTextConstraintEncoderFactory<SmtTextInferenceUnit, TypecheckUnit> {
+    public UnitsSmtTextConstraintEncoderFactory(
+            Lattice lattice,
+            SmtTextFormatTranslator<SmtTextInferenceUnit, TypecheckUnit> textFormatTranslator) {
+        super(lattice, textFormatTranslator);
+    }
+
+    @Override
+    public SubtypeConstraintEncoder<SmtText> createSubtypeConstraintEncoder() {
+        return new UnitsSmtTextSubtypeConstraintEncoder(lattice, formatTranslator);
+    }
+
+    @Override
+    public EqualityConstraintEncoder<SmtText> createEqualityConstraintEncoder() {
+        return new UnitsSmtTextEqualityConstraintEncoder(lattice, formatTranslator);
+    }
+
+    @Override
+    public InequalityConstraintEncoder<SmtText> createInequalityConstraintEncoder() {
+        return null;
+    }
+
+    @Override
+    public ComparableConstraintEncoder<SmtText> createComparableConstraintEncoder() {
+        return new UnitsSmtTextComparableConstraintEncoder(lattice, formatTranslator);
+    }
+
+    @Override
+    public PreferenceConstraintEncoder<SmtText> createPreferenceConstraintEncoder() {
+        return null;
+    }
+
+    @Override
+    public ExistentialConstraintEncoder<SmtText> createExistentialConstraintEncoder() {
+        return null;
+    }
+
+    @Override
+    public CombineConstraintEncoder<SmtText> createCombineConstraintEncoder() {
+        return new UnitsSmtTextCombineConstraintEncoder(lattice, formatTranslator);
+    }
+
+    @Override
+    public ImplicationConstraintEncoder<SmtText> createImplicationConstraintEncoder() {
+        return null;
+    }
+
+    @Override
+    public ArithmeticConstraintEncoder<SmtText> createArithmeticConstraintEncoder() {
+        return new UnitsSmtTextArithmeticConstraintEncoder(lattice, formatTranslator);
+    }
+}
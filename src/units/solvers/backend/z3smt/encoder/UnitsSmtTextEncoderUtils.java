@@ -0,0 +1,185 @@
+package units.solvers.backend.z3smt.encoder;
+
+import static backend.z3smt.SmtText.mkAdd;
+import static backend.z3smt.SmtText.mkAnd;
+import static backend.z3smt.SmtText.mkEq;
+import static backend.z3smt.SmtText.mkInt;
+import static backend.z3smt.SmtText.mkNot;
+import static backend.z3smt.SmtText.mkOr;
+import static backend.z3smt.SmtText.mkSub;
+
+import backend.z3smt.SmtText;
+
+import units.representation.UnitsRepresentationUtils;
+import units.solvers.backend.z3smt.representation.SmtTextInferenceUnit;
+
+/**
+ * Utility class with methods for encoding the relationships between Units as SMT-LIB text. Each
+ * method encodes the same constraint as its counterpart in {@link UnitsZ3SmtEncoderUtils}, and
+ * produces the same formula except for the well-formedness constraint.
+ */
+public class UnitsSmtTextEncoderUtils {
+
+    /**
+     * Slot well-formedness constraint: that either uu = true, ub = true, or uu == ub = false, and
+     * that the exponents of uu and ub are 0.
+     */
+    public static SmtText slotWellformedness(SmtTextInferenceUnit unit) {
+        return slotWellformedness(
+                unit.getUnknownUnits(), unit.getUnitsBottom(), allExponentsAreZero(unit));
+    }
+
+    /**
+     * The well-formedness constraint of a slot with the given uu and ub variables. It is
+     * equivalent to the one-hot encoding of {@link UnitsZ3SmtEncoderUtils#slotWellformedness},
+     * but written as clauses in which the exponent equations only occur positively, as required by
+     * the skeleton of the hybrid solver: !(uu && ub), uu => allExponentsAreZero, and ub =>
+     * allExponentsAreZero.
+     */
+    public static SmtText slotWellformedness(SmtText uu, SmtText ub, SmtText allExponentsAreZero) {
+        return mkAnd(
+                mkOr(mkNot(uu), mkNot(ub)),
+                mkOr(mkNot(uu), allExponentsAreZero),
+                mkOr(mkNot(ub), allExponentsAreZero));
+    }
+
+    /** Slot preference constraint: that the slot == dimensionless */
+    public static SmtText slotPreference(SmtTextInferenceUnit unit) {
+        return mustBeDimensionless(unit);
+    }
+
+    private static SmtText allExponentsAreZero(SmtTextInferenceUnit unit) {
+        SmtText zero = mkInt(0);
+        SmtText result = SmtText.TRUE;
+        if (UnitsRepresentationUtils.getInstance().serializePrefix()) {
+            result = mkEq(unit.getPrefixExponent(), zero);
+        }
+        for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
+            result = mkAnd(result, mkEq(unit.getExponent(baseUnit), zero));
+        }
+        return result;
+    }
+
+    private static SmtText mustBeDimensionless(SmtTextInferenceUnit unit) {
+        SmtText allExponentsAreZero = allExponentsAreZero(unit);
+        return mkAnd(
+                mkNot(unit.getUnknownUnits()), mkNot(unit.getUnitsBottom()), allExponentsAreZero);
+    }
+
+    // =========================================================================================
+
+    // fst = snd iff the bool and int component values are equal
+    // For Equality, and also Modulo
+    public static SmtText equality(SmtTextInferenceUnit fst, SmtTextInferenceUnit snd) {
+        SmtText equalityEncoding =
+                mkAnd(
+                        mkEq(fst.getUnknownUnits(), snd.getUnknownUnits()),
+                        mkEq(fst.getUnitsBottom(), snd.getUnitsBottom()));
+        if (UnitsRepresentationUtils.getInstance().serializePrefix()) {
+            equalityEncoding =
+                    mkAnd(
+                            equalityEncoding,
+                            mkEq(fst.getPrefixExponent(), snd.getPrefixExponent()));
+        }
+        for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
+            equalityEncoding =
+                    mkAnd(
+                            equalityEncoding,
+                            mkEq(fst.getExponent(baseUnit), snd.getExponent(baseUnit)));
+        }
+        return equalityEncoding;
+    }
+
+    // sub <: super, see UnitsZ3SmtEncoderUtils.subtype for the cases
+    public static SmtText subtype(SmtTextInferenceUnit subT, SmtTextInferenceUnit superT) {
+        /* @formatter:off // this is for eclipse formatter */
+        return mkOr(
+                // sub = bot
+                subT.getUnitsBottom(),
+                // super = top
+                superT.getUnknownUnits(),
+                // if neither is top or bottom then they must be equal: sub = super
+                mkAnd(
+                        mkNot(subT.getUnknownUnits()),
+                        mkNot(subT.getUnitsBottom()),
+                        mkNot(superT.getUnknownUnits()),
+                        mkNot(superT.getUnitsBottom()),
+                        equality(subT, superT)));
+        /* @formatter:on // this is for eclipse formatter */
+    }
+
+    // For Addition and Subtraction
+    public static SmtText tripleEquality(
+            SmtTextInferenceUnit lhs, SmtTextInferenceUnit rhs, SmtTextInferenceUnit res) {
+        // set lhs == rhs, and rhs == res, transitively lhs == res
+        return mkAnd(equality(lhs, rhs), equality(rhs, res));
+    }
+
+    public static SmtText multiply(
+            SmtTextInferenceUnit lhs, SmtTextInferenceUnit rhs, SmtTextInferenceUnit res) {
+        // Forall base units, r_exponent = lhs_exponent + rhs_exponent
+        SmtText exponents = SmtText.TRUE;
+        if (UnitsRepresentationUtils.getInstance().serializePrefix()) {
+            exponents =
+                    mkEq(
+                            res.getPrefixExponent(),
+                            mkAdd(lhs.getPrefixExponent(), rhs.getPrefixExponent()));
+        }
+        for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
+            exponents =
+                    mkAnd(
+                            exponents,
+                            mkEq(
+                                    res.getExponent(baseUnit),
+                                    mkAdd(lhs.getExponent(baseUnit), rhs.getExponent(baseUnit))));
+        }
+        return arithmetic(lhs, rhs, res, exponents);
+    }
+
+    public static SmtText divide(
+            SmtTextInferenceUnit lhs, SmtTextInferenceUnit rhs, SmtTextInferenceUnit res) {
+        // Forall base units, r_exponent = lhs_exponent - rhs_exponent
+        SmtText exponents = SmtText.TRUE;
+        if (UnitsRepresentationUtils.getInstance().serializePrefix()) {
+            exponents =
+                    mkEq(
+                            res.getPrefixExponent(),
+                            mkSub(lhs.getPrefixExponent(), rhs.getPrefixExponent()));
+        }
+        for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
+            exponents =
+                    mkAnd(
+                            exponents,
+                            mkEq(
+                                    res.getExponent(baseUnit),
+                                    mkSub(lhs.getExponent(baseUnit), rhs.getExponent(baseUnit))));
+        }
+        return arithmetic(lhs, rhs, res, exponents);
+    }
+
+    // r = x op y for multiplication and division, given the encoding of the exponents:
+    // (((x=top || y=top) && r=top) ||
+    // (x=bot && !y=top && r=bot) ||
+    // (!x=top && y=bot && r=bot) ||
+    // (!x=top && !x=bot && !y=top && !y=bot && exponents))
+    private static SmtText arithmetic(
+            SmtTextInferenceUnit lhs,
+            SmtTextInferenceUnit rhs,
+            SmtTextInferenceUnit res,
+            SmtText exponents) {
+        /* @formatter:off // this is for eclipse formatter */
+        return mkOr(
+                mkAnd(mkOr(lhs.getUnknownUnits(), rhs.getUnknownUnits()), res.getUnknownUnits()),
+                mkAnd(lhs.getUnitsBottom(), mkNot(rhs.getUnknownUnits()), res.getUnitsBottom()),
+                mkAnd(mkNot(lhs.getUnknownUnits()), rhs.getUnitsBottom(), res.getUnitsBottom()),
+                mkAnd(
+                        mkNot(lhs.getUnknownUnits()),
+                        mkNot(lhs.getUnitsBottom()),
+                        mkNot(rhs.getUnknownUnits()),
+                        mkNot(rhs.getUnitsBottom()),
+                        mkNot(res.getUnknownUnits()),
+                        mkNot(res.getUnitsBottom()),
+                        exponents));
+        /* @formatter:on // this is for eclipse formatter */
+    }
+}
@@ -0,0 +1,46 @@
+package units.solvers.backend.z3smt.encoder;
+
+import backend.z3smt.SmtText;
+import backend.z3smt.SmtTextFormatTranslator;
+import backend.z3smt.encoder.SmtTextAbstractConstraintEncoder;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.binary.EqualityConstraintEncoder;
+import checkers.inference.solver.frontend.Lattice;
+
+import units.representation.TypecheckUnit;
+import units.solvers.backend.z3smt.representation.SmtTextInferenceUnit;
+
+public class UnitsSmtTextEqualityConstraintEncoder
+        extends SmtTextAbstractConstraintEncoder<SmtTextInferenceUnit, TypecheckUnit>
+        implements EqualityConstraintEncoder<SmtText> {
+
+    public UnitsSmtTextEqualityConstraintEncoder(
+            Lattice lattice,
+            SmtTextFormatTranslator<SmtTextInferenceUnit, TypecheckUnit> textFormatTranslator) {
+        super(lattice, textFormatTranslator);
+    }
+
+    // 2 Slots are equal if their components are equal
+    protected SmtText encode(Slot fst, Slot snd) {
+        return UnitsSmtTextEncoderUtils.equality(
+                fst.serialize(textFormatTranslator), snd.serialize(textFormatTranslator));
+    }
+
+    @Override
+    public SmtText encodeVariable_Variable(VariableSlot fst, VariableSlot snd) {
+        return encode(fst, snd);
+    }
+
+    @Override
+    public SmtText encodeVariable_Constant(VariableSlot fst, ConstantSlot snd) {
+        return encode(fst, snd);
+    }
+
+    @Override
+    public SmtText encodeConstant_Variable(ConstantSlot fst, VariableSlot snd) {
+        return encode(fst, snd);
+    }
+}
@@ -0,0 +1,45 @@
+package units.solvers.backend.z3smt.encoder;
+
+import backend.z3smt.SmtText;
+import backend.z3smt.SmtTextFormatTranslator;
+import backend.z3smt.encoder.SmtTextAbstractConstraintEncoder;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.binary.SubtypeConstraintEncoder;
+import checkers.inference.solver.frontend.Lattice;
+
+import units.representation.TypecheckUnit;
+import units.solvers.backend.z3smt.representation.SmtTextInferenceUnit;
+
+public class UnitsSmtTextSubtypeConstraintEncoder
+        extends SmtTextAbstractConstraintEncoder<SmtTextInferenceUnit, TypecheckUnit>
+        implements SubtypeConstraintEncoder<SmtText> {
+
+    public UnitsSmtTextSubtypeConstraintEncoder(
+            Lattice lattice,
+            SmtTextFormatTranslator<SmtTextInferenceUnit, TypecheckUnit> textFormatTranslator) {
+        super(lattice, textFormatTranslator);
+    }
+
+    protected SmtText encode(Slot subtype, Slot supertype) {
+        return UnitsSmtTextEncoderUtils.subtype(
+                subtype.serialize(textFormatTranslator), supertype.serialize(textFormatTranslator));
+    }
+
+    @Override
+    public SmtText encodeVariable_Variable(VariableSlot subtype, VariableSlot supertype) {
+        return encode(subtype, supertype);
+    }
+
+    @Override
+    public SmtText encodeVariable_Constant(VariableSlot subtype, ConstantSlot supertype) {
+        return encode(subtype, supertype);
+    }
+
+    @Override
+    public SmtText encodeConstant_Variable(ConstantSlot subtype, VariableSlot supertype) {
+        return encode(subtype, supertype);
+    }
+}
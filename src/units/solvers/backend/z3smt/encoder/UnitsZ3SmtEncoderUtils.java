@@ -2,11 +2,12 @@ package units.solvers.backend.z3smt.encoder;
 
 import com.microsoft.z3.BoolExpr;
 import com.microsoft.z3.Context;
-import com.microsoft.z3.IntNum;
+import com.microsoft.z3.Expr;
 
 import org.checkerframework.javacutil.Pair;
 
 import units.representation.UnitsRepresentationUtils;
+import units.solvers.backend.z3smt.representation.Z3ExponentSort;
 import units.solvers.backend.z3smt.representation.Z3InferenceUnit;
 
 /**
@@ -112,12 +113,18 @@ public class UnitsZ3SmtEncoderUtils {
     }
 
     private static BoolExpr allExponentsAreZero(Context ctx, Z3InferenceUnit unit) {
-        IntNum zero = ctx.mkInt(0);
+        Z3ExponentSort sort = unit.getExponentSort();
+        Expr zero = sort.zero();
         BoolExpr result = ctx.mkTrue();
-        if (UnitsRepresentationUtils.getInstance().serializePrefix()) {
+        if (UnitsRepresentationUtils.getInstance().serializePrefix()
+                && !sort.isZero(unit.getPrefixExponent())) {
             result = ctx.mkEq(unit.getPrefixExponent(), zero);
         }
         for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
+            // exponents of inactive dimensions are already 0
+            if (sort.isZero(unit.getExponent(baseUnit))) {
+                continue;
+            }
             /* @formatter:off // this is for eclipse formatter */
             result = ctx.mkAnd(result, ctx.mkEq(unit.getExponent(baseUnit), zero));
             /* @formatter:on // this is for eclipse formatter */
@@ -141,17 +148,23 @@ public class UnitsZ3SmtEncoderUtils {
     // For Equality, and also Modulo
     public static BoolExpr equality(Context ctx, Z3InferenceUnit fst, Z3InferenceUnit snd) {
         /* @formatter:off // this is for eclipse formatter */
+        Z3ExponentSort sort = fst.getExponentSort();
         BoolExpr equalityEncoding =
                 ctx.mkAnd(
                         ctx.mkEq(fst.getUnknownUnits(), snd.getUnknownUnits()),
                         ctx.mkEq(fst.getUnitsBottom(), snd.getUnitsBottom()));
-        if (UnitsRepresentationUtils.getInstance().serializePrefix()) {
+        if (UnitsRepresentationUtils.getInstance().serializePrefix()
+                && !bothZero(sort, fst.getPrefixExponent(), snd.getPrefixExponent())) {
             equalityEncoding =
                     ctx.mkAnd(
                             equalityEncoding,
                             ctx.mkEq(fst.getPrefixExponent(), snd.getPrefixExponent()));
         }
         for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
+            // dimensions inactive in both slots are equal
+            if (bothZero(sort, fst.getExponent(baseUnit), snd.getExponent(baseUnit))) {
+                continue;
+            }
             equalityEncoding =
                     ctx.mkAnd(
                             equalityEncoding,
@@ -208,21 +221,28 @@ public class UnitsZ3SmtEncoderUtils {
         /* @formatter:off // this is for eclipse formatter */
         // Forall base units, r_exponent = lhs_exponent + rhs_exponent
 
+        Z3ExponentSort sort = res.getExponentSort();
         BoolExpr exponents = ctx.mkTrue();
-        if (UnitsRepresentationUtils.getInstance().serializePrefix()) {
+        if (UnitsRepresentationUtils.getInstance().serializePrefix()
+                && !allZero(sort, res.getPrefixExponent(), lhs, rhs, null)) {
             exponents =
-                    ctx.mkEq(
+                    sort.mkSumEq(
                             res.getPrefixExponent(),
-                            ctx.mkAdd(lhs.getPrefixExponent(), rhs.getPrefixExponent()));
+                            lhs.getPrefixExponent(),
+                            rhs.getPrefixExponent());
         }
         for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
+            // dimensions inactive in all three slots add up
+            if (allZero(sort, res.getExponent(baseUnit), lhs, rhs, baseUnit)) {
+                continue;
+            }
             exponents =
                     ctx.mkAnd(
                             exponents,
-                            ctx.mkEq(
+                            sort.mkSumEq(
                                     res.getExponent(baseUnit),
-                                    ctx.mkAdd(
-                                            lhs.getExponent(baseUnit), rhs.getExponent(baseUnit))));
+                                    lhs.getExponent(baseUnit),
+                                    rhs.getExponent(baseUnit)));
         }
 
         // r = x * y
@@ -275,21 +295,27 @@ public class UnitsZ3SmtEncoderUtils {
         /* @formatter:off // this is for eclipse formatter */
         // Forall base units, r_exponent = lhs_exponent - rhs_exponent
 
+        Z3ExponentSort sort = res.getExponentSort();
         BoolExpr exponents = ctx.mkTrue();
-        if (UnitsRepresentationUtils.getInstance().serializePrefix()) {
+        if (UnitsRepresentationUtils.getInstance().serializePrefix()
+                && !allZero(sort, res.getPrefixExponent(), lhs, rhs, null)) {
             exponents =
-                    ctx.mkEq(
+                    sort.mkDifferenceEq(
                             res.getPrefixExponent(),
-                            ctx.mkSub(lhs.getPrefixExponent(), rhs.getPrefixExponent()));
+                            lhs.getPrefixExponent(),
+                            rhs.getPrefixExponent());
         }
         for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
+            if (allZero(sort, res.getExponent(baseUnit), lhs, rhs, baseUnit)) {
+                continue;
+            }
             exponents =
                     ctx.mkAnd(
                             exponents,
-                            ctx.mkEq(
+                            sort.mkDifferenceEq(
                                     res.getExponent(baseUnit),
-                                    ctx.mkSub(
-                                            lhs.getExponent(baseUnit), rhs.getExponent(baseUnit))));
+                                    lhs.getExponent(baseUnit),
+                                    rhs.getExponent(baseUnit)));
         }
         BoolExpr divideEncoding =
                 ctx.mkOr(
@@ -329,4 +355,25 @@ public class UnitsZ3SmtEncoderUtils {
         //                ctx.mkAdd(lhs.getPrefixExponent(), rhs.getPrefixExponent())),
         //        exponents);
     }
+
+    // Exponents known to be 0, as the exponents of inactive dimensions, need no encoding
+    private static boolean bothZero(Z3ExponentSort sort, Expr fst, Expr snd) {
+        return sort.isZero(fst) && sort.isZero(snd);
+    }
+
+    // Whether the exponent of res and those of lhs and rhs in the dimension (the prefix if null)
+    // are all known to be 0
+    private static boolean allZero(
+            Z3ExponentSort sort,
+            Expr resExponent,
+            Z3InferenceUnit lhs,
+            Z3InferenceUnit rhs,
+            String baseUnit) {
+        if (baseUnit == null) {
+            return bothZero(sort, lhs.getPrefixExponent(), rhs.getPrefixExponent())
+                    && sort.isZero(resExponent);
+        }
+        return bothZero(sort, lhs.getExponent(baseUnit), rhs.getExponent(baseUnit))
+                && sort.isZero(resExponent);
+    }
 }
@@ -0,0 +1,112 @@
+package units.solvers.backend.z3smt.representation;
+
+import backend.z3smt.SmtText;
+
+import units.representation.TypecheckUnit;
+import units.representation.UnitsRepresentationUtils;
+import units.solvers.backend.UnitsActiveDimensions;
+import units.solvers.backend.z3smt.encoder.UnitsZ3SmtEncoderUtils;
+
+import java.util.Map;
+
+/**
+ * A data structure class to encapsulate a set of SMT-LIB terms representing a unit for inference.
+ * It is the text counterpart of {@link Z3InferenceUnit}, and names its variables identically.
+ */
+public class SmtTextInferenceUnit {
+    private final int slotID;
+
+    private final SmtText uu;
+    private final SmtText ub;
+    private final SmtText prefixExponent;
+    // Tree map maintaining sorted order on base unit names
+    private final Map<String, SmtText> exponents;
+
+    private SmtTextInferenceUnit(int slotID, SmtText uu, SmtText ub, SmtText prefixExponent) {
+        this.slotID = slotID;
+        this.uu = uu;
+        this.ub = ub;
+        this.prefixExponent = prefixExponent;
+        exponents = UnitsRepresentationUtils.createSortedBaseUnitMap();
+    }
+
+    /** Makes an encoded slot with the values of the given unit. */
+    public static SmtTextInferenceUnit makeConstantSlot(int slotID, TypecheckUnit unit) {
+        // as for Z3InferenceUnit, the exponents of top and bottom are left as 0
+        boolean isTopOrBottom = unit.isUnknownUnits() || unit.isUnitsBottom();
+        SmtTextInferenceUnit slot =
+                new SmtTextInferenceUnit(
+                        slotID,
+                        SmtText.mkBool(unit.isUnknownUnits()),
+                        SmtText.mkBool(!unit.isUnknownUnits() && unit.isUnitsBottom()),
+                        SmtText.mkInt(isTopOrBottom ? 0 : unit.getPrefixExponent()));
+
+        for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
+            slot.exponents.put(
+                    baseUnit, SmtText.mkInt(isTopOrBottom ? 0 : unit.getExponent(baseUnit)));
+        }
+
+        return slot;
+    }
+
+    /** Makes a slot of z3 variables, with the exponents of inactive dimensions fixed to 0. */
+    public static SmtTextInferenceUnit makeVariableSlot(
+            int slotID, UnitsActiveDimensions activeDimensions) {
+        SmtTextInferenceUnit slot =
+                new SmtTextInferenceUnit(
+                        slotID,
+                        SmtText.mkConst(
+                                UnitsZ3SmtEncoderUtils.z3VarName(
+                                        slotID, UnitsZ3SmtEncoderUtils.uuSlotName)),
+                        SmtText.mkConst(
+                                UnitsZ3SmtEncoderUtils.z3VarName(
+                                        slotID, UnitsZ3SmtEncoderUtils.ubSlotName)),
+                        exponentVariable(
+                                slotID, UnitsZ3SmtEncoderUtils.prefixSlotName, activeDimensions));
+
+        for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
+            slot.exponents.put(baseUnit, exponentVariable(slotID, baseUnit, activeDimensions));
+        }
+
+        return slot;
+    }
+
+    private static SmtText exponentVariable(
+            int slotID, String dimension, UnitsActiveDimensions activeDimensions) {
+        if (!activeDimensions.isActive(slotID, dimension)) {
+            return SmtText.mkInt(0);
+        }
+        return SmtText.mkConst(UnitsZ3SmtEncoderUtils.z3VarName(slotID, dimension));
+    }
+
+    public SmtText getUnknownUnits() {
+        return uu;
+    }
+
+    public SmtText getUnitsBottom() {
+        return ub;
+    }
+
+    public SmtText getPrefixExponent() {
+        return prefixExponent;
+    }
+
+    public SmtText getExponent(String unit) {
+        assert exponents.containsKey(unit);
+        return exponents.get(unit);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("slot ");
+        sb.append(slotID);
+        sb.append(" : UU = " + uu);
+        sb.append(" UB = " + ub);
+        sb.append(" Prefix = " + prefixExponent);
+        for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
+            sb.append(" " + baseUnit + " = " + exponents.get(baseUnit));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,134 @@
+package units.solvers.backend.z3smt.representation;
+
+import com.microsoft.z3.ArithExpr;
+import com.microsoft.z3.BitVecExpr;
+import com.microsoft.z3.BitVecNum;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.Expr;
+import com.microsoft.z3.IntNum;
+
+import org.checkerframework.javacutil.BugInCF;
+
+/**
+ * The z3 sort used to encode the prefix and base unit exponents of a {@link Z3InferenceUnit}:
+ * either unbounded integers, or signed bit-vectors of a fixed width.
+ *
+ * <p>Exponents seen in practice are small, and bit-vectors let z3 bit-blast the linear exponent
+ * equations instead of using general linear integer arithmetic. The sums and differences of
+ * bit-vector exponents are guarded against overflow, so every bit-vector solution is a solution of
+ * the integer encoding. Integer solutions with exponents out of the range of the width are lost.
+ */
+public class Z3ExponentSort {
+    private final Context ctx;
+    // width of the bit-vectors, 0 for integers
+    private final int bitVectorWidth;
+
+    private final Expr zero;
+
+    public Z3ExponentSort(Context ctx, int bitVectorWidth) {
+        if (bitVectorWidth < 0 || bitVectorWidth > 32) {
+            throw new BugInCF("Unsupported bit-vector width for exponents: " + bitVectorWidth);
+        }
+        this.ctx = ctx;
+        this.bitVectorWidth = bitVectorWidth;
+        zero = mkNum(0);
+    }
+
+    public boolean isBitVector() {
+        return bitVectorWidth > 0;
+    }
+
+    /** Returns the SMT-LIB name of the sort, for declaring exponent variables. */
+    public String getSortName() {
+        return isBitVector() ? "(_ BitVec " + bitVectorWidth + ")" : "Int";
+    }
+
+    public Expr mkConst(String name) {
+        return isBitVector() ? ctx.mkBVConst(name, bitVectorWidth) : ctx.mkIntConst(name);
+    }
+
+    public Expr mkNum(int value) {
+        if (value == 0 && zero != null) {
+            // shared, so that encoders can skip exponents known to be 0, see isZero(Expr)
+            return zero;
+        }
+        if (!isBitVector()) {
+            return ctx.mkInt(value);
+        }
+        if (value < minValue() || value > maxValue()) {
+            throw new BugInCF(
+                    "Exponent "
+                            + value
+                            + " does not fit in a bit-vector of width "
+                            + bitVectorWidth);
+        }
+        return ctx.mkBV(value, bitVectorWidth);
+    }
+
+    public Expr zero() {
+        return zero;
+    }
+
+    /** Returns whether the exponent is the numeral 0 of this sort, see {@link #zero()}. */
+    public boolean isZero(Expr exponent) {
+        return exponent == zero;
+    }
+
+    /** Encodes res = lhs + rhs, which for bit-vectors also requires the sum not to overflow. */
+    public BoolExpr mkSumEq(Expr res, Expr lhs, Expr rhs) {
+        if (!isBitVector()) {
+            return ctx.mkEq(res, ctx.mkAdd((ArithExpr) lhs, (ArithExpr) rhs));
+        }
+        BitVecExpr bvLhs = (BitVecExpr) lhs;
+        BitVecExpr bvRhs = (BitVecExpr) rhs;
+        return ctx.mkAnd(
+                ctx.mkEq(res, ctx.mkBVAdd(bvLhs, bvRhs)),
+                ctx.mkBVAddNoOverflow(bvLhs, bvRhs, true),
+                ctx.mkBVAddNoUnderflow(bvLhs, bvRhs));
+    }
+
+    /**
+     * Encodes res = lhs - rhs, which for bit-vectors also requires the difference not to overflow.
+     */
+    public BoolExpr mkDifferenceEq(Expr res, Expr lhs, Expr rhs) {
+        if (!isBitVector()) {
+            return ctx.mkEq(res, ctx.mkSub((ArithExpr) lhs, (ArithExpr) rhs));
+        }
+        BitVecExpr bvLhs = (BitVecExpr) lhs;
+        BitVecExpr bvRhs = (BitVecExpr) rhs;
+        return ctx.mkAnd(
+                ctx.mkEq(res, ctx.mkBVSub(bvLhs, bvRhs)),
+                ctx.mkBVSubNoOverflow(bvLhs, bvRhs),
+                ctx.mkBVSubNoUnderflow(bvLhs, bvRhs, true));
+    }
+
+    /** Returns the value of a numeral of this sort, bit-vectors are read as two's complement. */
+    public int getValue(Expr numeral) {
+        if (numeral instanceof IntNum) {
+            return ((IntNum) numeral).getInt();
+        }
+        if (numeral instanceof BitVecNum) {
+            return toSigned(((BitVecNum) numeral).getLong(), bitVectorWidth);
+        }
+        throw new BugInCF("Expected an exponent numeral, but got " + numeral);
+    }
+
+    // Interprets the low width bits of the given value as a two's complement number
+    private static int toSigned(long value, int width) {
+        long mask = (1L << width) - 1;
+        value &= mask;
+        if (value >= 1L << (width - 1)) {
+            value -= 1L << width;
+        }
+        return (int) value;
+    }
+
+    private int minValue() {
+        return -(1 << (bitVectorWidth - 1));
+    }
+
+    private int maxValue() {
+        return (1 << (bitVectorWidth - 1)) - 1;
+    }
+}
@@ -2,10 +2,10 @@ package units.solvers.backend.z3smt.representation;
 
 import com.microsoft.z3.BoolExpr;
 import com.microsoft.z3.Context;
-import com.microsoft.z3.IntExpr;
-import com.microsoft.z3.IntNum;
+import com.microsoft.z3.Expr;
 
 import units.representation.UnitsRepresentationUtils;
+import units.solvers.backend.UnitsActiveDimensions;
 import units.solvers.backend.z3smt.encoder.UnitsZ3SmtEncoderUtils;
 
 import java.util.Map;
@@ -17,44 +17,49 @@ public class Z3InferenceUnit {
     // TODO: long term clean up, strip out the use of z3 Java API and construct raw
     // strings for each of the variables?
     private final Context ctx;
+    // the sort of the prefix and base unit exponents
+    private final Z3ExponentSort exponentSort;
     private final int slotID;
 
     private BoolExpr uu;
     private BoolExpr ub;
-    private IntExpr prefixExponent;
+    private Expr prefixExponent;
     // Tree map maintaining sorted order on base unit names
-    private final Map<String, IntExpr> exponents;
+    private final Map<String, Expr> exponents;
 
-    // helper constant
-    private final IntNum intZero;
-
-    private Z3InferenceUnit(Context ctx, int slotID) {
+    private Z3InferenceUnit(Context ctx, Z3ExponentSort exponentSort, int slotID) {
         this.ctx = ctx;
+        this.exponentSort = exponentSort;
         this.slotID = slotID;
         exponents = UnitsRepresentationUtils.createSortedBaseUnitMap();
-        intZero = ctx.mkInt(0);
     }
 
-    public static Z3InferenceUnit makeConstantSlot(Context ctx, int slotID) {
-        Z3InferenceUnit slot = new Z3InferenceUnit(ctx, slotID);
+    public static Z3InferenceUnit makeConstantSlot(
+            Context ctx, Z3ExponentSort exponentSort, int slotID) {
+        Z3InferenceUnit slot = new Z3InferenceUnit(ctx, exponentSort, slotID);
 
         // default UU value is false
         slot.uu = ctx.mkBool(false);
         // default UU value is false
         slot.ub = ctx.mkBool(false);
         // default prefixExponent is 0
-        slot.prefixExponent = slot.intZero;
+        slot.prefixExponent = exponentSort.zero();
 
         for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
             // default exponents are 0
-            slot.exponents.put(baseUnit, slot.intZero);
+            slot.exponents.put(baseUnit, exponentSort.zero());
         }
 
         return slot;
     }
 
-    public static Z3InferenceUnit makeVariableSlot(Context ctx, int slotID) {
-        Z3InferenceUnit slot = new Z3InferenceUnit(ctx, slotID);
+    /** Makes a slot of z3 variables, with the exponents of inactive dimensions fixed to 0. */
+    public static Z3InferenceUnit makeVariableSlot(
+            Context ctx,
+            Z3ExponentSort exponentSort,
+            int slotID,
+            UnitsActiveDimensions activeDimensions) {
+        Z3InferenceUnit slot = new Z3InferenceUnit(ctx, exponentSort, slotID);
 
         slot.uu =
                 ctx.mkBoolConst(
@@ -65,18 +70,28 @@ public class Z3InferenceUnit {
                         UnitsZ3SmtEncoderUtils.z3VarName(
                                 slotID, UnitsZ3SmtEncoderUtils.ubSlotName));
         slot.prefixExponent =
-                ctx.mkIntConst(
-                        UnitsZ3SmtEncoderUtils.z3VarName(
-                                slotID, UnitsZ3SmtEncoderUtils.prefixSlotName));
+                activeDimensions.isActive(slotID, UnitsZ3SmtEncoderUtils.prefixSlotName)
+                        ? exponentSort.mkConst(
+                                UnitsZ3SmtEncoderUtils.z3VarName(
+                                        slotID, UnitsZ3SmtEncoderUtils.prefixSlotName))
+                        : exponentSort.zero();
 
         for (String baseUnit : UnitsRepresentationUtils.getInstance().serializableBaseUnits()) {
             slot.exponents.put(
-                    baseUnit, ctx.mkIntConst(UnitsZ3SmtEncoderUtils.z3VarName(slotID, baseUnit)));
+                    baseUnit,
+                    activeDimensions.isActive(slotID, baseUnit)
+                            ? exponentSort.mkConst(
+                                    UnitsZ3SmtEncoderUtils.z3VarName(slotID, baseUnit))
+                            : exponentSort.zero());
         }
 
         return slot;
     }
 
+    public Z3ExponentSort getExponentSort() {
+        return exponentSort;
+    }
+
     public void setUnknownUnits(boolean val) {
         uu = ctx.mkBool(val);
     }
@@ -94,19 +109,19 @@ public class Z3InferenceUnit {
     }
 
     public void setPrefixExponent(int exp) {
-        prefixExponent = ctx.mkInt(exp);
+        prefixExponent = exponentSort.mkNum(exp);
     }
 
-    public IntExpr getPrefixExponent() {
+    public Expr getPrefixExponent() {
         return prefixExponent;
     }
 
     public void setExponent(String unit, int exp) {
         assert exponents.containsKey(unit);
-        exponents.replace(unit, ctx.mkInt(exp));
+        exponents.replace(unit, exponentSort.mkNum(exp));
     }
 
-    public IntExpr getExponent(String unit) {
+    public Expr getExponent(String unit) {
         assert exponents.containsKey(unit);
         return exponents.get(unit);
     }
@@ -0,0 +1,56 @@
+package backend.hybrid;
+
+import static backend.z3smt.SmtText.mkAnd;
+import static backend.z3smt.SmtText.mkConst;
+import static backend.z3smt.SmtText.mkEq;
+import static backend.z3smt.SmtText.mkInt;
+import static backend.z3smt.SmtText.mkNot;
+import static org.junit.Assert.assertEquals;
+
+import backend.hybrid.SkeletonEncoder.UnsupportedTermException;
+
+import org.junit.Test;
+
+import units.solvers.backend.z3smt.encoder.UnitsSmtTextEncoderUtils;
+
+/** Checks which terms {@link SkeletonEncoder} encodes, on the terms of the units encoding. */
+public class SkeletonEncoderTest {
+
+    private static SkeletonEncoder newEncoder() {
+        return new SkeletonEncoder(
+                component -> component.equals("TOP") || component.equals("BOT"));
+    }
+
+    @Test
+    public void slotWellformedness() throws UnsupportedTermException {
+        SkeletonEncoder encoder = newEncoder();
+        encoder.assertTerm(
+                UnitsSmtTextEncoderUtils.slotWellformedness(
+                        mkConst("1-TOP"),
+                        mkConst("1-BOT"),
+                        mkAnd(
+                                mkEq(mkConst("1-PREFIX"), mkInt(0)),
+                                mkEq(mkConst("1-m"), mkInt(0)))));
+        // one atom per exponent, shared by the clauses of uu and ub
+        assertEquals(2, encoder.getAtoms().size());
+        assertEquals(2, encoder.getBooleanVariables().size());
+    }
+
+    @Test(expected = UnsupportedTermException.class)
+    public void negatedEquation() throws UnsupportedTermException {
+        newEncoder().assertTerm(mkNot(mkEq(mkConst("1-m"), mkInt(0))));
+    }
+
+    @Test
+    public void equalEquationsShareAnAtom() throws UnsupportedTermException {
+        SkeletonEncoder encoder = newEncoder();
+        encoder.assertTerm(mkEq(mkConst("1-m"), mkConst("2-m")));
+        encoder.assertTerm(mkEq(mkConst("2-m"), mkConst("1-m")));
+        assertEquals(1, encoder.getAtoms().size());
+    }
+
+    @Test(expected = UnsupportedTermException.class)
+    public void equationOverSeveralDimensions() throws UnsupportedTermException {
+        newEncoder().assertTerm(mkEq(mkConst("1-m"), mkConst("1-s")));
+    }
+}
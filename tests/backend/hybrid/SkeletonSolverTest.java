@@ -0,0 +1,102 @@
+package backend.hybrid;
+
+import static backend.z3smt.SmtText.mkAdd;
+import static backend.z3smt.SmtText.mkAnd;
+import static backend.z3smt.SmtText.mkConst;
+import static backend.z3smt.SmtText.mkEq;
+import static backend.z3smt.SmtText.mkInt;
+import static backend.z3smt.SmtText.mkNot;
+import static backend.z3smt.SmtText.mkOr;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import backend.hybrid.SkeletonEncoder.UnsupportedTermException;
+import backend.hybrid.SkeletonSolver.UndecidedException;
+import backend.z3smt.SmtText;
+
+import org.junit.Test;
+
+import units.solvers.backend.z3smt.encoder.UnitsSmtTextEncoderUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Solves the units encoding of a few slots over the base unit m with {@link SkeletonSolver}, as
+ * {@link HybridSolver} does, and checks that it is decided without falling back to z3.
+ */
+public class SkeletonSolverTest {
+
+    private final SkeletonEncoder encoder =
+            new SkeletonEncoder(component -> component.equals("TOP") || component.equals("BOT"));
+    private final List<SmtText> terms = new ArrayList<>();
+
+    private static SmtText top(int slot) {
+        return mkConst(slot + "-TOP");
+    }
+
+    private static SmtText bot(int slot) {
+        return mkConst(slot + "-BOT");
+    }
+
+    private static SmtText m(int slot) {
+        return mkConst(slot + "-m");
+    }
+
+    private static SmtText isUnit(int slot) {
+        return mkAnd(mkNot(top(slot)), mkNot(bot(slot)));
+    }
+
+    private void assertTerm(SmtText term) throws UnsupportedTermException {
+        encoder.assertTerm(term);
+        terms.add(term);
+    }
+
+    // Asserts the well-formedness of the slots, sub <: super, and res = lhs * rhs, encoded as by
+    // UnitsSmtTextEncoderUtils, with the exponent of m of slot 1 fixed to 1 and of slot 3 to 2
+    private void assertProgram() throws UnsupportedTermException {
+        for (int slot = 1; slot <= 3; slot++) {
+            assertTerm(
+                    UnitsSmtTextEncoderUtils.slotWellformedness(
+                            top(slot), bot(slot), mkEq(m(slot), mkInt(0))));
+        }
+        // 1 <: 2
+        assertTerm(mkOr(bot(1), top(2), mkAnd(isUnit(1), isUnit(2), mkEq(m(1), m(2)))));
+        // 3 = 1 * 2
+        assertTerm(
+                mkOr(
+                        mkAnd(mkOr(top(1), top(2)), top(3)),
+                        mkAnd(bot(1), mkNot(top(2)), bot(3)),
+                        mkAnd(mkNot(top(1)), bot(2), bot(3)),
+                        mkAnd(isUnit(1), isUnit(2), isUnit(3), mkEq(m(3), mkAdd(m(1), m(2))))));
+        assertTerm(mkAnd(isUnit(1), mkEq(m(1), mkInt(1))));
+        assertTerm(mkAnd(isUnit(3), mkEq(m(3), mkInt(2))));
+    }
+
+    private long integerValue(SkeletonSolver solver, SmtText variable) {
+        return solver.getIntegerValues()[encoder.getIntegerNames().indexOf(variable.getName())];
+    }
+
+    @Test
+    public void wellformedProgram() throws UnsupportedTermException, UndecidedException {
+        assertProgram();
+        SkeletonSolver solver = new SkeletonSolver(encoder, 1000);
+        assertTrue(solver.solve());
+        for (SmtText term : terms) {
+            assertTrue(encoder.evaluate(term, solver.getSatValues(), solver.getIntegerValues()));
+        }
+        assertEquals(1, integerValue(solver, m(2)));
+        assertEquals(2, integerValue(solver, m(3)));
+    }
+
+    @Test
+    public void conflictingEquations() throws UnsupportedTermException, UndecidedException {
+        assertProgram();
+        // slot 2 is top or m^5, but it must be m^1 for 3 = 1 * 2
+        assertTerm(mkOr(top(2), mkEq(m(2), mkInt(5))));
+        SkeletonSolver solver = new SkeletonSolver(encoder, 1000);
+        assertFalse(solver.solve());
+        assertTrue(solver.learnedClauses > 0);
+    }
+}
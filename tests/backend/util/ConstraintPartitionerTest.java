@@ -0,0 +1,100 @@
+package backend.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import backend.util.ConstraintPartitioner.Component;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.model.serialization.Serializer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Splits constraints into independent components with {@link ConstraintPartitioner}. */
+public class ConstraintPartitionerTest {
+
+    private static class Over extends Constraint {
+        Over(Slot... slots) {
+            super(Arrays.asList(slots), AnnotationLocation.MISSING_LOCATION);
+        }
+
+        @Override
+        public <S, T> T serialize(Serializer<S, T> serializer) {
+            return null;
+        }
+    }
+
+    private final List<Slot> slots = new ArrayList<>();
+    private final List<Constraint> constraints = new ArrayList<>();
+
+    private VariableSlot variable(int id) {
+        VariableSlot slot = new VariableSlot(AnnotationLocation.MISSING_LOCATION, id);
+        slots.add(slot);
+        return slot;
+    }
+
+    private Constraint over(Slot... slots) {
+        Constraint constraint = new Over(slots);
+        constraints.add(constraint);
+        return constraint;
+    }
+
+    private List<Component> partition(int batchSize) {
+        return ConstraintPartitioner.partition(
+                SlotIndex.build(slots, constraints), constraints, batchSize);
+    }
+
+    @Test
+    public void connectedSlotsShareAComponent() {
+        VariableSlot a = variable(1);
+        VariableSlot b = variable(2);
+        VariableSlot c = variable(3);
+        VariableSlot d = variable(4);
+        VariableSlot e = variable(5);
+        // a, b and c are connected through b, d and e through their own constraint
+        Constraint ab = over(a, b);
+        Constraint bc = over(b, c);
+        Constraint de = over(d, e);
+
+        List<Component> components = partition(1);
+        assertEquals(2, components.size());
+        assertEquals(Arrays.asList(a, b, c), components.get(0).slots);
+        assertEquals(Arrays.asList(ab, bc), components.get(0).constraints);
+        assertEquals(Arrays.asList(d, e), components.get(1).slots);
+        assertEquals(Arrays.asList(de), components.get(1).constraints);
+    }
+
+    @Test
+    public void smallComponentsAreBatched() {
+        for (int id = 1; id <= 6; id += 2) {
+            over(variable(id), variable(id + 1));
+        }
+        VariableSlot unconstrained = variable(7);
+
+        // each component counts 2 slots and 1 constraint, a batch is closed once it reaches 5
+        List<Component> components = partition(5);
+        assertEquals(2, components.size());
+        assertEquals(6, components.get(0).size());
+        assertEquals(4, components.get(1).size());
+        assertTrue(components.get(1).slots.contains(unconstrained));
+    }
+
+    @Test
+    public void largeComponentsAreKeptApart() {
+        VariableSlot a = variable(1);
+        VariableSlot b = variable(2);
+        over(a, b);
+        over(variable(3), variable(4));
+
+        List<Component> components = partition(3);
+        assertEquals(2, components.size());
+        assertEquals(Arrays.asList(a, b), components.get(0).slots);
+    }
+}
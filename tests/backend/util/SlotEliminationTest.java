@@ -0,0 +1,146 @@
+package backend.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import backend.util.SlotElimination.Value;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.model.serialization.Serializer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Eliminates unconstrained and single use slots with {@link SlotElimination}. */
+public class SlotEliminationTest {
+
+    /** A constraint other than a subtype constraint. */
+    private static class Other extends Constraint {
+        Other(Slot... slots) {
+            super(Arrays.asList(slots), AnnotationLocation.MISSING_LOCATION);
+        }
+
+        @Override
+        public <S, T> T serialize(Serializer<S, T> serializer) {
+            return null;
+        }
+    }
+
+    private final List<Slot> slots = new ArrayList<>();
+    private final List<Constraint> constraints = new ArrayList<>();
+
+    private VariableSlot variable(int id) {
+        VariableSlot slot = new VariableSlot(AnnotationLocation.MISSING_LOCATION, id);
+        slots.add(slot);
+        return slot;
+    }
+
+    private Constraint subtype(Slot subtype, Slot supertype) {
+        Constraint constraint = new SubtypeConstraint(subtype, supertype) {};
+        constraints.add(constraint);
+        return constraint;
+    }
+
+    private Constraint other(Slot... slots) {
+        Constraint constraint = new Other(slots);
+        constraints.add(constraint);
+        return constraint;
+    }
+
+    private SlotElimination compute(boolean eliminateSingleUse) {
+        return SlotElimination.compute(
+                SlotIndex.build(slots, constraints),
+                slots,
+                constraints,
+                SlotEqualityClasses.NONE,
+                eliminateSingleUse);
+    }
+
+    private static Map<Integer, Value> solution(SlotElimination elimination) {
+        Map<Integer, Value> solution = new HashMap<>();
+        elimination.addSolution(solution, value -> value);
+        return solution;
+    }
+
+    @Test
+    public void unconstrainedSlotIsPreferred() {
+        VariableSlot unconstrained = variable(1);
+        VariableSlot first = variable(2);
+        VariableSlot second = variable(3);
+        other(first, second);
+        other(first, second);
+
+        SlotElimination elimination = compute(false);
+        assertTrue(elimination.isEliminated(unconstrained));
+        assertFalse(elimination.isEliminated(first));
+        assertFalse(elimination.isEliminated(second));
+        assertEquals(Value.PREFERRED, solution(elimination).get(1));
+    }
+
+    @Test
+    public void subtypeChainIsEliminatedInCascade() {
+        VariableSlot a = variable(1);
+        VariableSlot b = variable(2);
+        VariableSlot c = variable(3);
+        VariableSlot d = variable(4);
+        // a is the subtype and d the supertype of a single constraint, then b and c are left
+        // with a single constraint once those are removed
+        Constraint ab = subtype(a, b);
+        Constraint bc = subtype(b, c);
+        Constraint cd = subtype(c, d);
+
+        SlotElimination elimination = compute(true);
+        assertEquals(4, elimination.getNumberOfEliminatedSlots());
+        assertEquals(3, elimination.getNumberOfEliminatedConstraints());
+        assertTrue(elimination.isEliminated(ab));
+        assertTrue(elimination.isEliminated(bc));
+        assertTrue(elimination.isEliminated(cd));
+
+        Map<Integer, Value> solution = solution(elimination);
+        assertEquals(Value.BOTTOM, solution.get(1));
+        assertEquals(Value.BOTTOM, solution.get(2));
+        // c is in no constraint once the others are eliminated
+        assertEquals(Value.PREFERRED, solution.get(3));
+        assertEquals(Value.TOP, solution.get(4));
+    }
+
+    @Test
+    public void singleUseIsKeptWhenDisabled() {
+        VariableSlot a = variable(1);
+        VariableSlot b = variable(2);
+        Constraint ab = subtype(a, b);
+
+        SlotElimination elimination = compute(false);
+        assertEquals(0, elimination.getNumberOfEliminatedSlots());
+        assertFalse(elimination.isEliminated(ab));
+        assertTrue(solution(elimination).isEmpty());
+    }
+
+    @Test
+    public void otherConstraintsStopTheCascade() {
+        VariableSlot a = variable(1);
+        VariableSlot b = variable(2);
+        VariableSlot c = variable(3);
+        subtype(a, b);
+        // b is left in a single constraint which is not a subtype constraint
+        Constraint bc = other(b, c);
+
+        SlotElimination elimination = compute(true);
+        assertTrue(elimination.isEliminated(a));
+        assertFalse(elimination.isEliminated(b));
+        assertFalse(elimination.isEliminated(c));
+        assertFalse(elimination.isEliminated(bc));
+        assertNull(solution(elimination).get(2));
+    }
+}
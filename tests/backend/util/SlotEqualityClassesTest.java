@@ -0,0 +1,204 @@
+package backend.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.model.serialization.Serializer;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+
+/** Merges slots forced equal with {@link SlotEqualityClasses}, and expands the solutions back. */
+public class SlotEqualityClassesTest {
+
+    /** A constraint forcing its slots to be equal. */
+    private static class Equality extends Constraint {
+        Equality(Slot... slots) {
+            super(Arrays.asList(slots), AnnotationLocation.MISSING_LOCATION);
+        }
+
+        @Override
+        public <S, T> T serialize(Serializer<S, T> serializer) {
+            return null;
+        }
+    }
+
+    /** A constraint with effects other than equalities. */
+    private static class Other extends Constraint {
+        Other(Slot... slots) {
+            super(Arrays.asList(slots), AnnotationLocation.MISSING_LOCATION);
+        }
+
+        @Override
+        public <S, T> T serialize(Serializer<S, T> serializer) {
+            return null;
+        }
+    }
+
+    private final List<Slot> slots = new ArrayList<>();
+    private final List<Constraint> constraints = new ArrayList<>();
+
+    private VariableSlot variable(int id) {
+        VariableSlot slot = new VariableSlot(AnnotationLocation.MISSING_LOCATION, id);
+        slots.add(slot);
+        return slot;
+    }
+
+    private ConstantSlot constant(int id, AnnotationMirror value) {
+        ConstantSlot slot = new ConstantSlot(value, id);
+        slots.add(slot);
+        return slot;
+    }
+
+    private <C extends Constraint> C add(C constraint) {
+        constraints.add(constraint);
+        return constraint;
+    }
+
+    private SlotEqualityClasses compute() {
+        return SlotEqualityClasses.compute(
+                SlotIndex.build(slots, constraints),
+                constraints,
+                constraint -> constraint instanceof Equality ? constraint.getSlots() : null);
+    }
+
+    // An annotation without values, with only what AnnotationUtils compares of it
+    private static AnnotationMirror annotation(String name) {
+        Map<String, Object> results = new HashMap<>();
+        results.put("toString", name);
+        results.put("getQualifiedName", proxy(Name.class, results));
+        results.put("getElementValues", Collections.emptyMap());
+        results.put("getEnclosedElements", Collections.emptyList());
+        results.put("asElement", proxy(TypeElement.class, results));
+        results.put("getAnnotationType", proxy(DeclaredType.class, results));
+        return proxy(AnnotationMirror.class, results);
+    }
+
+    private static <T> T proxy(Class<T> type, Map<String, Object> results) {
+        return type.cast(
+                Proxy.newProxyInstance(
+                        SlotEqualityClassesTest.class.getClassLoader(),
+                        new Class<?>[] {type},
+                        (proxy, method, args) -> {
+                            switch (method.getName()) {
+                                case "equals":
+                                    return proxy == args[0];
+                                case "hashCode":
+                                    return System.identityHashCode(proxy);
+                                default:
+                                    return results.get(method.getName());
+                            }
+                        }));
+    }
+
+    @Test
+    public void variablesMergeIntoOneClass() {
+        VariableSlot first = variable(1);
+        VariableSlot second = variable(2);
+        VariableSlot third = variable(3);
+        VariableSlot unmerged = variable(4);
+        Equality firstEquality = add(new Equality(first, second));
+        Equality secondEquality = add(new Equality(second, third));
+        Other other = add(new Other(third, unmerged));
+
+        SlotEqualityClasses classes = compute();
+        Slot representative = classes.getRepresentative(first);
+        assertSame(representative, classes.getRepresentative(second));
+        assertSame(representative, classes.getRepresentative(third));
+        assertTrue(classes.isRepresentative(representative));
+        assertTrue(classes.isRepresentative(unmerged));
+        assertEquals(3, classes.getClassSize(representative));
+        assertEquals(2, classes.getNumberOfMergedSlots());
+
+        assertTrue(classes.isEliminated(firstEquality));
+        assertTrue(classes.isEliminated(secondEquality));
+        assertFalse(classes.isEliminated(other));
+
+        Map<Integer, String> solution = new HashMap<>();
+        solution.put(representative.getId(), "m");
+        solution.put(unmerged.getId(), "s");
+        classes.expandSolution(solution, constant -> "constant");
+        assertEquals("m", solution.get(1));
+        assertEquals("m", solution.get(2));
+        assertEquals("m", solution.get(3));
+        assertEquals("s", solution.get(4));
+    }
+
+    @Test
+    public void constantRepresentsItsClass() {
+        AnnotationMirror meter = annotation("m");
+        VariableSlot first = variable(1);
+        ConstantSlot constant = constant(2, meter);
+        VariableSlot second = variable(3);
+        add(new Equality(first, constant));
+        Equality equality = add(new Equality(first, second));
+        Other other = add(new Other(second));
+
+        SlotEqualityClasses classes = compute();
+        assertSame(constant, classes.getRepresentative(first));
+        assertSame(constant, classes.getRepresentative(second));
+        // only the variable slots are counted
+        assertEquals(2, classes.getClassSize(constant));
+        assertTrue(classes.involvesMergedSlots(other));
+        // the equalities connecting the slot of the constraint to the constant
+        assertTrue(classes.explain(other).contains(equality));
+
+        Map<Integer, AnnotationMirror> solution = new HashMap<>();
+        classes.expandSolution(solution, constantSlot -> constantSlot.getValue());
+        assertSame(meter, solution.get(1));
+        assertSame(meter, solution.get(3));
+    }
+
+    @Test
+    public void equalConstantsMerge() {
+        VariableSlot variable = variable(1);
+        ConstantSlot first = constant(2, annotation("m"));
+        ConstantSlot second = constant(3, annotation("m"));
+        add(new Equality(variable, first));
+        add(new Equality(variable, second));
+
+        SlotEqualityClasses classes = compute();
+        assertTrue(classes.getRepresentative(variable) instanceof ConstantSlot);
+        assertEquals(1, classes.getNumberOfMergedSlots());
+        assertEquals(2, classes.getNumberOfEliminatedConstraints());
+    }
+
+    @Test
+    public void conflictingConstantsAreNotMerged() {
+        VariableSlot variable = variable(1);
+        ConstantSlot meter = constant(2, annotation("m"));
+        ConstantSlot second = constant(3, annotation("s"));
+        Equality meterEquality = add(new Equality(variable, meter));
+        Equality secondEquality = add(new Equality(variable, second));
+        VariableSlot other = variable(4);
+        add(new Equality(other, variable));
+
+        // the whole class is left to the solver, which reports the conflict
+        SlotEqualityClasses classes = compute();
+        assertTrue(classes.isRepresentative(variable));
+        assertTrue(classes.isRepresentative(other));
+        assertFalse(classes.isEliminated(meterEquality));
+        assertFalse(classes.isEliminated(secondEquality));
+        assertEquals(0, classes.getNumberOfMergedSlots());
+        assertEquals(0, classes.getNumberOfEliminatedConstraints());
+    }
+}
@@ -0,0 +1,194 @@
+package backend.z3smt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.microsoft.z3.Status;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+/** Parses samples of the output of the z3 binary with {@link Z3OutputParser}. */
+public class Z3OutputParserTest {
+
+    private static final List<String> components = Arrays.asList("TOP", "BOT", "m", "s");
+
+    private static Z3OutputParser parse(String output) throws IOException {
+        Z3OutputParser parser = new Z3OutputParser(new StringReader(output), components, "c!");
+        parser.parse();
+        return parser;
+    }
+
+    // Returns the value of the component of the slot in the model, failing if it has none
+    private static int value(Z3ModelValues model, int slotID, String component) {
+        for (int row = 0; row < model.getSlotCount(); row++) {
+            if (model.getSlotID(row) == slotID) {
+                int column = components.indexOf(component);
+                assertTrue(model.isAssigned(row, column));
+                return model.getInt(row, column);
+            }
+        }
+        throw new AssertionError("no value for slot " + slotID);
+    }
+
+    @Test
+    public void satisfyingModel() throws IOException {
+        Z3OutputParser parser =
+                parse(
+                        "sat\n"
+                                + "(\n"
+                                + "  (define-fun |338-BOT| () Bool\n"
+                                + "    true)\n"
+                                + "  (define-fun |750-m| () Int\n"
+                                + "    (- 9))\n"
+                                + "  (define-fun c!12 () Bool\n"
+                                + "    true)\n"
+                                + "  (define-fun |750-s| () Int\n"
+                                + "    3)\n"
+                                + ")\n");
+        assertEquals(Status.SATISFIABLE, parser.getStatus());
+        Z3ModelValues model = parser.getModel();
+        // the indicator literal is not a slot
+        assertEquals(2, model.getSlotCount());
+        assertEquals(1, value(model, 338, "BOT"));
+        assertEquals(-9, value(model, 750, "m"));
+        assertEquals(3, value(model, 750, "s"));
+        assertTrue(parser.getUnsatCoreIndices().isEmpty());
+    }
+
+    @Test
+    public void olderModelFormat() throws IOException {
+        Z3OutputParser parser =
+                parse("sat\n(model\n  (define-fun |4-TOP| () Bool\n    false)\n)\n");
+        assertEquals(Status.SATISFIABLE, parser.getStatus());
+        assertEquals(0, value(parser.getModel(), 4, "TOP"));
+    }
+
+    @Test
+    public void bitVectorLiterals() throws IOException {
+        Z3OutputParser parser =
+                parse(
+                        "sat\n"
+                                + "(\n"
+                                + "  (define-fun |1-m| () (_ BitVec 8)\n"
+                                + "    #xfe)\n"
+                                + "  (define-fun |1-s| () (_ BitVec 8)\n"
+                                + "    #x05)\n"
+                                + "  (define-fun |2-m| () (_ BitVec 4)\n"
+                                + "    #b1000)\n"
+                                + "  (define-fun |2-s| () (_ BitVec 4)\n"
+                                + "    #b0111)\n"
+                                + ")\n");
+        Z3ModelValues model = parser.getModel();
+        // read as two's complement of the width of the sort
+        assertEquals(-2, value(model, 1, "m"));
+        assertEquals(5, value(model, 1, "s"));
+        assertEquals(-8, value(model, 2, "m"));
+        assertEquals(7, value(model, 2, "s"));
+    }
+
+    @Test
+    public void unsatCore() throws IOException {
+        Z3OutputParser parser =
+                parse(
+                        "unsat\n"
+                                + "(error \"line 1057 column 10: model is not available\")\n"
+                                + "(c!58 c!73 c!188 c!553)\n");
+        assertEquals(Status.UNSATISFIABLE, parser.getStatus());
+        assertEquals(0, parser.getModel().getSlotCount());
+        assertEquals(Arrays.asList(58, 73, 188, 553), parser.getUnsatCoreIndices());
+    }
+
+    @Test
+    public void statistics() throws IOException {
+        Z3OutputParser parser =
+                parse(
+                        "sat\n"
+                                + "(\n"
+                                + ")\n"
+                                + "(:conflicts         12\n"
+                                + " :decisions         340\n"
+                                + " :max-memory        19.45\n"
+                                + " :time              0.03)\n");
+        assertEquals(Status.SATISFIABLE, parser.getStatus());
+        assertEquals(12.0, parser.getStatistics().get("conflicts"), 0);
+        assertEquals(340.0, parser.getStatistics().get("decisions"), 0);
+        assertEquals(19.45, parser.getStatistics().get("max-memory"), 0);
+        assertEquals(0.03, parser.getStatistics().get("time"), 0);
+    }
+
+    @Test
+    public void timeout() throws IOException {
+        Z3OutputParser parser = parse("timeout\n");
+        assertEquals(Status.UNKNOWN, parser.getStatus());
+        assertTrue(parser.isTimedOut());
+    }
+
+    @Test
+    public void objectives() throws IOException {
+        Z3OutputParser parser =
+                parse("unknown\n(objectives\n (12)\n (prefs (interval 3 7))\n)\n");
+        assertEquals(Status.UNKNOWN, parser.getStatus());
+        assertFalse(parser.isTimedOut());
+        assertEquals(15.0, parser.getObjectiveLower(), 0);
+        assertEquals(19.0, parser.getObjectiveUpper(), 0);
+    }
+
+    @Test
+    public void symbolicObjectiveBound() throws IOException {
+        Z3OutputParser parser = parse("unknown\n(objectives\n (prefs (interval 3 oo))\n)\n");
+        assertNull(parser.getObjectiveLower());
+        assertNull(parser.getObjectiveUpper());
+    }
+
+    @Test
+    public void hardModelBeforeOptimization() throws IOException {
+        // the hard constraints are checked and their model costed before optimizing, which
+        // finds no model within the budget
+        Z3OutputParser parser =
+                parse(
+                        "sat\n"
+                                + "(\n"
+                                + "  (define-fun |1-m| () Int\n"
+                                + "    2)\n"
+                                + ")\n"
+                                + "5\n"
+                                + "unknown\n"
+                                + "(error \"line 20 column 10: model is not available\")\n"
+                                + "(objectives\n (prefs (interval 1 oo))\n)\n");
+        assertEquals(Status.SATISFIABLE, parser.getFirstStatus());
+        assertEquals(Status.UNKNOWN, parser.getStatus());
+        assertEquals(2, parser.getCheckCount());
+        assertEquals(1, parser.getModelCheck());
+        assertEquals(5.0, parser.getEvaluatedValue(), 0);
+        assertEquals(2, value(parser.getModel(), 1, "m"));
+    }
+
+    @Test
+    public void optimizedModelOverridesHardModel() throws IOException {
+        Z3OutputParser parser =
+                parse(
+                        "sat\n"
+                                + "(\n"
+                                + "  (define-fun |1-m| () Int\n"
+                                + "    2)\n"
+                                + ")\n"
+                                + "5\n"
+                                + "sat\n"
+                                + "(\n"
+                                + "  (define-fun |1-m| () Int\n"
+                                + "    0)\n"
+                                + ")\n"
+                                + "(objectives\n (0)\n)\n");
+        assertEquals(2, parser.getCheckCount());
+        assertEquals(2, parser.getModelCheck());
+        assertEquals(0, value(parser.getModel(), 1, "m"));
+        assertEquals(0.0, parser.getObjectiveUpper(), 0);
+    }
+}
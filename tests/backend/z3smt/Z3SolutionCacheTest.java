@@ -0,0 +1,137 @@
+package backend.z3smt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import backend.z3smt.Z3SolutionCache.CanonicalComponent;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+/** Stores and reuses z3 outputs with {@link Z3SolutionCache}. */
+public class Z3SolutionCacheTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    // Writes an SMT file over the two slots with the constraint indicator of the given index
+    private String smtFile(String name, int first, int second, int indicator, String constraint)
+            throws IOException {
+        String smt =
+                "(declare-fun |"
+                        + first
+                        + "-m| () Int)\n"
+                        + "(declare-fun |"
+                        + second
+                        + "-m| () Int)\n"
+                        + "(declare-const c!"
+                        + indicator
+                        + " Bool)\n"
+                        + "(assert (=> c!"
+                        + indicator
+                        + " "
+                        + constraint
+                        + "))\n";
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, smt.getBytes(StandardCharsets.UTF_8));
+        return file.toString();
+    }
+
+    private static String output(int first, int second) {
+        return "sat\n(\n  (define-fun |"
+                + first
+                + "-m| () Int\n    1)\n  (define-fun |"
+                + second
+                + "-m| () Int\n    2)\n)\n";
+    }
+
+    private Path cacheDirectory() {
+        return folder.getRoot().toPath().resolve("cache");
+    }
+
+    @Test
+    public void renamedComponentReusesOutput() throws IOException {
+        Z3SolutionCache cache = new Z3SolutionCache(cacheDirectory(), 1 << 20);
+        CanonicalComponent component =
+                cache.canonicalize(smtFile("first.smt", 100, 200, 7, "(= |100-m| |200-m|)"));
+        assertNull(cache.lookup(component));
+        cache.store(component, output(100, 200));
+
+        // the same component with other slot IDs and indicator index, in a later run
+        CanonicalComponent renamed =
+                cache.canonicalize(smtFile("second.smt", 300, 400, 9, "(= |300-m| |400-m|)"));
+        assertEquals(component.getHash(), renamed.getHash());
+        assertEquals(output(300, 400), cache.lookup(renamed));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void unsatCoreIsRenamed() throws IOException {
+        Z3SolutionCache cache = new Z3SolutionCache(cacheDirectory(), 1 << 20);
+        CanonicalComponent component =
+                cache.canonicalize(smtFile("first.smt", 1, 2, 7, "(= |1-m| |2-m|)"));
+        cache.store(component, "unsat\n(c!7)\n");
+        CanonicalComponent renamed =
+                cache.canonicalize(smtFile("second.smt", 5, 6, 42, "(= |5-m| |6-m|)"));
+        assertEquals("unsat\n(c!42)\n", cache.lookup(renamed));
+    }
+
+    @Test
+    public void changedComponentMisses() throws IOException {
+        Z3SolutionCache cache = new Z3SolutionCache(cacheDirectory(), 1 << 20);
+        CanonicalComponent component =
+                cache.canonicalize(smtFile("first.smt", 1, 2, 0, "(= |1-m| |2-m|)"));
+        cache.store(component, output(1, 2));
+        CanonicalComponent changed =
+                cache.canonicalize(smtFile("second.smt", 1, 2, 0, "(= |1-m| (+ |2-m| 1))"));
+        assertNotEquals(component.getHash(), changed.getHash());
+        assertNull(cache.lookup(changed));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() throws IOException {
+        // the output of every component has the same size, the cache holds two of them
+        long entrySize = output(1, 2).length();
+        Z3SolutionCache cache = new Z3SolutionCache(cacheDirectory(), 2 * entrySize);
+        CanonicalComponent first =
+                cache.canonicalize(smtFile("first.smt", 1, 2, 0, "(= |1-m| |2-m|)"));
+        CanonicalComponent second =
+                cache.canonicalize(smtFile("second.smt", 1, 2, 0, "(= |1-m| (+ |2-m| 1))"));
+        CanonicalComponent third =
+                cache.canonicalize(smtFile("third.smt", 1, 2, 0, "(= |1-m| (+ |2-m| 2))"));
+
+        cache.store(first, output(1, 2));
+        cache.store(second, output(1, 2));
+        // both entries were last used in the past, the second one after the first
+        setLastUsed(first, 1000);
+        setLastUsed(second, 2000);
+        // using the first entry makes the second the least recently used
+        assertEquals(output(1, 2), cache.lookup(first));
+
+        cache.store(third, output(1, 2));
+        assertEquals(2, countEntries());
+        assertNull(cache.lookup(second));
+        assertEquals(output(1, 2), cache.lookup(first));
+        assertEquals(output(1, 2), cache.lookup(third));
+    }
+
+    private void setLastUsed(CanonicalComponent component, long millis) throws IOException {
+        Path entry = cacheDirectory().resolve(component.getHash() + ".z3out");
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(millis));
+    }
+
+    private long countEntries() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDirectory())) {
+            return files.filter(file -> file.toString().endsWith(".z3out")).count();
+        }
+    }
+}
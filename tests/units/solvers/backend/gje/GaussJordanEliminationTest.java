@@ -0,0 +1,169 @@
+package units.solvers.backend.gje;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import units.solvers.backend.gje.representation.GJEEquation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.List;
+
+/** Solves the GJE files of testing/gje/sampleFiles, and checks the arithmetic of the engine. */
+public class GaussJordanEliminationTest {
+
+    private static final String sampleFiles = "testing/gje/sampleFiles/";
+
+    // Adds the equations of a .gje file: the number of variables, the number of equations, then
+    // one equation per line
+    private static GaussJordanElimination solveFile(String fileName) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(sampleFiles + fileName));
+        int numOfVariables = Integer.parseInt(lines.get(0).trim());
+        int numOfEquations = Integer.parseInt(lines.get(1).trim());
+        GaussJordanElimination gje = new GaussJordanElimination(numOfVariables);
+        for (String equation : lines.subList(2, 2 + numOfEquations)) {
+            gje.addEquation(GJEEquation.parse(equation));
+        }
+        return gje;
+    }
+
+    @Test
+    public void exact() throws IOException {
+        GaussJordanElimination gje = solveFile("exact.gje");
+        assertTrue(gje.isConsistent());
+        assertArrayEquals(new int[] {1, 1, 0, 0, 0}, gje.getSolution());
+    }
+
+    @Test
+    public void underConstrained() throws IOException {
+        GaussJordanElimination gje = solveFile("under.gje");
+        assertTrue(gje.isConsistent());
+        // all three variables are equal and free, so dimensionless
+        assertArrayEquals(new int[] {0, 0, 0}, gje.getSolution());
+    }
+
+    @Test
+    public void overSpecified() throws IOException {
+        GaussJordanElimination gje = solveFile("overspec.gje");
+        assertTrue(gje.isConsistent());
+        assertEquals(4, gje.getNumberOfPivots());
+        assertArrayEquals(new int[] {1, 0, 0, 0}, gje.getSolution());
+    }
+
+    @Test
+    public void unsat() throws IOException {
+        assertFalse(solveFile("unsat.gje").isConsistent());
+    }
+
+    @Test
+    public void mixSat() throws IOException {
+        GaussJordanElimination gje = solveFile("mixSat.gje");
+        assertTrue(gje.isConsistent());
+        assertArrayEquals(new int[] {1, 1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0}, gje.getSolution());
+    }
+
+    @Test
+    public void mixUnsat() throws IOException {
+        assertFalse(solveFile("mixUnsat.gje").isConsistent());
+    }
+
+    @Test
+    public void repeatedVariablesAreSummed() {
+        GaussJordanElimination gje = new GaussJordanElimination(2);
+        // x0 + x0 = 4, 3 x1 - x1 - x0 = 0
+        gje.addEquation(GJEEquation.parse("2 1 0 1 0 4"));
+        gje.addEquation(GJEEquation.parse("3 3 1 -1 1 -1 0 0"));
+        assertArrayEquals(new int[] {2, 1}, gje.getSolution());
+    }
+
+    @Test
+    public void eliminationChain() {
+        GaussJordanElimination gje = new GaussJordanElimination(4);
+        // x0 + x1 + x2 = 6, x1 - x2 = 1, x0 - x3 = 0, x3 = 1
+        gje.addEquation(GJEEquation.parse("3 1 0 1 1 1 2 6"));
+        gje.addEquation(GJEEquation.parse("2 1 1 -1 2 1"));
+        gje.addEquation(GJEEquation.parse("2 1 0 -1 3 0"));
+        gje.addEquation(GJEEquation.parse("1 1 3 1"));
+        assertEquals(4, gje.getNumberOfPivots());
+        assertArrayEquals(new int[] {1, 3, 2, 1}, gje.getSolution());
+    }
+
+    @Test
+    public void nonIntegralSolution() {
+        GaussJordanElimination gje = new GaussJordanElimination(1);
+        gje.addEquation(GJEEquation.parse("1 2 0 1"));
+        assertTrue(gje.isConsistent());
+        assertNull(gje.getSolution());
+    }
+
+    @Test
+    public void integralSolutionWithFreeVariables() {
+        GaussJordanElimination gje = new GaussJordanElimination(3);
+        // 2 x0 + 3 x1 = 1, 2 x2 + 3 x1 = 1, which are not integral with the free variable at 0
+        gje.addEquation(GJEEquation.parse("2 2 0 3 1 1"));
+        gje.addEquation(GJEEquation.parse("2 2 2 3 1 1"));
+        assertEquals(2, gje.getNumberOfPivots());
+        int[] solution = gje.getSolution();
+        assertEquals(1, 2 * solution[0] + 3 * solution[1]);
+        assertEquals(1, 2 * solution[2] + 3 * solution[1]);
+    }
+
+    @Test
+    public void overflowFallsBackToBigInteger() {
+        GaussJordanElimination gje = new GaussJordanElimination(2);
+        // a x0 + b x1 = a + b, c x0 + d x1 = c + d, whose cross products overflow a long
+        gje.addEquation(GJEEquation.parse("2 4000000001 0 3999999999 1 8000000000"));
+        gje.addEquation(GJEEquation.parse("2 3999999997 0 4000000003 1 8000000000"));
+        assertTrue(gje.getNumberOfBigIntegerSteps() > 0);
+        assertArrayEquals(new int[] {1, 1}, gje.getSolution());
+    }
+
+    @Test
+    public void inconsistentAfterElimination() {
+        GaussJordanElimination gje = new GaussJordanElimination(3);
+        // x0 - x1 = 0, x1 - x2 = 0, x0 - x2 = 1
+        assertTrue(gje.addEquation(GJEEquation.parse("2 1 0 -1 1 0")));
+        assertTrue(gje.addEquation(GJEEquation.parse("2 1 1 -1 2 0")));
+        assertFalse(gje.addEquation(GJEEquation.parse("2 1 0 -1 2 1")));
+        assertFalse(gje.isConsistent());
+    }
+
+    @Test
+    public void inconsistentEquationsAreTracked() {
+        GaussJordanElimination gje = new GaussJordanElimination(5);
+        // x0 - x1 = 0, x3 - x4 = 2, x1 - x2 = 0, x3 = 1, x0 - x2 = 1, where the inconsistency
+        // derives from equations 0, 2 and 4 only
+        gje.addEquation(GJEEquation.parse("2 1 0 -1 1 0"));
+        gje.addEquation(GJEEquation.parse("2 1 3 -1 4 2"));
+        gje.addEquation(GJEEquation.parse("2 1 1 -1 2 0"));
+        gje.addEquation(GJEEquation.parse("1 1 3 1"));
+        assertFalse(gje.addEquation(GJEEquation.parse("2 1 0 -1 2 1")));
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(2);
+        expected.set(4);
+        assertEquals(expected, gje.getInconsistentEquations(0));
+    }
+
+    @Test
+    public void sharedCoefficientMatrix() {
+        GaussJordanElimination gje = new GaussJordanElimination(3, 3);
+        // x0 = c, x0 - x1 = 0, x1 - x2 = 0, x2 = d, with (c, d) = (1, 1), (-2, -2) and (0, 1)
+        gje.addEquation(GJEEquation.parse("1 1 0 0"), new long[] {1, -2, 0});
+        gje.addEquation(GJEEquation.parse("2 1 0 -1 1 0"), new long[] {0, 0, 0});
+        gje.addEquation(GJEEquation.parse("2 1 1 -1 2 0"), new long[] {0, 0, 0});
+        assertTrue(gje.addEquation(GJEEquation.parse("1 1 2 0"), new long[] {1, -2, 1}));
+        assertEquals(3, gje.getNumberOfPivots());
+        assertArrayEquals(new int[] {1, 1, 1}, gje.getSolution(0));
+        assertArrayEquals(new int[] {-2, -2, -2}, gje.getSolution(1));
+        assertFalse(gje.isConsistent(2));
+        assertFalse(gje.isConsistent());
+    }
+}